@@ -26,8 +26,6 @@ import static mindustry.Vars.*;
 public class BlockIndexer{
     /** Size of one quadrant. */
     private static final int quadrantSize = 20;
-    private static final Rect rect = new Rect();
-    private static boolean returnBool = false;
 
     private int quadWidth, quadHeight;
 
@@ -45,11 +43,14 @@ public class BlockIndexer{
     private Seq<Building>[][] flagMap = new Seq[Team.all.length][BlockFlag.all.length];
     /** Counts whether a certain floor is present in the world upon load. */
     private boolean[] blocksPresent;
-    /** Array used for returning and reusing. */
-    private Seq<Building> breturnArray = new Seq<>(Building.class);
+    /** Per-thread array returned from {@link #getEnemy(Team, BlockFlag)}. */
+    private final ThreadLocal<Seq<Building>> enemyArray = Threads.local(() -> new Seq<>(Building.class));
     /** Maps block flag to a list of floor tiles that have it. */
     private Seq<Tile>[] floorMap;
 
+    /** Shared target candidates for turrets. */
+    public final TurretTargeting turretTargeting = new TurretTargeting();
+
     public BlockIndexer(){
         clearFlags();
 
@@ -71,6 +72,7 @@ public class BlockIndexer{
             flagMap = new Seq[Team.all.length][BlockFlag.all.length];
             floorMap = new Seq[BlockFlag.all.length];
             activeTeams = new Seq<>(Team.class);
+            turretTargeting.clear();
 
             clearFlags();
 
@@ -326,68 +328,82 @@ public class BlockIndexer{
     }
 
     public boolean eachBlock(@Nullable Team team, float wx, float wy, float range, Boolf<Building> pred, Cons<Building> cons){
+        var query = SpatialQuery.obtain();
+        try{
+            return eachBlock(query, team, wx, wy, range, pred, cons);
+        }finally{
+            query.free();
+        }
+    }
 
-        if(team == null){
-            returnBool = false;
+    /** Iterates over all non-privileged buildings in range that match the predicate. The consumer must not use the same query. */
+    public boolean eachBlock(SpatialQuery query, @Nullable Team team, float wx, float wy, float range, Boolf<Building> pred, Cons<Building> cons){
+        var result = query.buildings;
+        result.clear();
 
-            allBuildings(wx, wy, range, b -> {
-                if(pred.get(b) && !b.block.privileged){
-                    returnBool = true;
-                    cons.get(b);
-                }
-            });
-            return returnBool;
+        if(team == null){
+            collectBuildings(result, wx, wy, range);
         }else{
-            breturnArray.clear();
-
-            var buildings = team.data().buildingTree;
+            var buildings = state.teams.buildingTree(team);
             if(buildings == null) return false;
-            buildings.intersect(wx - range, wy - range, range*2f, range*2f, b -> {
-                if(b.within(wx, wy, range + b.hitSize() / 2f) && pred.get(b) && !b.block.privileged){
-                    breturnArray.add(b);
-                }
-            });
-        }
-
-        int size = breturnArray.size;
-        var items = breturnArray.items;
-        for(int i = 0; i < size; i++){
-            cons.get(items[i]);
-            items[i] = null;
+            buildings.intersect(wx - range, wy - range, range*2f, range*2f, result);
         }
-        breturnArray.size = 0;
 
-        return size > 0;
+        return each(result, wx, wy, range, pred, cons);
     }
 
     /** Does not work with null teams. */
     public boolean eachBlock(Team team, Rect rect, Boolf<Building> pred, Cons<Building> cons){
-        if(team == null) return false;
+        var query = SpatialQuery.obtain();
+        try{
+            return eachBlock(query, team, rect, pred, cons);
+        }finally{
+            query.free();
+        }
+    }
 
-        breturnArray.clear();
+    /** Does not work with null teams. The consumer must not use the same query. */
+    public boolean eachBlock(SpatialQuery query, Team team, Rect rect, Boolf<Building> pred, Cons<Building> cons){
+        if(team == null) return false;
 
-        var buildings = team.data().buildingTree;
+        var buildings = state.teams.buildingTree(team);
         if(buildings == null) return false;
-        buildings.intersect(rect, b -> {
-            if(pred.get(b) && !b.block.privileged){
-                breturnArray.add(b);
+
+        var result = query.buildings;
+        result.clear();
+        buildings.intersect(rect, result);
+
+        return each(result, 0f, 0f, -1f, pred, cons);
+    }
+
+    /** Filters the buildings in place, then passes them to the consumer. A negative range disables the range check. */
+    private boolean each(Seq<Building> result, float wx, float wy, float range, Boolf<Building> pred, Cons<Building> cons){
+        var items = result.items;
+        int size = 0;
+        for(int i = 0; i < result.size; i++){
+            var b = items[i];
+            if((range < 0f || b.within(wx, wy, range + b.hitSize() / 2f)) && pred.get(b) && !b.block.privileged){
+                items[size ++] = b;
             }
-        });
+        }
+        result.size = size;
 
-        int size = breturnArray.size;
-        var items = breturnArray.items;
         for(int i = 0; i < size; i++){
             cons.get(items[i]);
-            items[i] = null;
         }
-        breturnArray.size = 0;
+        result.clear();
 
         return size > 0;
     }
 
-    /** Get all enemy blocks with a flag. */
+    /** Get all enemy blocks with a flag. The returned array is reused by later calls on the same thread. */
     public Seq<Building> getEnemy(Team team, BlockFlag type){
-        breturnArray.clear();
+        return getEnemy(team, type, enemyArray.get());
+    }
+
+    /** Get all enemy blocks with a flag. */
+    public Seq<Building> getEnemy(Team team, BlockFlag type, Seq<Building> out){
+        out.clear();
         Seq<TeamData> data = state.teams.present;
         //when team data is not initialized, scan through every team. this is terrible
         if(data.isEmpty()){
@@ -395,7 +411,7 @@ public class BlockIndexer{
                 if(enemy == team || (enemy == Team.derelict && !state.rules.coreCapture)) continue;
                 var set = getFlagged(enemy)[type.ordinal()];
                 if(set != null){
-                    breturnArray.addAll(set);
+                    out.addAll(set);
                 }
             }
         }else{
@@ -404,12 +420,12 @@ public class BlockIndexer{
                 if(enemy == team || (enemy == Team.derelict && !state.rules.coreCapture)) continue;
                 var set = getFlagged(enemy)[type.ordinal()];
                 if(set != null){
-                    breturnArray.addAll(set);
+                    out.addAll(set);
                 }
             }
         }
 
-        return breturnArray;
+        return out;
     }
 
     public void notifyHealthChanged(Building build){
@@ -433,24 +449,39 @@ public class BlockIndexer{
     }
 
     public void allBuildings(float x, float y, float range, Cons<Building> cons){
-        breturnArray.clear();
-        for(int i = 0; i < activeTeams.size; i++){
-            Team team = activeTeams.items[i];
-            var buildings = team.data().buildingTree;
-            if(buildings == null) continue;
-            buildings.intersect(x - range, y - range, range*2f, range*2f, breturnArray);
+        var query = SpatialQuery.obtain();
+        try{
+            allBuildings(query, x, y, range, cons);
+        }finally{
+            query.free();
         }
+    }
 
-        var items = breturnArray.items;
-        int size = breturnArray.size;
+    /** Iterates over all buildings in range. The consumer must not use the same query. */
+    public void allBuildings(SpatialQuery query, float x, float y, float range, Cons<Building> cons){
+        var result = query.buildings;
+        result.clear();
+        collectBuildings(result, x, y, range);
+
+        var items = result.items;
+        int size = result.size;
         for(int i = 0; i < size; i++){
             var b = items[i];
-            if(b != null && b.within(x, y, range + b.hitSize()/2f)){
+            if(b.within(x, y, range + b.hitSize()/2f)){
                 cons.get(b);
             }
-            items[i] = null;
         }
-        breturnArray.size = 0;
+        result.clear();
+    }
+
+    /** Adds every building with a hitbox in the square around this position to the array. */
+    private void collectBuildings(Seq<Building> out, float x, float y, float range){
+        for(int i = 0; i < activeTeams.size; i++){
+            Team team = activeTeams.items[i];
+            var buildings = state.teams.buildingTree(team);
+            if(buildings == null) continue;
+            buildings.intersect(x - range, y - range, range*2f, range*2f, out);
+        }
     }
 
     public Building findEnemyTile(Team team, float x, float y, float range, BuildingPriorityf priority, Boolf<Building> pred){
@@ -458,6 +489,15 @@ public class BlockIndexer{
     }
 
     public Building findEnemyTile(Team team, float x, float y, float range, BuildingPriorityf priority, Boolf<Building> pred, @Nullable Team source){
+        var query = SpatialQuery.obtain();
+        try{
+            return findEnemyTile(query, team, x, y, range, priority, pred, source);
+        }finally{
+            query.free();
+        }
+    }
+
+    public Building findEnemyTile(SpatialQuery query, Team team, float x, float y, float range, BuildingPriorityf priority, Boolf<Building> pred, @Nullable Team source){
         Building target = null;
         float targetDist = 0;
 
@@ -465,7 +505,7 @@ public class BlockIndexer{
             Team enemy = activeTeams.items[i];
             if(enemy == team || (enemy == Team.derelict && !state.rules.coreCapture)) continue;
 
-            Building candidate = findTile(enemy, x, y, range, b -> pred.get(b) && b.isDiscovered(team), true, source);
+            Building candidate = findTile(query, enemy, x, y, range, pred, true, source, team);
             if(candidate == null) continue;
 
             //if a block has the same priority, the closer one should be targeted
@@ -496,18 +536,29 @@ public class BlockIndexer{
     }
 
     public Building findTile(Team team, float x, float y, float range, Boolf<Building> pred, boolean usePriority, @Nullable Team source){
+        var query = SpatialQuery.obtain();
+        try{
+            return findTile(query, team, x, y, range, pred, usePriority, source, null);
+        }finally{
+            query.free();
+        }
+    }
+
+    /** @param discoverer if not null, only buildings discovered by this team are returned. */
+    public Building findTile(SpatialQuery query, Team team, float x, float y, float range, Boolf<Building> pred, boolean usePriority, @Nullable Team source, @Nullable Team discoverer){
         Building closest = null;
         float dst = 0;
-        var buildings = team.data().buildingTree;
+        var buildings = state.teams.buildingTree(team);
         if(buildings == null) return null;
 
-        breturnArray.clear();
-        buildings.intersect(rect.setCentered(x, y, range * 2f), breturnArray);
+        var result = query.buildings;
+        result.clear();
+        buildings.intersect(query.rect.setCentered(x, y, range * 2f), result);
 
-        for(int i = 0; i < breturnArray.size; i++){
-            var next = breturnArray.items[i];
+        for(int i = 0; i < result.size; i++){
+            var next = result.items[i];
 
-            if(!pred.get(next) || (next.team != source && !next.block.targetable)) continue;
+            if(!pred.get(next) || (discoverer != null && !next.isDiscovered(discoverer)) || (next.team != source && !next.block.targetable)) continue;
 
             float bdst = next.dst(x, y) - next.hitSize() / 2f;
             if(bdst < range && (closest == null ||
@@ -519,6 +570,7 @@ public class BlockIndexer{
                 closest = next;
             }
         }
+        result.clear();
 
         return closest;
     }
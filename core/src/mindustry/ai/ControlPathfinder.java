@@ -16,6 +16,8 @@ import mindustry.gen.*;
 import mindustry.graphics.*;
 import mindustry.world.*;
 
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 import static mindustry.ai.Pathfinder.*;
 
@@ -27,6 +29,8 @@ public class ControlPathfinder implements Runnable{
     private static boolean initialized;
 
     public static boolean showDebug;
+    /** Amount of threads cluster and flow field updates are spread across. With 1, everything runs on the pathfinding thread. Applies on world load. */
+    public static int workers = Math.max(OS.cores - 1, 1);
 
     public static final PathCost
 
@@ -113,8 +117,8 @@ public class ControlPathfinder implements Runnable{
     final Cluster[][][] clusters = new Cluster[256][][];
     final int cwidth = Mathf.ceil((float)world.width() / clusterSize), cheight = Mathf.ceil((float)world.height() / clusterSize);
 
-    //temporarily used for resolving connections for intra-edges
-    final IntSet usedEdges = new IntSet();
+    //temporarily used for resolving connections for intra-edges; per thread, as clusters of different teams/costs are updated concurrently
+    final ThreadLocal<IntSet> usedEdges = Threads.local(IntSet::new);
     //tasks to run on pathfinding thread
     final TaskQueue queue = new TaskQueue();
 
@@ -132,18 +136,25 @@ public class ControlPathfinder implements Runnable{
     final Seq<FieldCache> fieldList = new Seq<>(false);
 
     //these are for inner edge A* (temporary!)
-    final IntFloatMap innerCosts = new IntFloatMap();
-    final PathfindQueue innerFrontier = new PathfindQueue();
+    final ThreadLocal<IntFloatMap> innerCosts = Threads.local(IntFloatMap::new);
+    final ThreadLocal<PathfindQueue> innerFrontier = Threads.local(PathfindQueue::new);
 
     //ONLY modify on pathfinding thread.
     final IntSet clustersToUpdate = new IntSet();
     final IntSet clustersToInnerUpdate = new IntSet();
+    //copies of the above for workers to iterate, as set iterators are shared
+    final IntSeq clusterUpdateList = new IntSeq(), clusterInnerUpdateList = new IntSeq();
 
     //PATHFINDING THREAD - requests that should be recomputed
     final ObjectSet<PathRequest> invalidRequests = new ObjectSet<>();
 
     /** Current pathfinding thread */
     @Nullable Thread thread;
+    /** Runs cluster and flow field updates for the pathfinding thread. Null if there is only one worker. */
+    @Nullable ExecutorService executor;
+    //PATHFINDING THREAD - pending worker tasks
+    final Seq<Future<?>> futures = new Seq<>();
+    final Seq<FieldCache> updatingFields = new Seq<>(false);
 
     /** If true, this pathfinder is no longer relevant (stopped) and its errors can be ignored. */
     volatile boolean invalidated;
@@ -398,6 +409,15 @@ public class ControlPathfinder implements Runnable{
     private void start(){
         if(net.client() || thread != null) return;
 
+        if(workers > 1){
+            executor = Executors.newFixedThreadPool(workers, r -> {
+                Thread worker = new Thread(r, "Control Pathfinder Worker");
+                worker.setPriority(Thread.MIN_PRIORITY);
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+
         thread = new Thread(this, "Control Pathfinder");
         thread.setPriority(Thread.MIN_PRIORITY);
         thread.setDaemon(true);
@@ -410,6 +430,10 @@ public class ControlPathfinder implements Runnable{
             thread.interrupt();
             thread = null;
         }
+        if(executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
         invalidated = true;
         queue.clear();
     }
@@ -556,6 +580,7 @@ public class ControlPathfinder implements Runnable{
     void updateInnerEdges(int team, PathCost cost, int cx, int cy, Cluster cluster){
         int minX = cx * clusterSize, minY = cy * clusterSize, maxX = Math.min(minX + clusterSize - 1, wwidth - 1), maxY = Math.min(minY + clusterSize - 1, wheight - 1);
 
+        var usedEdges = this.usedEdges.get();
         usedEdges.clear();
 
         //clear all connections, since portals changed, they need to be recomputed.
@@ -644,8 +669,8 @@ public class ControlPathfinder implements Runnable{
 
     /** @return -1 if no path was found */
     float innerAstar(int team, PathCost cost, int minX, int minY, int maxX, int maxY, int startPos, int goalPos, int goalX1, int goalY1, int goalX2, int goalY2){
-        var frontier = innerFrontier;
-        var costs = innerCosts;
+        var frontier = innerFrontier.get();
+        var costs = innerCosts.get();
 
         frontier.clear();
         costs.clear();
@@ -1481,35 +1506,48 @@ public class ControlPathfinder implements Runnable{
 
     }
 
-    private void updateClustersComplete(int clusterIndex){
+    /**
+     * Recomputes portals and inner edges of all queued clusters.
+     * Clusters of different teams and path costs never share data, so each team/cost pair is updated as one worker task;
+     * within a pair, clusters are updated in the same order as they would be serially.
+     * Cluster data written by the workers is published to the pathfinding thread by waiting on their futures.
+     */
+    private void updateClusters(){
+        futures.clear();
+        clusterUpdateList.clear();
+        clusterInnerUpdateList.clear();
+        clustersToUpdate.each(clusterUpdateList::add);
+        clustersToInnerUpdate.each(clusterInnerUpdateList::add);
+
         for(int team = 0; team < clusters.length; team++){
             var dim1 = clusters[team];
             if(dim1 != null){
                 for(int pathCost = 0; pathCost < dim1.length; pathCost++){
                     var dim2 = dim1[pathCost];
                     if(dim2 != null){
-                        var cluster = dim2[clusterIndex];
-                        if(cluster != null){
-                            updateCluster(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
-                            clusterChanged(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
-                        }
+                        int t = team, c = pathCost;
+                        submit(() -> updateClusters(t, c, dim2));
                     }
                 }
             }
         }
-    }
 
-    private void updateClustersInner(int clusterIndex){
+        awaitTasks();
+
+        //invalidating requests touches shared state, so it happens afterwards
         for(int team = 0; team < clusters.length; team++){
             var dim1 = clusters[team];
             if(dim1 != null){
                 for(int pathCost = 0; pathCost < dim1.length; pathCost++){
                     var dim2 = dim1[pathCost];
                     if(dim2 != null){
-                        var cluster = dim2[clusterIndex];
-                        if(cluster != null){
-                            updateInnerEdges(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth, cluster);
-                            clusterChanged(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
+                        for(int i = 0; i < clusterUpdateList.size; i++){
+                            int cluster = clusterUpdateList.items[i];
+                            if(dim2[cluster] != null) clusterChanged(team, pathCost, cluster % cwidth, cluster / cwidth);
+                        }
+                        for(int i = 0; i < clusterInnerUpdateList.size; i++){
+                            int cluster = clusterInnerUpdateList.items[i];
+                            if(dim2[cluster] != null) clusterChanged(team, pathCost, cluster % cwidth, cluster / cwidth);
                         }
                     }
                 }
@@ -1517,6 +1555,48 @@ public class ControlPathfinder implements Runnable{
         }
     }
 
+    private void updateClusters(int team, int pathCost, Cluster[] dim2){
+        for(int i = 0; i < clusterUpdateList.size; i++){
+            int clusterIndex = clusterUpdateList.items[i];
+            if(dim2[clusterIndex] != null){
+                updateCluster(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
+            }
+        }
+
+        for(int i = 0; i < clusterInnerUpdateList.size; i++){
+            int clusterIndex = clusterInnerUpdateList.items[i];
+            var cluster = dim2[clusterIndex];
+            if(cluster != null){
+                updateInnerEdges(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth, cluster);
+            }
+        }
+    }
+
+    /** Runs a task on a worker, or immediately if there are no workers. Pathfinding thread only. */
+    private void submit(Runnable task){
+        if(executor == null){
+            task.run();
+        }else{
+            futures.add(executor.submit(task));
+        }
+    }
+
+    /** Waits for all submitted worker tasks. Pathfinding thread only. */
+    private void awaitTasks(){
+        try{
+            for(var future : futures){
+                future.get();
+            }
+        }catch(InterruptedException e){
+            //stopped; the next sleep returns
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            throw new RuntimeException(e);
+        }finally{
+            futures.clear();
+        }
+    }
+
     @Override
     public void run(){
         long lastInvalidCheck = Time.millis() + invalidateCheckInterval;
@@ -1527,17 +1607,12 @@ public class ControlPathfinder implements Runnable{
                 if(state.isPlaying()){
                     queue.run();
 
-                    clustersToUpdate.each(cluster -> {
-                        updateClustersComplete(cluster);
-
-                        //just in case: don't redundantly update inner clusters after you've recalculated it entirely
-                        clustersToInnerUpdate.remove(cluster);
-                    });
+                    //just in case: don't redundantly update inner clusters after you've recalculated it entirely
+                    clustersToUpdate.each(clustersToInnerUpdate::remove);
 
-                    clustersToInnerUpdate.each(cluster -> {
-                        //only recompute the inner links
-                        updateClustersInner(cluster);
-                    });
+                    if(!clustersToUpdate.isEmpty() || !clustersToInnerUpdate.isEmpty()){
+                        updateClusters();
+                    }
 
                     clustersToInnerUpdate.clear();
                     clustersToUpdate.clear();
@@ -1591,12 +1666,19 @@ public class ControlPathfinder implements Runnable{
                         }
                     }
 
-                    //each update time (not total!) no longer than maxUpdate
+                    //each update time (not total!) no longer than maxUpdate; every field only touches its own frontier and weights
+                    updatingFields.clear();
                     fields.eachValue(cache -> {
-                        if(cache != null){
-                            updateFields(cache, maxUpdate);
+                        if(cache != null && !cache.frontier.isEmpty()){
+                            updatingFields.add(cache);
                         }
                     });
+
+                    for(var cache : updatingFields){
+                        submit(() -> updateFields(cache, maxUpdate));
+                    }
+                    awaitTasks();
+                    updatingFields.clear();
                 }
 
                 try{
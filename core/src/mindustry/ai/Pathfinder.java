@@ -19,6 +19,7 @@ import mindustry.world.blocks.storage.*;
 import mindustry.world.meta.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import static mindustry.Vars.*;
 import static mindustry.world.meta.BlockFlag.*;
@@ -103,9 +104,18 @@ public class Pathfinder implements Runnable{
     TaskQueue queue = new TaskQueue();
     /** Current pathfinding thread */
     @Nullable Thread thread;
+    /** Amount of threads flow fields are updated on. With 1, every field is updated on the pathfinding thread itself. */
+    public int workers = Math.max(OS.cores - 1, 1);
     IntSeq tmpArray = new IntSeq();
 
     boolean needsRefresh;
+    /** If true, flow fields whose targets did not change are repaired around changed tiles, instead of being recomputed from scratch. */
+    public boolean incrementalRepair = true;
+    /** Tiles changed since the last refresh. Main thread only. */
+    IntSeq changedTiles = new IntSeq();
+    /** Flow field tiles invalidated by a repair. Pathfinding thread only. */
+    IntSeq repairAffected = new IntSeq();
+    IntQueue repairQueue = new IntQueue();
     /** Last time flowfields were refreshed, for timestamp-based refresh interval. */
     private long lastRefreshTime;
     /** Minimum interval between flowfield refreshes in milliseconds. */
@@ -123,6 +133,7 @@ public class Pathfinder implements Runnable{
             wheight = world.height();
             threadList = new Seq<>();
             mainList = new Seq<>();
+            changedTiles.clear();
             clearCache();
 
             for(int i = 0; i < tiles.length; i++){
@@ -192,28 +203,138 @@ public class Pathfinder implements Runnable{
             if(now - lastRefreshTime < refreshIntervalMs) return;
 
             lastRefreshTime = now;
-            needsRefresh = false;
-
-            //can't iterate through array so use the map, which should not lead to problems
-            for(Flowfield path : mainList){
-                //paths with a refresh rate should not be updated by tiles changing
-                if(path != null && path.needsRefresh()){
-                    synchronized(path.targets){
-                        //TODO: this is super slow and forces a refresh for every tile changed!
-                        path.updateTargetPositions();
+            refreshFields();
+        });
+    }
+
+    /** Updates flow field targets and queues a repair or recomputation of every field for the tiles changed since the last refresh. Main thread only. */
+    public void refreshFields(){
+        needsRefresh = false;
+
+        Seq<Flowfield> retarget = new Seq<>();
+
+        //can't iterate through array so use the map, which should not lead to problems
+        for(Flowfield path : mainList){
+            //paths with a refresh rate should not be updated by tiles changing
+            if(path != null && path.needsRefresh()){
+                synchronized(path.targets){
+                    //TODO: this is super slow and forces a refresh for every tile changed!
+                    tmpArray.clear();
+                    tmpArray.addAll(path.targets);
+                    path.updateTargetPositions();
+
+                    if(!tmpArray.equals(path.targets)){
+                        retarget.add(path);
                     }
                 }
             }
+        }
+
+        IntSeq changed = new IntSeq(changedTiles);
+        boolean incremental = incrementalRepair;
+        changedTiles.clear();
 
-            //mark every flow field as dirty, so it updates when it's done
-            queue.post(() -> {
-                for(Flowfield data : threadList){
+        //repair fields around the changed tiles; fields with new targets are marked as dirty, so they update when they're done
+        queue.post(() -> {
+            for(Flowfield data : threadList){
+                if(!incremental || retarget.contains(data, true) || !repair(data, changed)){
                     data.dirty = true;
                 }
-            });
+            }
         });
     }
 
+    /**
+     * Repairs a complete flow field after the costs of some tiles changed, without a new search.
+     * Every tile whose weight could have been derived through a changed tile is invalidated, then recomputed from the valid tiles around it;
+     * this handles both cost increases and decreases. Pathfinding thread only.
+     * @return false if the field can't be repaired, and needs to be recomputed instead.
+     */
+    boolean repair(Flowfield path, IntSeq changed){
+        if(!path.initialized || path.resolution != 1 || path.dirty || path.frontier.size > 0) return false;
+        if(changed.isEmpty()) return true;
+
+        int w = path.width, h = path.height, search = path.search;
+        int[] weights = path.weights;
+        short[] searches = path.searches;
+        var affected = repairAffected;
+        var open = repairQueue;
+        affected.clear();
+        open.clear();
+
+        //changed tiles and their neighbors, which may have changed nearSolid/nearLiquid flags
+        for(int i = 0; i < changed.size; i++){
+            int pos = changed.items[i], x = pos % w, y = pos / w;
+            invalidate(path, pos);
+            for(Point2 point : Geometry.d4){
+                int nx = x + point.x, ny = y + point.y;
+                if(nx >= 0 && ny >= 0 && nx < w && ny < h){
+                    invalidate(path, nx + ny * w);
+                }
+            }
+        }
+
+        //flood through every tile that may have gotten its weight through an invalidated tile
+        while(open.size > 0){
+            int pos = open.removeLast(), x = pos % w, y = pos / w, weight = weights[pos];
+            for(Point2 point : Geometry.d4){
+                int nx = x + point.x, ny = y + point.y;
+                if(nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
+
+                int other = nx + ny * w, otherCost = path.getCost(tiles, other);
+                if(searches[other] == search && otherCost != impassable && weights[other] == weight + otherCost){
+                    invalidate(path, other);
+                }
+            }
+        }
+
+        //a change this large would seed most of the map anyway, and could overflow the frontier
+        if(affected.size * 4 >= w * h){
+            affected.clear();
+            return false;
+        }
+
+        //the invalidated tiles are now from an older search, and get overwritten by the first valid neighbor that reaches them
+        for(int i = 0; i < affected.size; i++){
+            weights[affected.items[i]] = impassable;
+        }
+
+        for(int i = 0; i < affected.size; i++){
+            int pos = affected.items[i], x = pos % w, y = pos / w;
+            for(Point2 point : Geometry.d4){
+                int nx = x + point.x, ny = y + point.y;
+                if(nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
+
+                int other = nx + ny * w;
+                if(searches[other] == search && weights[other] != impassable){
+                    path.frontier.addFirst(other);
+                }
+            }
+        }
+
+        synchronized(path.targets){
+            for(int i = 0; i < path.targets.size; i++){
+                int pos = path.targets.get(i);
+                if(pos < weights.length && searches[pos] != search){
+                    weights[pos] = 0;
+                    searches[pos] = (short)search;
+                    path.frontier.addFirst(pos);
+                }
+            }
+        }
+
+        affected.clear();
+        return true;
+    }
+
+    private void invalidate(Flowfield path, int pos){
+        if(path.searches[pos] == path.search){
+            path.searches[pos] = (short)(path.search - 1);
+            repairAffected.add(pos);
+            repairQueue.addFirst(pos);
+        }
+    }
+
     private void clearCache(){
         cache = new Flowfield[256][maxCosts][maxFields];
     }
@@ -303,7 +424,7 @@ public class Pathfinder implements Runnable{
     }
 
     /** Update a tile in the internal pathfinding grid.
-     * Causes a complete pathfinding recalculation. Main thread only. */
+     * Causes flow fields to be repaired around the tile, or recalculated if their targets changed. Main thread only. */
     public void updateTile(Tile tile){
         if(net.client()) return;
 
@@ -311,6 +432,7 @@ public class Pathfinder implements Runnable{
             int pos = t.array();
             if(pos < tiles.length){
                 tiles[pos] = packTile(t);
+                changedTiles.add(pos);
             }
         });
 
@@ -323,38 +445,93 @@ public class Pathfinder implements Runnable{
     /** Thread implementation. */
     @Override
     public void run(){
-        while(true){
-            if(net.client()) return;
-            try{
-
-                if(state.isPlaying()){
-                    queue.run();
+        //owned by this thread, so a restarted pathfinder never shares workers with one that is still shutting down
+        FieldPool pool = new FieldPool();
+        try{
+            while(true){
+                if(net.client()) return;
+                try{
 
-                    //each update time (not total!) no longer than maxUpdate
-                    for(Flowfield data : threadList){
+                    if(state.isPlaying()){
+                        queue.run();
 
-                        //if it's dirty and there is nothing to update, begin updating once more
-                        if(data.dirty && data.frontier.size == 0){
-                            updateTargets(data);
-                            data.dirty = false;
-                        }
+                        //each update time (not total!) no longer than maxUpdate
+                        updateFields(maxUpdate, pool);
+                    }
 
-                        updateFrontier(data, maxUpdate);
+                    try{
+                        Thread.sleep(updateInterval);
+                    }catch(InterruptedException e){
+                        //stop looping when interrupted externally
+                        return;
                     }
+                }catch(Throwable e){
+                    e.printStackTrace();
                 }
+            }
+        }finally{
+            pool.shutdown();
+        }
+    }
 
-                try{
-                    Thread.sleep(updateInterval);
-                }catch(InterruptedException e){
-                    //stop looping when interrupted externally
-                    return;
-                }
-            }catch(Throwable e){
-                e.printStackTrace();
+    /**
+     * Runs all queued tasks, then updates every flow field until its frontier is empty. This blocks until all fields are complete.
+     * Only call this when the pathfinding thread is idle, e.g. when the game is not playing.
+     */
+    public void updateAll(){
+        FieldPool pool = new FieldPool();
+        try{
+            queue.run();
+            updateFields(-1, pool);
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Updates every flow field for at most nsToRun each (-1 for no limit). Fields do not share any mutable state, and only read the tile array,
+     * so with more than one worker each field is updated in its own task on the pool of the calling thread.
+     */
+    void updateFields(long nsToRun, FieldPool pool){
+        if(workers <= 1 || threadList.size <= 1){
+            for(Flowfield data : threadList){
+                updateField(data, nsToRun);
             }
+            return;
+        }
+
+        ExecutorService executor = pool.get(workers);
+        var futures = pool.futures;
+
+        futures.clear();
+        for(Flowfield data : threadList){
+            futures.add(executor.submit(() -> updateField(data, nsToRun)));
+        }
+
+        try{
+            for(var future : futures){
+                future.get();
+            }
+        }catch(InterruptedException e){
+            //the pathfinding thread was stopped; its workers are shut down when it exits
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            throw new RuntimeException(e);
+        }finally{
+            futures.clear();
         }
     }
 
+    private void updateField(Flowfield data, long nsToRun){
+        //if it's dirty and there is nothing to update, begin updating once more
+        if(data.dirty && data.frontier.size == 0){
+            updateTargets(data);
+            data.dirty = false;
+        }
+
+        updateFrontier(data, nsToRun);
+    }
+
     public Flowfield getField(Team team, int costType, int fieldType){
         if(cache[team.id][costType][fieldType] == null){
             Flowfield field = fieldTypes.get(fieldType).get();
@@ -389,7 +566,44 @@ public class Pathfinder implements Runnable{
             return tile;
         }
 
-        //if refresh rate is positive, queue a refresh
+        refreshTargets(path);
+
+        return nextTile(tile, path, diagonals, avoidanceId, avoidanceId <= 0 ? null : avoidance.getAvoidance());
+    }
+
+    /**
+     * Gets next tile to travel to like {@link #getTargetTile(Tile, Flowfield, boolean, int)}, but does not refresh the field or start avoidance.
+     * Can be called from any thread while units are not being updated.
+     * @return the next tile, or null if the field can not be used yet.
+     */
+    public @Nullable Tile peekTargetTile(Tile tile, Flowfield path, boolean diagonals, int avoidanceId){
+        if(!path.initialized || path.targets.size == 0) return null;
+
+        return nextTile(tile, path, diagonals, avoidanceId, avoidanceId <= 0 ? null : avoidance.peekAvoidance());
+    }
+
+    /**
+     * Finishes a lookup made with {@link #peekTargetTile(Tile, Flowfield, boolean, int)} earlier in the same frame, doing what
+     * {@link #getTargetTile(Tile, Flowfield, boolean, int)} does on the main thread. Main thread only.
+     * @return the peeked tile, or the tile itself if the field has no targets anymore.
+     */
+    public @Nullable Tile confirmTargetTile(Tile tile, Flowfield path, int avoidanceId, Tile peeked){
+        if(tile == null) return null;
+        if(!path.initialized || path.targets.size == 0) return tile;
+
+        refreshTargets(path);
+        if(avoidanceId > 0) avoidance.getAvoidance();
+
+        return peeked;
+    }
+
+    /** @return the flow field if it was already created, or null. Unlike {@link #getField(Team, int, int)}, this can be called from any thread. */
+    public @Nullable Flowfield getFieldOrNull(Team team, int costType, int fieldType){
+        return cache == null ? null : cache[team.id][costType][fieldType];
+    }
+
+    /** If the refresh rate of the field has passed, gets its targets again and queues an update. Main thread only. */
+    private void refreshTargets(Flowfield path){
         if(path.refreshRate > 0 && path.refreshRate != neverRefresh && Time.timeSinceMillis(path.lastUpdateTime) > path.refreshRate && path.frontier.size == 0){
             path.lastUpdateTime = Time.millis();
 
@@ -403,7 +617,9 @@ public class Pathfinder implements Runnable{
                 queue.post(() -> updateTargets(path));
             }
         }
+    }
 
+    private Tile nextTile(Tile tile, Flowfield path, boolean diagonals, int avoidanceId, @Nullable int[] avoid){
         //use complete weights if possible; these contain a complete flow field that is not being updated
         int[] values = path.hasComplete ? path.completeWeights : path.weights;
         int res = path.resolution;
@@ -412,7 +628,6 @@ public class Pathfinder implements Runnable{
         int value = values[apos];
 
         var points = diagonals ? Geometry.d8 : Geometry.d4;
-        int[] avoid = avoidanceId <= 0 ? null : avoidance.getAvoidance();
 
         Tile current = null;
         int tl = 0;
@@ -745,4 +960,32 @@ public class Pathfinder implements Runnable{
         //block teamPassable is true
         boolean teamPassable;
     }
+
+    /** Worker threads that update flow fields for a single caller of {@link #updateFields(long, FieldPool)}. */
+    static class FieldPool{
+        final Seq<Future<?>> futures = new Seq<>();
+        @Nullable ExecutorService executor;
+        int size;
+
+        ExecutorService get(int workers){
+            if(executor == null || size != workers){
+                if(executor != null) executor.shutdown();
+                size = workers;
+                executor = Executors.newFixedThreadPool(workers, r -> {
+                    Thread thread = new Thread(r, "Pathfinder Worker");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return executor;
+        }
+
+        void shutdown(){
+            if(executor != null){
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
 }
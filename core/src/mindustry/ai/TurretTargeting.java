@@ -0,0 +1,137 @@
+package mindustry.ai;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.entities.*;
+import mindustry.entities.Units.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+import mindustry.logic.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Shared per-frame target candidates for turrets.
+ * <p>
+ * Turrets of the same team that are close to each other scan mostly the same enemy units. Instead of one quadtree query per turret,
+ * enemy units are collected once per frame for every {@link #cellSize} cell that contains a retargeting turret.
+ * The collection rectangle is the cell expanded by the largest range of the team's turrets in that cell, which is looked up in the turret tree.
+ * Each turret then only applies its own predicate and {@link Sortf} to that candidate list.
+ * <p>
+ * Units that are spawned during the building update are not visible to turrets until the next frame. Must only be used on the main thread.
+ */
+public class TurretTargeting{
+    /** Side length of a candidate cell in world units. */
+    public static final float cellSize = tilesize * 16f;
+
+    /** If false, queries are equivalent to the methods in {@link Units}. */
+    public boolean enabled = false;
+
+    /** Query and cell scan counts of the last frame, for debugging. */
+    public int lastQueries, lastScans;
+
+    private final IntMap<Cell> cells = new IntMap<>();
+    private long frame = -1;
+    private int queries, scans;
+
+    //used by the turret tree lookup
+    private float maxRange, cellX, cellY;
+    private final Cons<Building> rangeCons = b -> {
+        if(b.x >= cellX && b.y >= cellY && b.x < cellX + cellSize && b.y < cellY + cellSize){
+            maxRange = Math.max(maxRange, ((Ranged)b).range());
+        }
+    };
+
+    /** @see Units#bestTarget(Team, float, float, float, Boolf, Boolf, Sortf) */
+    public Teamc bestTarget(Team team, float x, float y, float range, Boolf<Unit> unitPred, Boolf<Building> tilePred, Sortf sort){
+        if(!enabled) return Units.bestTarget(team, x, y, range, unitPred, tilePred, sort);
+        if(team == Team.derelict) return null;
+
+        Unit unit = bestEnemy(team, x, y, range, unitPred, sort);
+        if(unit != null){
+            return unit;
+        }else{
+            return Units.findEnemyTile(team, x, y, range, tilePred);
+        }
+    }
+
+    /** @see Units#bestEnemy(Team, float, float, float, Boolf, Sortf) */
+    public Unit bestEnemy(Team team, float x, float y, float range, Boolf<Unit> predicate, Sortf sort){
+        if(!enabled) return Units.bestEnemy(team, x, y, range, predicate, sort);
+        if(team == Team.derelict) return null;
+
+        var candidates = candidates(team, x, y, range);
+        var items = candidates.items;
+
+        Unit result = null;
+        float cdist = 0f, cpriority = -99999f;
+
+        for(int i = 0; i < candidates.size; i++){
+            Unit e = items[i];
+            if(e.dead() || !predicate.get(e) || e.team == Team.derelict || !e.within(x, y, range + e.hitSize/2f) || !e.targetable(team) || e.inFogTo(team)) continue;
+
+            float cost = sort.cost(e, x, y);
+            if((result == null || cost < cdist || e.type.targetPriority > cpriority) && e.type.targetPriority >= cpriority){
+                result = e;
+                cdist = cost;
+                cpriority = e.type.targetPriority;
+            }
+        }
+
+        return result;
+    }
+
+    /** Drops all cached cells. Called when a new world is loaded. */
+    public void clear(){
+        cells.clear();
+        frame = -1;
+    }
+
+    /** @return enemy units that may be within range of this position. Valid until the next frame. */
+    private Seq<Unit> candidates(Team team, float x, float y, float range){
+        if(frame != state.updateId){
+            frame = state.updateId;
+            lastQueries = queries;
+            lastScans = scans;
+            queries = scans = 0;
+        }
+        queries ++;
+
+        int width = Math.max((int)Math.ceil(world.unitWidth() / cellSize), 1);
+        int cx = Math.max((int)(x / cellSize), 0), cy = Math.max((int)(y / cellSize), 0);
+        int key = (cx + cy * width) * Team.all.length + team.id;
+
+        Cell cell = cells.get(key);
+        if(cell == null){
+            cells.put(key, cell = new Cell());
+        }
+
+        if(cell.frame != frame || cell.expansion < range){
+            scans ++;
+            cellX = cx * cellSize;
+            cellY = cy * cellSize;
+            maxRange = range;
+
+            var turrets = team.data().turretTree;
+            if(turrets != null){
+                turrets.intersect(cellX, cellY, cellSize, cellSize, rangeCons);
+            }
+
+            float expand = Math.max(maxRange, cell.frame == frame ? cell.expansion : 0f);
+            cell.frame = frame;
+            cell.expansion = expand;
+            cell.units.clear();
+            Units.nearbyEnemies(team, cellX - expand, cellY - expand, cellSize + expand * 2f, cellSize + expand * 2f, cell.adder);
+        }
+
+        return cell.units;
+    }
+
+    static class Cell{
+        final Seq<Unit> units = new Seq<>(false, 16, Unit.class);
+        final Cons<Unit> adder = units::add;
+        long frame = -1;
+        float expansion;
+    }
+}
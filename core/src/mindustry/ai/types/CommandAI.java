@@ -187,6 +187,17 @@ public class CommandAI extends AIController{
         }
     }
 
+    @Override
+    public void think(){
+        //the command controller is updated instead of this one, unless the command changes in the update
+        if(command == lastCommand && commandController != null){
+            if(commandController != this && commandController.unit() == unit) commandController.think();
+            return;
+        }
+
+        super.think();
+    }
+
     @Override
     public Teamc findMainTarget(float x, float y, float range, boolean air, boolean ground){
         if(!unit.type.autoFindTarget && !hasStance(UnitStance.patrol) && !(targetPos == null || nearAttackTarget(unit.x, unit.y, unit.range()))){
@@ -541,9 +552,9 @@ public class CommandAI extends AIController{
     }
 
     @Override
-    public boolean retarget(){
+    public float retargetTime(@Nullable Teamc target){
         //retarget faster when there is an explicit target
-        return timer.get(timerTarget, attackTarget != null ? 10f : 20f);
+        return attackTarget != null ? 10f : 20f;
     }
 
     public boolean hasCommand(){
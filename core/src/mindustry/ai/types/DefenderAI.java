@@ -19,9 +19,18 @@ public class DefenderAI extends AIController{
         }
     }
 
+    @Override
+    public void think(){
+        if(willRetarget()){
+            plannedFrame = state.updateId;
+            plannedTarget = findTarget(unit.x, unit.y, unit.range(), true, true);
+        }
+    }
+
     @Override
     public void updateTargeting(){
-        if(retarget()) target = findTarget(unit.x, unit.y, unit.range(), true, true);
+        boolean planned = usePlan();
+        if(retarget()) target = planned ? plannedTarget : findTarget(unit.x, unit.y, unit.range(), true, true);
     }
     
     @Override
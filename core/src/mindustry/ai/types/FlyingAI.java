@@ -1,6 +1,7 @@
 package mindustry.ai.types;
 
 import arc.math.*;
+import arc.util.*;
 import mindustry.entities.units.*;
 import mindustry.gen.*;
 import mindustry.world.meta.*;
@@ -9,7 +10,7 @@ import static mindustry.Vars.*;
 import static mindustry.world.meta.BlockFlag.*;
 
 public class FlyingAI extends AIController{
-    final static Rand rand = new Rand();
+    final static ThreadLocal<Rand> rand = Threads.local(Rand::new);
     final static BlockFlag[] randomTargets = {core, storage, generator, launchPad, factory, repair, battery, reactor, drill};
 
     @Override
@@ -48,6 +49,7 @@ public class FlyingAI extends AIController{
 
         if(state.rules.randomWaveAI){
             //when there are no waves, it's just random based on the unit
+            var rand = FlyingAI.rand.get();
             rand.setSeed(unit.type.id + (state.rules.waves ? state.wave : unit.id));
             //try a few random flags first
             for(int attempt = 0; attempt < 5; attempt++){
@@ -137,6 +137,11 @@ public class LogicAI extends AIController{
         return true;
     }
 
+    @Override
+    public boolean willRetarget(){
+        return true;
+    }
+
     @Override
     public boolean invalid(Teamc target){
         return false;
@@ -43,8 +43,8 @@ public class MissileAI extends AIController{
     }
 
     @Override
-    public boolean retarget(){
+    public float retargetTime(@Nullable Teamc target){
         //more frequent retarget due to high speed. TODO won't this lag?
-        return timer.get(timerTarget, 4f);
+        return 4f;
     }
 }
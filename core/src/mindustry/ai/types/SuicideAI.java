@@ -17,14 +17,27 @@ import static mindustry.Vars.*;
 public class SuicideAI extends GroundAI{
     static boolean blockedByBlock;
 
+    @Override
+    public void think(){
+        planPath();
+
+        //the update clears invalid targets before retargeting
+        Teamc current = Units.invalidateTarget(target, unit.team, unit.x, unit.y, Float.MAX_VALUE) ? null : target;
+        if(timer.check(timerTarget, retargetTime(current))){
+            plannedFrame = state.updateId;
+            plannedTarget = target(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
+        }
+    }
+
     @Override
     public void updateUnit(){
         if(Units.invalidateTarget(target, unit.team, unit.x, unit.y, Float.MAX_VALUE)){
             target = null;
         }
 
+        boolean planned = usePlan();
         if(retarget()){
-            target = target(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
+            target = planned ? plannedTarget : target(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
         }
 
         Building core = unit.closestEnemyCore();
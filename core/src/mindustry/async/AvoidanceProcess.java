@@ -33,6 +33,11 @@ public class AvoidanceProcess implements AsyncProcess{
         return avoidance;
     }
 
+    /** @return the same as {@link #getAvoidance()}, but does not start processing. Can be called from any thread. */
+    public @Nullable int[] peekAvoidance(){
+        return avoidance;
+    }
+
     @Override
     public void init(){
         wwidth = Vars.world.width();
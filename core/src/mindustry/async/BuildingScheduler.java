@@ -0,0 +1,325 @@
+package mindustry.async;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+import mindustry.type.*;
+import mindustry.world.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Optional replacement for the serial {@code Groups.build.update()} call.
+ * <p>
+ * Buildings marked with {@link Block#parallelUpdate} are split into connected groups through their proximity.
+ * Groups are spread over batches, which are updated on the main executor; each batch updates its buildings in group order.
+ * All other buildings are updated serially afterwards, in group order.
+ * <p>
+ * Nothing outside of a group runs while batches are updating, so the only state a batch can share with another one is that of buildings
+ * outside of both, such as a factory or core fed by several conveyor lines. Item transfers into such buildings are deferred through
+ * {@link #deferTransfer(Building, Building, Item)}: the source keeps the item, and {@link Building#passDeferred(Building, Item)}
+ * is called for it on the calling thread once all batches are done, in batch and update order.
+ * <p>
+ * The result does not depend on the amount of threads. It matches {@code Groups.build.update()} exactly for groups that touch no other block;
+ * otherwise, it differs in these ways:
+ * <ul>
+ * <li>Deferred items arrive after every batch instead of during the update of their source, and buildings that are not in a group
+ * are updated after all groups instead of in between them.</li>
+ * <li>Sleep/wake requests made in a batch are queued, then applied on the calling thread in batch order once all batches are done.
+ * A serial update removes sleeping buildings from the group immediately, which moves the last building of the group into their slot,
+ * and updates woken buildings later in the same frame. Frames in which a building starts or stops sleeping may thus differ from a serial update.</li>
+ * </ul>
+ */
+public class BuildingScheduler{
+    private static final ThreadLocal<Batch> current = new ThreadLocal<>();
+    private static volatile boolean updating;
+
+    /** If false, {@link #update()} is equivalent to {@code Groups.build.update()}. */
+    public boolean enabled = false;
+    /** If false, batches are still partitioned and merged in the same order, but updated on the calling thread. */
+    public boolean multithreaded = true;
+    /** Below this amount of buildings in groups, everything is updated serially. */
+    public int minParallelBuildings = 1024;
+
+    /** Amount of buildings updated in batches last update, and how many items they passed on after the batches, for debugging. */
+    public int lastBatched, lastDeferred;
+
+    private final Seq<Building> snapshot = new Seq<>(false, 64, Building.class);
+    private final Seq<Building> serial = new Seq<>(false, 64, Building.class);
+    private final Seq<Building> queue = new Seq<>(false, 64, Building.class);
+    private final IntSeq groupBatches = new IntSeq();
+    private final Seq<Future<?>> futures = new Seq<>(false, 16, Future.class);
+    private Batch[] batches = {};
+    /** Per tile: frame in which the building on it was assigned a group, that group, and the batch of the group. */
+    private int[] marks = {}, groups = {}, tileBatches = {};
+    private int frame;
+
+    /**
+     * Called by {@link Building#sleep()} and {@link Building#noSleep()} before they modify the building group.
+     * @return true if the call happened inside a batch, in which case the change is queued until all batches are done.
+     */
+    public static boolean defer(Building build, boolean sleep){
+        return defer(build, sleep, 0f);
+    }
+
+    /**
+     * @param duration if positive, the building sleeps for this amount of ticks, as in {@link Building#sleepFor(float)}
+     * @see #defer(Building, boolean)
+     */
+    public static boolean defer(Building build, boolean sleep, float duration){
+        if(!updating) return false;
+
+        Batch batch = current.get();
+        if(batch == null) return false;
+
+        batch.deferred.add(build);
+        batch.sleep.add(sleep);
+        batch.durations.add(duration);
+        return true;
+    }
+
+    /**
+     * Called by a building before it passes an item to another one during its update.
+     * @return true if the source is updated in a batch and the target is not in that batch. The source must then keep the item;
+     * it is offered again through {@link Building#passDeferred(Building, Item)} once all batches are done.
+     */
+    public static boolean deferTransfer(Building source, Building target, Item item){
+        if(!updating) return false;
+
+        Batch batch = current.get();
+        if(batch == null || batch.contains(target)) return false;
+
+        batch.sources.add(source);
+        batch.targets.add(target);
+        batch.transferred.add(item);
+        return true;
+    }
+
+    public void update(){
+        if(!enabled){
+            Groups.build.update();
+            return;
+        }
+
+        resize();
+
+        snapshot.clear();
+        serial.clear();
+        groupBatches.clear();
+        Groups.build.copy(snapshot);
+
+        if(++frame == 0){
+            //the counter wrapped around; old marks could be mistaken for this frame
+            Arrays.fill(marks, 0);
+            frame = 1;
+        }
+
+        int batched = 0;
+        var items = snapshot.items;
+        for(int i = 0; i < snapshot.size; i++){
+            Building build = items[i];
+            int pos = build.tile.array();
+
+            if(build.block.parallelUpdate){
+                if(marks[pos] != frame){
+                    batched += flood(build);
+                }
+                batches[groupBatches.get(groups[pos])].builds.add(build);
+            }else{
+                serial.add(build);
+            }
+        }
+
+        lastBatched = batched;
+        lastDeferred = 0;
+
+        if(batched < minParallelBuildings){
+            for(var batch : batches){
+                batch.builds.clear();
+            }
+            lastBatched = 0;
+            Groups.build.update();
+            return;
+        }
+
+        updating = true;
+        try{
+            if(multithreaded){
+                futures.clear();
+                for(var batch : batches){
+                    if(batch.builds.any()){
+                        futures.add(mainExecutor.submit(batch));
+                    }
+                }
+
+                for(int i = 0; i < futures.size; i++){
+                    try{
+                        futures.items[i].get();
+                    }catch(InterruptedException | ExecutionException e){
+                        throw new RuntimeException(e);
+                    }
+                }
+                futures.clear();
+            }else{
+                for(var batch : batches){
+                    batch.run();
+                }
+            }
+        }finally{
+            updating = false;
+        }
+
+        //merge: pass deferred items and apply queued group changes in a fixed order
+        for(var batch : batches){
+            lastDeferred += batch.merge();
+        }
+
+        var serialItems = serial.items;
+        for(int i = 0; i < serial.size; i++){
+            Building build = serialItems[i];
+            //removed (destroyed, sleeping) during this update
+            if(build.isAdded()){
+                build.update();
+            }
+        }
+
+        snapshot.clear();
+        serial.clear();
+    }
+
+    /**
+     * Marks every building connected to this one through parallel proximity, and assigns the group to the least loaded batch.
+     * @return the size of the group
+     */
+    private int flood(Building start){
+        int group = groupBatches.size, size = 0;
+
+        queue.clear();
+        queue.add(start);
+        marks[start.tile.array()] = frame;
+
+        int from = 0;
+        while(from < queue.size){
+            Building build = queue.items[from++];
+            groups[build.tile.array()] = group;
+            size ++;
+
+            var prox = build.proximity;
+            for(int i = 0; i < prox.size; i++){
+                Building other = prox.items[i];
+                if(other.block.parallelUpdate && marks[other.tile.array()] != frame){
+                    marks[other.tile.array()] = frame;
+                    queue.add(other);
+                }
+            }
+        }
+
+        int best = 0;
+        for(int i = 1; i < batches.length; i++){
+            if(batches[i].load < batches[best].load) best = i;
+        }
+        batches[best].load += size;
+        groupBatches.add(best);
+
+        for(int i = 0; i < queue.size; i++){
+            tileBatches[queue.items[i].tile.array()] = best;
+        }
+        return size;
+    }
+
+    private void resize(){
+        int tiles = world.width() * world.height();
+        if(marks.length != tiles){
+            marks = new int[tiles];
+            groups = new int[tiles];
+            tileBatches = new int[tiles];
+            frame = 0;
+        }
+
+        if(batches.length == 0){
+            batches = new Batch[Math.max(OS.cores, 1) * 2];
+            for(int i = 0; i < batches.length; i++){
+                batches[i] = new Batch(this, i);
+            }
+        }
+
+        for(var batch : batches){
+            batch.load = 0;
+        }
+    }
+
+    static class Batch implements Runnable{
+        final BuildingScheduler scheduler;
+        final int index;
+        final Seq<Building> builds = new Seq<>(false, 64, Building.class);
+        final Seq<Building> deferred = new Seq<>(false, 16, Building.class);
+        final BoolSeq sleep = new BoolSeq();
+        final FloatSeq durations = new FloatSeq();
+        final Seq<Building> sources = new Seq<>(false, 16, Building.class), targets = new Seq<>(false, 16, Building.class);
+        final Seq<Item> transferred = new Seq<>(false, 16, Item.class);
+        int load;
+
+        Batch(BuildingScheduler scheduler, int index){
+            this.scheduler = scheduler;
+            this.index = index;
+        }
+
+        /** @return whether the building is updated by this batch in the current frame. */
+        boolean contains(Building build){
+            int pos = build.tile.array();
+            return build.block.parallelUpdate && scheduler.marks[pos] == scheduler.frame && scheduler.tileBatches[pos] == index;
+        }
+
+        @Override
+        public void run(){
+            current.set(this);
+            try{
+                var items = builds.items;
+                for(int i = 0; i < builds.size; i++){
+                    items[i].update();
+                }
+            }finally{
+                current.remove();
+            }
+        }
+
+        /** @return the amount of deferred items that were passed on */
+        int merge(){
+            int passed = 0;
+            var from = sources.items;
+            for(int i = 0; i < sources.size; i++){
+                Building source = from[i], target = targets.items[i];
+                //either side may have been removed by a building updated earlier in the merge
+                if(source.isValid() && target.isValid() && source.passDeferred(target, transferred.items[i])){
+                    passed ++;
+                }
+            }
+
+            var items = deferred.items;
+            for(int i = 0; i < deferred.size; i++){
+                if(sleep.get(i)){
+                    if(durations.get(i) > 0f){
+                        items[i].sleepFor(durations.get(i));
+                    }else{
+                        //the sleep timer already advanced when the request was queued
+                        items[i].beginSleep();
+                    }
+                }else{
+                    items[i].noSleep();
+                }
+            }
+
+            builds.clear();
+            deferred.clear();
+            sleep.clear();
+            durations.clear();
+            sources.clear();
+            targets.clear();
+            transferred.clear();
+            return passed;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package mindustry.async;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.game.*;
+import mindustry.logic.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
+import mindustry.world.blocks.logic.MemoryBlock.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Optional phase that runs processors on the main executor before buildings are updated.
+ * <p>
+ * A processor takes part if nothing else can observe it during the building update: no other processor links to it,
+ * it only links memory cells that no other processor links, and no processor that can reach unlinked buildings
+ * (see {@link LExecutor#reachesUnlinked}) exists on its team, or on any team for world processors.
+ * Such a processor runs its instruction budget here until the next instruction is not {@link LExecutor#nextIsolated() isolated};
+ * the rest of the budget runs serially in {@link LogicBuild#updateTile()}, in group order as before.
+ * Writes to linked memory are buffered by the executor and applied on the calling thread once the phase is done, in processor order.
+ * Isolated instructions only touch the state of their own executor and memory, so the result matches a fully serial update.
+ */
+public class LogicScheduler{
+    /** If false, {@link #update()} does nothing and all processors run serially. */
+    public boolean enabled = false;
+    /** If false, processors are still selected and run in the isolated phase, but on the calling thread. */
+    public boolean multithreaded = true;
+    /** Below this amount of eligible processors, the isolated phase runs on the calling thread. */
+    public int minParallelProcessors = 32;
+
+    /** Amount of processors that ran in the isolated phase last update, and how many of them had links, for debugging. */
+    public int lastIsolated, lastLinked;
+
+    /** All processors that are currently added to the world. Updated by {@link LogicBuild#add()} and {@link LogicBuild#remove()}. */
+    private final Seq<LogicBuild> processors = new Seq<>(false, 64, LogicBuild.class);
+    private final Seq<LogicBuild> eligible = new Seq<>(false, 64, LogicBuild.class);
+    private final Seq<Future<?>> futures = new Seq<>(false, 16, Future.class);
+    /** Amount of processor links that point at each building ID. */
+    private final IntIntMap linked = new IntIntMap();
+    private final boolean[] reachedTeams = new boolean[Team.all.length];
+
+    public LogicScheduler(){
+        Events.on(ResetEvent.class, e -> {
+            for(int i = 0; i < processors.size; i++){
+                processors.items[i].schedulerIndex = -1;
+            }
+            processors.clear();
+        });
+    }
+
+    /** Registers a processor that was added to the world. */
+    public void add(LogicBuild build){
+        if(build.schedulerIndex != -1) return;
+        build.schedulerIndex = processors.size;
+        processors.add(build);
+    }
+
+    /** Unregisters a processor that was removed from the world. */
+    public void remove(LogicBuild build){
+        int index = build.schedulerIndex;
+        if(index == -1) return;
+
+        LogicBuild last = processors.peek();
+        last.schedulerIndex = index;
+        processors.set(index, last);
+        processors.pop();
+        build.schedulerIndex = -1;
+    }
+
+    public void update(){
+        if(!enabled) return;
+
+        collect();
+
+        lastIsolated = eligible.size;
+        if(eligible.isEmpty()) return;
+
+        if(!multithreaded || eligible.size < minParallelProcessors){
+            run(0, eligible.size);
+        }else{
+            int batches = Math.min(OS.cores, eligible.size);
+            int batchSize = (eligible.size + batches - 1) / batches;
+
+            futures.clear();
+            for(int start = 0; start < eligible.size; start += batchSize){
+                int from = start, to = Math.min(start + batchSize, eligible.size);
+                futures.add(mainExecutor.submit(() -> run(from, to)));
+            }
+
+            for(int i = 0; i < futures.size; i++){
+                try{
+                    futures.items[i].get();
+                }catch(InterruptedException | ExecutionException e){
+                    throw new RuntimeException(e);
+                }
+            }
+            futures.clear();
+        }
+
+        var items = eligible.items;
+        for(int i = 0; i < eligible.size; i++){
+            items[i].executor.flushWrites();
+        }
+
+        eligible.clear();
+    }
+
+    private void run(int from, int to){
+        var items = eligible.items;
+        long id = state.updateId;
+        for(int i = from; i < to; i++){
+            var build = items[i];
+            if(build.runInstructions(true)){
+                build.isolatedUpdate = id;
+            }
+        }
+    }
+
+    private void collect(){
+        eligible.clear();
+        linked.clear();
+        lastLinked = 0;
+
+        boolean reachAll = false;
+        for(int i = 0; i < reachedTeams.length; i++){
+            reachedTeams[i] = false;
+        }
+
+        var items = processors.items;
+        for(int i = 0; i < processors.size; i++){
+            var logic = items[i];
+
+            var links = logic.links;
+            for(int j = 0; j < links.size; j++){
+                var other = world.build(links.items[j].x, links.items[j].y);
+                if(other != null) linked.increment(other.id);
+            }
+
+            if(logic.executor.reachesUnlinked){
+                if(logic.executor.privileged){
+                    reachAll = true;
+                }else{
+                    reachedTeams[logic.team.id] = true;
+                }
+            }
+        }
+
+        if(reachAll) return;
+
+        for(int i = 0; i < processors.size; i++){
+            var build = items[i];
+            if(
+                build.enabled && build.loadBlock == null && build.executor.initialized() &&
+                !reachedTeams[build.team.id] && !linked.containsKey(build.id) &&
+                !(state.rules.disableWorldProcessors && build.block.privileged)
+            ){
+                boolean hasLinks = !build.links.isEmpty();
+                if(hasLinks && !privateLinks(build)) continue;
+
+                build.executor.bufferWrites = hasLinks;
+                if(build.executor.nextIsolated()){
+                    eligible.add(build);
+                    if(hasLinks) lastLinked ++;
+                }else{
+                    build.executor.bufferWrites = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether every link of this processor is a memory cell that no other processor links to,
+     * and the link update at the start of {@link LogicBuild#updateTile()} would not change any link variable.
+     */
+    private boolean privateLinks(LogicBuild build){
+        if(!build.checkedDuplicates) return false;
+
+        var links = build.links;
+        for(int i = 0; i < links.size; i++){
+            var link = links.items[i];
+            var other = world.build(link.x, link.y);
+            boolean valid = build.validLink(other);
+            if(link.lastBuild != other || link.valid != valid) return false;
+            if(other != null && (!(other instanceof MemoryBuild) || linked.get(other.id) != 1)) return false;
+        }
+        return true;
+    }
+}
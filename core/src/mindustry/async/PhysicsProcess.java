@@ -10,7 +10,9 @@ import mindustry.async.PhysicsProcess.PhysicsWorld.*;
 import mindustry.core.*;
 import mindustry.gen.*;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 public class PhysicsProcess implements AsyncProcess{
     static final int mobileIterations = 1, desktopIterations = 1;
@@ -151,19 +153,68 @@ public class PhysicsProcess implements AsyncProcess{
         }
     }
 
-    //world for simulating a single collision layer's physics, meant to run on its own thread
+    /**
+     * World for simulating a single collision layer's physics, meant to run on its own thread.
+     * Bodies are copied into flat arrays at the start of every step. Pairs are found through a uniform grid that is rebuilt with a counting sort,
+     * and the coordinates of each body's candidates are gathered into contiguous arrays, so the overlap test is a plain loop the JIT can vectorize.
+     * Only overlapping pairs are then resolved one by one.
+     * <p>
+     * The cell size follows the average body radius, not the largest one, so a few large bodies do not coarsen the grid for everything else.
+     * Bodies that are more than {@link #oversizedScale} times larger than average are kept out of the grid and resolved in a serial pass after all strips,
+     * against every grid body in their reach and every other oversized body.
+     * <p>
+     * The pairs that are resolved are the same as with the previous quadtree, which found candidates by hitbox intersection: circles can only overlap
+     * if their hitboxes do. The order is different, since bodies are resolved by grid cell instead of by index, and candidates are visited in cell order,
+     * so results are not identical to the quadtree.
+     * <p>
+     * The grid is split into horizontal strips of at least {@link #minStripRows} rows. Candidates of a strip are limited to the rows of the strip
+     * and one row beyond each edge, so even strips never touch the same bodies and are resolved in parallel, followed by the odd strips.
+     * A body only reaches into neighbouring cells, unless it was pushed across a cell border earlier in the step; such pairs are left for the next step.
+     * Bodies are always resolved in (phase, strip, cell, index) order and the strip layout does not depend on the thread count,
+     * so the result is the same whether strips run in parallel or not.
+     */
     public static class PhysicsWorld{
         //how much to soften movement by
         private static final float scl = 1.25f;
-
-        private final QuadTree<PhysicsBody> tree;
+        //smallest grid cell size, to keep the grid small when all bodies are tiny
+        private static final float minCellSize = Vars.tilesize * 2f;
+        /** Bodies with a radius larger than this multiple of the average radius (and half of the smallest cell size) are not put into the grid. */
+        public static final float oversizedScale = 2f;
+        /** Minimum strip height in grid cells. Must be at least 3, so the rows that two strips of the same phase touch never overlap. */
+        public static final int minStripRows = 6;
+        /** Maximum amount of strips per world. */
+        public static final int maxStrips = 32;
+
+        /** If false, strips are resolved in the same order on the calling thread. */
+        public boolean multithreaded = true;
+        /** Below this amount of bodies, strips are resolved on the calling thread. */
+        public int minParallelBodies = 2000;
+
+        private final Rect bounds;
         private final Seq<PhysicsBody> bodies = new Seq<>(false, 16, PhysicsBody.class);
-        private final Seq<PhysicsBody> seq = new Seq<>(PhysicsBody.class);
-        private final Vec2 vec = new Vec2();
-        private final Rand rand = new Rand();
+
+        //body state, indexed like bodies
+        private float[] xs = {}, ys = {}, radii = {}, masses = {};
+        private boolean[] local = {}, collided = {};
+        //largest radius of a body in the grid
+        private float maxRadius;
+        //bodies that are too large for the grid, in index order
+        private int[] oversized = {};
+        private int oversizedCount;
+
+        //grid: bodies of cell c are cellBodies[cellStart[c]] until cellBodies[cellStart[c + 1]]
+        private int[] cellStart = {}, cellCursor = {}, cellBodies = {}, bodyCell = {};
+        private int gridWidth, gridHeight;
+        private float cellSize;
+
+        private final Strip[] strips = new Strip[maxStrips];
+        private int stripCount, stripRows;
 
         public PhysicsWorld(Rect bounds){
-            tree = new QuadTree<>(new Rect(bounds));
+            this.bounds = new Rect(bounds);
+            for(int i = 0; i < maxStrips; i++){
+                strips[i] = new Strip();
+            }
         }
 
         public void add(PhysicsBody body){
@@ -180,69 +231,302 @@ public class PhysicsProcess implements AsyncProcess{
             var bodyItems = bodies.items;
             int bodySize = bodies.size;
 
+            ensureCapacity(bodySize);
+
+            float totalRadius = 0f;
+            for(int i = 0; i < bodySize; i++){
+                PhysicsBody body = bodyItems[i];
+                xs[i] = body.x;
+                ys[i] = body.y;
+                radii[i] = body.radius;
+                masses[i] = body.mass;
+                local[i] = body.local;
+                totalRadius += body.radius;
+            }
+
+            float gridRadius = Math.max(minCellSize / 2f, bodySize == 0 ? 0f : totalRadius / bodySize * oversizedScale);
+            maxRadius = 0f;
+            oversizedCount = 0;
+            for(int i = 0; i < bodySize; i++){
+                if(radii[i] > gridRadius){
+                    oversized[oversizedCount ++] = i;
+                }else{
+                    maxRadius = Math.max(maxRadius, radii[i]);
+                }
+            }
+
             int iterations = Vars.net.client() || OS.isMobile ? mobileIterations : desktopIterations;
 
             for(int iter = 0; iter < iterations; iter++){
-                tree.fill(bodies);
+                buildGrid(bodySize);
 
-                for(int i = 0; i < bodySize; i++){
-                    bodyItems[i].collided = false;
+                Arrays.fill(collided, 0, bodySize, false);
+
+                stripCount = Math.min(Math.max(gridHeight / minStripRows, 1), maxStrips);
+                stripRows = (gridHeight + stripCount - 1) / stripCount;
+
+                boolean parallel = multithreaded && stripCount > 2 && bodySize >= minParallelBodies && Vars.mainExecutor != null;
+                runPhase(0, parallel);
+                runPhase(1, parallel);
+
+                //oversized bodies reach across strips, so they are resolved afterwards on this thread
+                Strip strip = strips[0];
+                for(int n = 0; n < oversizedCount; n++){
+                    int i = oversized[n];
+                    if(!local[i]) continue;
+
+                    resolve(i, strip, true);
+                    collided[i] = true;
                 }
+            }
 
-                for(int i = 0; i < bodySize; i++){
-                    PhysicsBody body = bodyItems[i];
-                    //for clients, the only body that collides is the local one; all other physics simulations are handled by the server.
-                    if(!body.local) continue;
+            for(int i = 0; i < bodySize; i++){
+                PhysicsBody body = bodyItems[i];
+                body.x = xs[i];
+                body.y = ys[i];
+                body.collided = collided[i];
+            }
 
-                    seq.size = 0;
-                    tree.intersect(body.x - body.radius, body.y - body.radius, body.radius * 2, body.radius * 2, seq);
-                    int size = seq.size;
-                    var items = seq.items;
+            maxPhysicsTime = Math.max(maxPhysicsTime, Time.timeSinceNanos(begin));
+        }
 
-                    for(int j = 0; j < size; j++){
-                        PhysicsBody other = items[j];
+        /** Resolves every strip with this parity. The calling thread takes part, so this cannot deadlock when the executor is busy. */
+        private void runPhase(int phase, boolean parallel){
+            int count = (stripCount - phase + 1) / 2;
+            if(count <= 0) return;
 
-                        if(other == body || other.collided) continue;
+            if(!parallel || count == 1){
+                for(int n = 0; n < count; n++){
+                    resolveStrip(phase + n * 2);
+                }
+                return;
+            }
 
-                        float rs = body.radius + other.radius;
-                        float dx = body.x - other.x, dy = body.y - other.y;
-                        float dst2 = dx * dx + dy * dy;
+            //fresh counters per phase, so a helper that starts late can never claim a strip of the next phase
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch finished = new CountDownLatch(count);
+            Runnable worker = () -> {
+                int n;
+                while((n = next.getAndIncrement()) < count){
+                    try{
+                        resolveStrip(phase + n * 2);
+                    }finally{
+                        finished.countDown();
+                    }
+                }
+            };
 
-                        //skip the sqrt entirely for non-colliding pairs
-                        if(dst2 < rs * rs){
-                            float dst = Mathf.sqrt(dst2);
-                            vec.set(dx, dy);
+            for(int i = 0, helpers = Math.min(count, OS.cores) - 1; i < helpers; i++){
+                Vars.mainExecutor.submit(worker);
+            }
 
-                            if(vec.isZero()){ //exact stacked bodies will move in random directions away from each other
-                                vec.trns(rand.random(360f), rs - dst);
-                            }else{
-                                vec.setLength(rs - dst);
-                            }
+            worker.run();
+
+            //remaining strips are already being resolved by helpers
+            try{
+                finished.await();
+            }catch(InterruptedException e){
+                throw new RuntimeException(e);
+            }
+        }
 
-                            float ms = body.mass + other.mass;
-                            float m1 = other.mass / ms, m2 = body.mass / ms;
+        private void resolveStrip(int index){
+            Strip strip = strips[index];
+            int firstRow = Math.min(index * stripRows, gridHeight), endRow = Math.min((index + 1) * stripRows, gridHeight);
+            int from = cellStart[firstRow * gridWidth], to = cellStart[endRow * gridWidth];
 
-                            //first body is always local due to guard check above
-                            body.x += vec.x * m1 / scl;
-                            body.y += vec.y * m1 / scl;
+            //bodies that were pushed across a cell border may reach further; they are clamped, so strips of the same phase never share a body
+            strip.minRow = firstRow - 1;
+            strip.maxRow = endRow;
 
-                            if(other.local){
-                                other.x -= vec.x * m2 / scl;
-                                other.y -= vec.y * m2 / scl;
+            for(int k = from; k < to; k++){
+                int i = cellBodies[k];
+                //for clients, the only body that collides is the local one; all other physics simulations are handled by the server.
+                if(!local[i]) continue;
 
-                            }
-                        }
+                resolve(i, strip, false);
+                collided[i] = true;
+            }
+        }
+
+        /**
+         * Resolves the overlaps of a body with every candidate that was not resolved yet.
+         * Grid bodies only have grid candidates, in the rows their strip may touch. Oversized bodies are resolved after all grid bodies,
+         * so every grid body in reach is a candidate for them, along with the oversized bodies that come later.
+         */
+        private void resolve(int i, Strip strip, boolean large){
+            float x = xs[i], y = ys[i], radius = radii[i], mass = masses[i];
+            float reach = radius + maxRadius;
+            int minX = cellX(x - reach), maxX = cellX(x + reach), minY = cellY(y - reach), maxY = cellY(y + reach);
+            if(!large){
+                minY = Math.max(minY, strip.minRow);
+                maxY = Math.min(maxY, strip.maxRow);
+            }
+
+            //gather candidates into contiguous arrays
+            int count = 0;
+            for(int cy = minY; cy <= maxY; cy++){
+                for(int cx = minX; cx <= maxX; cx++){
+                    int cell = cx + cy * gridWidth;
+                    for(int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++){
+                        int j = cellBodies[k];
+                        if(j == i || (!large && collided[j])) continue;
+
+                        count = strip.add(count, j, xs[j], ys[j], radii[j]);
                     }
+                }
+            }
+
+            if(large){
+                for(int n = 0; n < oversizedCount; n++){
+                    int j = oversized[n];
+                    if(j == i || collided[j]) continue;
 
-                    body.collided = true;
+                    count = strip.add(count, j, xs[j], ys[j], radii[j]);
                 }
             }
 
-            maxPhysicsTime = Math.max(maxPhysicsTime, Time.timeSinceNanos(begin));
+            if(count == 0) return;
+
+            //overlap test for all candidates at once; positive values overlap
+            float[] ox = strip.candX, oy = strip.candY, or = strip.candRadius, out = strip.overlap;
+            int[] candidates = strip.candidates;
+            for(int k = 0; k < count; k++){
+                float dx = x - ox[k], dy = y - oy[k], rs = radius + or[k];
+                out[k] = rs * rs - (dx * dx + dy * dy);
+            }
+
+            //resolve overlapping pairs in order, using the positions as they change
+            for(int k = 0; k < count; k++){
+                if(out[k] <= 0f) continue;
+
+                int j = candidates[k];
+                float rs = radius + radii[j];
+                float dx = x - xs[j], dy = y - ys[j];
+                float dst2 = dx * dx + dy * dy;
+
+                if(dst2 >= rs * rs) continue;
+
+                float dst = Mathf.sqrt(dst2), vx, vy;
+
+                if(dx == 0f && dy == 0f){ //exact stacked bodies will move in random directions away from each other
+                    float angle = strip.rand.random(360f);
+                    vx = Angles.trnsx(angle, rs - dst);
+                    vy = Angles.trnsy(angle, rs - dst);
+                }else{
+                    float scale = (rs - dst) / dst;
+                    vx = dx * scale;
+                    vy = dy * scale;
+                }
+
+                float ms = mass + masses[j];
+                float m1 = masses[j] / ms, m2 = mass / ms;
+
+                //first body is always local due to guard check in update()
+                x += vx * m1 / scl;
+                y += vy * m1 / scl;
+
+                if(local[j]){
+                    xs[j] -= vx * m2 / scl;
+                    ys[j] -= vy * m2 / scl;
+                }
+            }
+
+            xs[i] = x;
+            ys[i] = y;
+        }
+
+        /** Sorts the indices of all bodies that are not oversized by grid cell with a counting sort. Bodies keep their relative order within a cell. */
+        private void buildGrid(int bodySize){
+            cellSize = Math.max(maxRadius * 2f, minCellSize);
+            gridWidth = Math.max(Mathf.ceil(bounds.width / cellSize), 1);
+            gridHeight = Math.max(Mathf.ceil(bounds.height / cellSize), 1);
+            int cells = gridWidth * gridHeight;
+
+            if(cellStart.length < cells + 1){
+                cellStart = new int[cells + 1];
+                cellCursor = new int[cells];
+            }else{
+                Arrays.fill(cellStart, 0, cells + 1, 0);
+            }
+
+            for(int i = 0, n = 0; i < bodySize; i++){
+                if(n < oversizedCount && oversized[n] == i){
+                    bodyCell[i] = -1;
+                    n ++;
+                    continue;
+                }
+
+                int cell = cellX(xs[i]) + cellY(ys[i]) * gridWidth;
+                bodyCell[i] = cell;
+                cellStart[cell + 1] ++;
+            }
+
+            for(int c = 0; c < cells; c++){
+                cellStart[c + 1] += cellStart[c];
+            }
+
+            System.arraycopy(cellStart, 0, cellCursor, 0, cells);
+            for(int i = 0; i < bodySize; i++){
+                if(bodyCell[i] >= 0) cellBodies[cellCursor[bodyCell[i]] ++] = i;
+            }
+        }
+
+        private int cellX(float x){
+            return Math.max(Math.min((int)((x - bounds.x) / cellSize), gridWidth - 1), 0);
+        }
+
+        private int cellY(float y){
+            return Math.max(Math.min((int)((y - bounds.y) / cellSize), gridHeight - 1), 0);
+        }
+
+        private void ensureCapacity(int size){
+            if(xs.length < size){
+                int cap = Math.max(size, xs.length * 7 / 4);
+                xs = new float[cap];
+                ys = new float[cap];
+                radii = new float[cap];
+                masses = new float[cap];
+                local = new boolean[cap];
+                collided = new boolean[cap];
+                cellBodies = new int[cap];
+                bodyCell = new int[cap];
+                oversized = new int[cap];
+            }
+        }
+
+        /** Scratch state of one strip; strips may be resolved on different threads. */
+        static class Strip{
+            final Rand rand = new Rand();
+            //rows that bodies of this strip may touch, one beyond each edge
+            int minRow, maxRow;
+            //candidates of the body that is currently being resolved
+            int[] candidates = new int[32];
+            float[] candX = new float[32], candY = new float[32], candRadius = new float[32], overlap = new float[32];
+
+            /** Adds a candidate at the specified index and returns the new amount of candidates. */
+            int add(int index, int body, float x, float y, float radius){
+                if(index == candidates.length) grow();
+                candidates[index] = body;
+                candX[index] = x;
+                candY[index] = y;
+                candRadius[index] = radius;
+                return index + 1;
+            }
+
+            void grow(){
+                int cap = candidates.length * 2;
+                candidates = Arrays.copyOf(candidates, cap);
+                candX = Arrays.copyOf(candX, cap);
+                candY = Arrays.copyOf(candY, cap);
+                candRadius = Arrays.copyOf(candRadius, cap);
+                overlap = new float[cap];
+            }
         }
 
         public static class PhysicsBody implements QuadTreeObject{
             public float x, y, radius, mass;
+            /** Whether this body was resolved in the last step. */
             public boolean collided = false, local = true;
 
             @Override
@@ -251,4 +535,4 @@ public class PhysicsProcess implements AsyncProcess{
             }
         }
     }
-}
\ No newline at end of file
+}
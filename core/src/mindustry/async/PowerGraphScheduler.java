@@ -0,0 +1,78 @@
+package mindustry.async;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+import mindustry.world.blocks.power.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Optional replacement for the serial {@code Groups.powerGraph.update()} call.
+ * Power graphs never share buildings, so every graph is first {@link PowerGraph#compute() computed} and then
+ * {@link PowerGraph#apply() applied} in contiguous batches on the main executor, with a barrier between the two stages.
+ */
+public class PowerGraphScheduler{
+    /** If false, {@link #update()} is equivalent to {@code Groups.powerGraph.update()}. */
+    public boolean enabled = false;
+    /** Below this amount of graphs, everything is updated serially. */
+    public int minParallelGraphs = 64;
+
+    private final Seq<PowerGraph> graphs = new Seq<>(false, 64, PowerGraph.class);
+    private final Seq<Future<?>> futures = new Seq<>(false, 16, Future.class);
+
+    public void update(){
+        if(!enabled || Groups.powerGraph.size() < minParallelGraphs){
+            Groups.powerGraph.update();
+            return;
+        }
+
+        graphs.clear();
+        for(var updater : Groups.powerGraph){
+            graphs.add(updater.graph);
+        }
+
+        int batches = Math.min(OS.cores, graphs.size);
+        int batchSize = (graphs.size + batches - 1) / batches;
+
+        run(batchSize, true);
+        run(batchSize, false);
+
+        //the save journal is not thread-safe
+        var items = graphs.items;
+        for(int i = 0; i < graphs.size; i++){
+            items[i].reportChanges();
+        }
+
+        graphs.clear();
+    }
+
+    private void run(int batchSize, boolean compute){
+        futures.clear();
+
+        for(int start = 0; start < graphs.size; start += batchSize){
+            int from = start, to = Math.min(start + batchSize, graphs.size);
+            futures.add(mainExecutor.submit(() -> {
+                var items = graphs.items;
+                for(int i = from; i < to; i++){
+                    if(compute){
+                        items[i].compute();
+                    }else{
+                        items[i].apply();
+                    }
+                }
+            }));
+        }
+
+        for(int i = 0; i < futures.size; i++){
+            try{
+                futures.items[i].get();
+            }catch(InterruptedException | ExecutionException e){
+                throw new RuntimeException(e);
+            }
+        }
+        futures.clear();
+    }
+}
@@ -0,0 +1,145 @@
+package mindustry.async;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.world.*;
+
+/**
+ * Wakes sleeping buildings once their timer ends.
+ * <p>
+ * {@link Building#sleepFor(float)} removes a building from {@link Groups#build} like {@link Building#sleep()}, and places it in a two-level timer wheel.
+ * The first level has one slot per tick for the next {@link #wheelSize} ticks. The second has one slot per {@link #wheelSize} ticks,
+ * which is moved into the first level when it comes up; timers that are even further away are kept in its last slot until then.
+ * Scheduling and waking are constant time. Buildings that were woken early by {@link Building#noSleep()} are skipped when their slot comes up.
+ * <p>
+ * If {@link #enabled}, blocks with a positive {@link Block#idleSleepInterval} sleep while idle instead of checking their inputs and outputs every update.
+ * They wake when they receive items or liquids, when their proximity changes, or when the interval has passed.
+ * When power returns to them, they are woken in the next update, since power graphs may be applied on other threads.
+ */
+public class SleepScheduler{
+    /** Amount of slots per wheel level. Must be a power of two. */
+    public static final int wheelSize = 256;
+    private static final int wheelBits = 8, wheelMask = wheelSize - 1;
+
+    /** If false, {@link Building#idleSleep()} does nothing. Timers that were already scheduled still run. */
+    public boolean enabled = false;
+
+    /** Amount of buildings that are currently sleeping, with or without a timer. */
+    public int sleeping;
+    /** Amount of buildings woken by their timer last update, for debugging. */
+    public int lastWoken;
+
+    private final Slot[] near = new Slot[wheelSize], far = new Slot[wheelSize];
+    /** Buildings to wake in the next update; guarded by itself. */
+    private final Seq<Building> wakeQueue = new Seq<>(false, 16, Building.class);
+    /** Current time in whole ticks. Independent of {@link mindustry.core.GameState#tick}, which is reset when a game starts. */
+    private long now;
+    private float accumulator;
+
+    public SleepScheduler(){
+        for(int i = 0; i < wheelSize; i++){
+            near[i] = new Slot();
+            far[i] = new Slot();
+        }
+
+        Events.on(ResetEvent.class, e -> clear());
+    }
+
+    /** Drops all timers and restarts the clock. Called when the world is unloaded, since no building is left sleeping. */
+    public void clear(){
+        for(int i = 0; i < wheelSize; i++){
+            near[i].clear();
+            far[i].clear();
+        }
+        synchronized(wakeQueue){
+            wakeQueue.clear();
+        }
+        sleeping = 0;
+        lastWoken = 0;
+        now = 0;
+        accumulator = 0f;
+    }
+
+    /** Wakes the building at the start of the next {@link #update()}, if it is still sleeping then. Can be called from any thread. */
+    public void wakeLater(Building build){
+        synchronized(wakeQueue){
+            wakeQueue.add(build);
+        }
+    }
+
+    /** @return the time at which the building is woken, which it must compare in {@link Building#timerWake(long)}. */
+    public long schedule(Building build, float ticks){
+        long time = now + Math.max(1L, (long)Math.ceil(ticks));
+        insert(build, time);
+        return time;
+    }
+
+    /** Advances the wheel by the elapsed ticks and wakes buildings whose timer ended. */
+    public void update(){
+        synchronized(wakeQueue){
+            for(int i = 0; i < wakeQueue.size; i++){
+                var build = wakeQueue.items[i];
+                if(build.isValid()) build.noSleep();
+            }
+            wakeQueue.clear();
+        }
+
+        accumulator += Time.delta;
+        int steps = (int)accumulator;
+        accumulator -= steps;
+
+        int woken = 0;
+        for(int i = 0; i < steps; i++){
+            now ++;
+
+            if((now & wheelMask) == 0){
+                //the next second-level slot comes up; every timer in it is now less than one wheel away
+                Slot slot = far[(int)((now >>> wheelBits) & wheelMask)];
+                int size = slot.builds.size;
+                var builds = slot.builds.items;
+                for(int j = 0; j < size; j++){
+                    insert(builds[j], slot.times.items[j]);
+                }
+                slot.clear();
+            }
+
+            Slot slot = near[(int)(now & wheelMask)];
+            var builds = slot.builds.items;
+            for(int j = 0; j < slot.builds.size; j++){
+                if(builds[j].timerWake(slot.times.items[j])) woken ++;
+            }
+            slot.clear();
+        }
+
+        lastWoken = woken;
+    }
+
+    private void insert(Building build, long time){
+        long delta = time - now;
+        if(delta < wheelSize){
+            near[(int)(time & wheelMask)].add(build, time);
+        }else{
+            //the slot that comes up last is reused for anything further away; it is rescheduled when moved down
+            long block = Math.min(time >>> wheelBits, (now >>> wheelBits) + wheelSize - 1);
+            far[(int)(block & wheelMask)].add(build, time);
+        }
+    }
+
+    static class Slot{
+        final Seq<Building> builds = new Seq<>(false, 16, Building.class);
+        final LongSeq times = new LongSeq(false, 16);
+
+        void add(Building build, long time){
+            builds.add(build);
+            times.add(time);
+        }
+
+        void clear(){
+            builds.clear();
+            times.clear();
+        }
+    }
+}
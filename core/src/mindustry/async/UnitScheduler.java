@@ -0,0 +1,86 @@
+package mindustry.async;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.core.*;
+import mindustry.entities.units.*;
+import mindustry.gen.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Updates {@link Groups#unit} in two phases.
+ * <p>
+ * In the "think" phase, {@link AIController#think()} is called for every AI-controlled unit. Controllers only read the world and store
+ * the targets and flow field tiles they would otherwise look up during their update.
+ * In the "act" phase, units are updated serially in group order, and controllers use the stored results when their update asks for the same lookup.
+ * <p>
+ * Both phases always run, so every AI lookup is made against the state at the start of the frame, whether the think phase is split across threads or not.
+ * {@link #enabled} only decides the former, and does not change the result.
+ */
+public class UnitScheduler{
+    /** If false, the think phase runs on the calling thread. */
+    public boolean enabled = false;
+    /** Below this amount of AI-controlled units, the think phase runs on the calling thread. */
+    public int minParallelUnits = 256;
+
+    private final Seq<AIController> thinkers = new Seq<>(false, 64, AIController.class);
+    private final Seq<Future<?>> futures = new Seq<>(false, 16, Future.class);
+
+    public void update(){
+        //AI only updates on the server
+        if(!net.client()){
+            PerfCounter.unitThink.begin();
+            think();
+            PerfCounter.unitThink.end();
+        }
+
+        Groups.unit.update();
+    }
+
+    private void think(){
+        thinkers.clear();
+        for(var unit : Groups.unit){
+            if(!unit.dead && unit.shouldUpdateController() && unit.controller() instanceof AIController ai){
+                //team data is created lazily, which must not happen in the think phase
+                state.teams.get(unit.team);
+                thinkers.add(ai);
+            }
+        }
+
+        if(!enabled || thinkers.size < minParallelUnits){
+            var items = thinkers.items;
+            for(int i = 0; i < thinkers.size; i++){
+                items[i].think();
+            }
+            thinkers.clear();
+            return;
+        }
+
+        int batches = Math.min(OS.cores, thinkers.size);
+        int batchSize = (thinkers.size + batches - 1) / batches;
+
+        futures.clear();
+        for(int start = 0; start < thinkers.size; start += batchSize){
+            int from = start, to = Math.min(start + batchSize, thinkers.size);
+            futures.add(mainExecutor.submit(() -> {
+                var items = thinkers.items;
+                for(int i = from; i < to; i++){
+                    items[i].think();
+                }
+            }));
+        }
+
+        for(int i = 0; i < futures.size; i++){
+            try{
+                futures.items[i].get();
+            }catch(InterruptedException | ExecutionException e){
+                throw new RuntimeException(e);
+            }
+        }
+        futures.clear();
+        thinkers.clear();
+    }
+}
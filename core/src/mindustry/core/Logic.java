@@ -5,6 +5,7 @@ import arc.math.*;
 import arc.util.*;
 import mindustry.*;
 import mindustry.ai.*;
+import mindustry.async.*;
 import mindustry.annotations.Annotations.*;
 import mindustry.content.*;
 import mindustry.core.GameState.*;
@@ -35,6 +36,16 @@ import static mindustry.Vars.*;
  * This class should <i>not</i> call any outside methods to change state of modules, but instead fire events.
  */
 public class Logic implements ApplicationListener{
+    /** Updates {@link Groups#build}; can optionally split the work across threads. */
+    public final BuildingScheduler buildScheduler = new BuildingScheduler();
+    /** Updates {@link Groups#powerGraph}; can optionally solve independent graphs on multiple threads. */
+    public final PowerGraphScheduler powerScheduler = new PowerGraphScheduler();
+    /** Updates {@link Groups#unit}, letting AI plan its lookups first; can optionally plan on multiple threads. */
+    public final UnitScheduler unitScheduler = new UnitScheduler();
+    /** Runs processors that nothing else can observe on multiple threads before buildings are updated. */
+    public final LogicScheduler logicScheduler = new LogicScheduler();
+    /** Wakes buildings that sleep on a timer, before buildings are updated. */
+    public final SleepScheduler sleepScheduler = new SleepScheduler();
 
     public Logic(){
 
@@ -478,16 +489,18 @@ public class Logic implements ApplicationListener{
         if(editor){
             Groups.unit.update(u -> u.isPlayer() || u.spawnedByCore);
         }else{
-            Groups.unit.update();
+            unitScheduler.update();
         }
         PerfCounter.unitUpdate.end();
 
         PerfCounter.powerUpdate.begin();
-        if(!editor) Groups.powerGraph.update();
+        if(!editor) powerScheduler.update();
         PerfCounter.powerUpdate.end();
 
         PerfCounter.buildingUpdate.begin();
-        if(!editor) Groups.build.update();
+        if(!editor) sleepScheduler.update();
+        if(!editor) logicScheduler.update();
+        if(!editor) buildScheduler.update();
         PerfCounter.buildingUpdate.end();
 
         PerfCounter.bulletUpdate.begin();
@@ -67,6 +67,15 @@ public class NetClient implements ApplicationListener{
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
     private Reads dataStreamReads = new Reads(dataStream);
+    /** Sync data that delta snapshots are applied on top of. */
+    private SyncBaseline syncBaseline = new SyncBaseline();
+    /** ID of the last delta snapshot that was read, the last one to acknowledge and the last acknowledged one. */
+    private int lastDeltaSnapshot = -1, deltaSnapshotAck = -1, sentSnapshotAck = -1;
+    private ReusableByteInStream deltaStream = new ReusableByteInStream();
+    private Reads deltaReads = new Reads(new DataInputStream(deltaStream));
+    private byte[] deltaMask = new byte[16];
+    /** Time between the last two state snapshots, which are sent once per entity sync. 0 if unknown. */
+    private long syncSpacing, lastStateSnapshot;
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons<String>>> customPacketHandlers = new ObjectMap<>();
     /** Packet handlers for custom types of messages, in binary. */
@@ -516,9 +525,11 @@ public class NetClient implements ApplicationListener{
     }
 
     public static void readSyncEntity(DataInputStream input, Reads read) throws IOException{
-        int id = input.readInt();
-        byte typeID = input.readByte();
+        readSyncEntity(input.readInt(), input.readByte(), read, false);
+    }
 
+    /** @param limitSpacing whether the entity may have been left out of previous snapshots, in which case its interpolation time is capped to one sync */
+    public static void readSyncEntity(int id, byte typeID, Reads read, boolean limitSpacing){
         Syncc entity = Groups.sync.getByID(id);
         boolean add = false, created = false;
 
@@ -540,6 +551,11 @@ public class NetClient implements ApplicationListener{
         //read the entity
         entity.readSync(read);
 
+        //entities may be skipped by delta or off-screen snapshots; interpolating over the whole gap would make them lag behind once they move
+        if(limitSpacing && !created && netClient.syncSpacing > 0 && entity.updateSpacing() > netClient.syncSpacing * 2){
+            entity.updateSpacing(netClient.syncSpacing);
+        }
+
         if(created){
             //snap initial starting position
             entity.snapSync();
@@ -568,6 +584,76 @@ public class NetClient implements ApplicationListener{
         }
     }
 
+    /**
+     * Per-player entity snapshot. Entities that changed since the base are sent as changed words, others in full.
+     * @param snapshot ID of this packet, which is acknowledged to the server, or -1 if it is not part of a delta chain
+     * @param base ID of the snapshot the packet is encoded against, or -1 if there is none
+     * @see NetServer#writeEntitySnapshotsPlayers(Seq, boolean, boolean)
+     */
+    @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
+    public static void entityDeltaSnapshot(int snapshot, int base, short amount, byte[] data){
+        try{
+            netClient.lastSnapshotTimestamp = Time.millis();
+            var baseline = netClient.syncBaseline;
+
+            //older than a packet that was already read
+            if(snapshot != -1 && snapshot <= netClient.lastDeltaSnapshot) return;
+            //the server only uses acknowledged bases, so this only fails if the base is too old; the next keyframe does not need one
+            if(base != -1 && !baseline.resolve(base)) return;
+
+            netClient.byteStream.setBytes(data);
+            DataInputStream input = netClient.dataStream;
+            IntMap<byte[]> recorded = snapshot == -1 ? null : baseline.add(snapshot, base);
+            boolean complete = true;
+
+            for(int j = 0; j < amount; j++){
+                int id = input.readInt();
+                byte typeID = input.readByte();
+                boolean delta = input.readBoolean();
+                int length = input.readInt();
+                byte[] full = new byte[length];
+
+                if(!delta){
+                    input.readFully(full);
+                }else{
+                    int words = (length + 3) / 4, maskLength = (words + 7) / 8;
+                    if(netClient.deltaMask.length < maskLength) netClient.deltaMask = new byte[maskLength];
+                    byte[] mask = netClient.deltaMask;
+                    input.readFully(mask, 0, maskLength);
+
+                    byte[] previous = base == -1 ? null : baseline.data.get(id);
+                    boolean valid = previous != null && previous.length == length;
+                    if(valid) System.arraycopy(previous, 0, full, 0, length);
+
+                    for(int w = 0; w < words; w++){
+                        if((mask[w / 8] & (1 << (w % 8))) != 0){
+                            int start = w * 4;
+                            input.readFully(full, start, Math.min(start + 4, length) - start);
+                        }
+                    }
+
+                    //should not happen, since both sides resolve the same base; the packet is not acknowledged, so the server keeps sending these changes
+                    if(!valid){
+                        complete = false;
+                        continue;
+                    }
+                }
+
+                if(recorded != null) recorded.put(id, full);
+                netClient.deltaStream.setBytes(full);
+                readSyncEntity(id, typeID, netClient.deltaReads, true);
+            }
+
+            if(snapshot != -1){
+                netClient.lastDeltaSnapshot = snapshot;
+                if(complete) netClient.deltaSnapshotAck = snapshot;
+            }
+        }catch(Exception e){
+            //don't disconnect, just log it
+            Log.err("Error reading delta entity snapshot", e);
+        }
+    }
+
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
     public static void hiddenSnapshot(IntSeq ids){
         for(int i = 0; i < ids.size; i++){
@@ -608,6 +694,10 @@ public class NetClient implements ApplicationListener{
     @Remote(priority = PacketPriority.low, unreliable = true)
     public static void stateSnapshot(float waveTime, int wave, int enemies, boolean paused, boolean gameOver, int timeData, byte tps, long rand0, long rand1, byte[] coreData){
         try{
+            long now = Time.millis();
+            if(netClient.lastStateSnapshot != 0) netClient.syncSpacing = now - netClient.lastStateSnapshot;
+            netClient.lastStateSnapshot = now;
+
             if(wave > state.wave){
                 state.wave = wave;
                 Events.fire(new WaveEvent());
@@ -714,6 +804,9 @@ public class NetClient implements ApplicationListener{
         quiet = false;
         lastSent = 0;
         lastSnapshotTimestamp = 0;
+        syncBaseline.clear();
+        lastDeltaSnapshot = deltaSnapshotAck = sentSnapshotAck = -1;
+        syncSpacing = lastStateSnapshot = 0;
 
         Groups.clear();
         ui.chatfrag.clearMessages();
@@ -776,6 +869,11 @@ public class NetClient implements ApplicationListener{
             );
         }
 
+        if(deltaSnapshotAck != sentSnapshotAck){
+            sentSnapshotAck = deltaSnapshotAck;
+            Call.entitySnapshotAck(deltaSnapshotAck);
+        }
+
         if(pingTime.poll()){
             Call.ping(Time.millis());
         }
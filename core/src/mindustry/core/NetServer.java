@@ -31,6 +31,7 @@ import mindustry.world.meta.*;
 import java.io.*;
 import java.net.*;
 import java.nio.*;
+import java.util.concurrent.*;
 
 import static arc.util.Log.*;
 import static mindustry.Vars.*;
@@ -51,6 +52,8 @@ public class NetServer implements ApplicationListener{
     private static final ClientBuildPlans plansOut = new ClientBuildPlans();
     /** If a player goes away of their server-side coordinates by this distance, they get teleported back. */
     private static final float correctDist = tilesize * 14f;
+    /** How entities are matched against a player's view in per-player snapshots. */
+    private static final int interestAlways = 0, interestUnit = 1, interestPosition = 2;
 
     public Administration admins = new Administration();
     public CommandHandler clientCommands = new CommandHandler("/");
@@ -123,6 +126,34 @@ public class NetServer implements ApplicationListener{
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
     private Writes dataStreamWrites = new Writes(dataStream);
+    /** Sync data of every entity, written once per set of per-player snapshots. */
+    private ReusableByteOutStream syncSource = new ReusableByteOutStream();
+    private Writes syncSourceWrites = new Writes(new DataOutputStream(syncSource));
+    /** ID, class ID, offset and length of data, and interest kind of each entity in {@link #syncSource}, and positions of entities of {@link #interestPosition} kind. */
+    private IntSeq syncEntityInfo = new IntSeq();
+    private FloatSeq syncPositions = new FloatSeq();
+    /** Stream for per-player entity snapshots, which may be built on the snapshot executor. */
+    private ReusableByteOutStream encodeStream = new ReusableByteOutStream();
+    private DataOutputStream encodeData = new DataOutputStream(encodeStream);
+    /** Changed word mask of the entity currently being encoded. */
+    private byte[] deltaMask = new byte[16];
+    /** Collects the units in a player's view into their connection's set. */
+    private @Nullable IntSet interestTarget;
+    private Cons<Unit> interestAdder = unit -> interestTarget.add(unit.id);
+    /** Encodes the per-player snapshots captured during a sync. Created on first use, only if {@link Config#asyncSnapshots} is enabled. */
+    private @Nullable ExecutorService snapshotExecutor;
+    /** World data shared by players that join in the same frame. Only used if {@link Config#sharedWorldData} is enabled. */
+    public final WorldStreamCache worldStreams = new WorldStreamCache();
+    /** Sends captured during the current sync. Null if packets are sent immediately. */
+    private @Nullable Seq<Runnable> snapshotSends;
+    /** Encoding jobs captured during the current sync. */
+    private Seq<Runnable> snapshotEncodes = new Seq<>(false, 4, Runnable.class);
+    /** Sends of the last sync, which are run on the main thread once its encoding jobs are done. */
+    private @Nullable Seq<Runnable> pendingSends;
+    /** Batch of encoding jobs currently running on the snapshot executor. */
+    private @Nullable Future<?> snapshotBatch;
+    /** Time the snapshot executor spent on the last batch. */
+    private volatile long snapshotEncodeNanos;
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons2<Player, String>>> customPacketHandlers = new ObjectMap<>();
     /** Packet handlers for custom types of messages - binary version. */
@@ -545,11 +576,28 @@ public class NetServer implements ApplicationListener{
     }
 
     public void sendWorldData(Player player){
-        var stream = new ByteArrayOutputStream();
-        NetworkIO.writeWorld(player, new FastDeflaterOutputStream(stream));
-        player.con.sendStream(new WorldStream(), stream);
+        //snapshots of the previous world must not arrive after the world data
+        finishSnapshotSends();
+
+        if(Config.sharedWorldData.bool() && !player.con.hasConnected){
+            //joining players do not receive snapshots until they confirm, so the data can be sent in the background
+            worldStreams.sendAsync(player, player.con);
+            debug("Queued world data for @ (@ / @)", player.name, player.con.address, player.uuid());
+        }else{
+            ByteArrayOutputStream stream;
+            if(Config.sharedWorldData.bool()){
+                stream = worldStreams.write(player);
+            }else{
+                stream = new ByteArrayOutputStream();
+                NetworkIO.writeWorld(player, new FastDeflaterOutputStream(stream));
+            }
+            player.con.sendStream(new WorldStream(), stream);
 
-        debug("Packed @ of world data to @ (@ / @)", Strings.formatByteCount(stream.size()), player.name, player.con.address, player.uuid());
+            debug("Packed @ of world data to @ (@ / @)", Strings.formatByteCount(stream.size()), player.name, player.con.address, player.uuid());
+        }
+
+        //the client starts with a fresh world, so the next delta snapshot must be a keyframe; the encoder drops the baseline
+        player.con.resetSnapshots = true;
     }
 
     /**
@@ -751,6 +799,15 @@ public class NetServer implements ApplicationListener{
         clientPlanSnapshot(player, groupId, plans);
     }
 
+    /** Acknowledges a delta entity snapshot; see {@link SyncBaseline}. Applied by the snapshot encoder before it encodes the next one. */
+    @Remote(targets = Loc.client, unreliable = true)
+    public static void entitySnapshotAck(Player player, int snapshot){
+        NetConnection con = player.con;
+        if(con == null || snapshot <= con.lastSnapshotAck) return;
+
+        con.lastSnapshotAck = snapshot;
+    }
+
     @Remote(targets = Loc.client, unreliable = true, priority = PacketPriority.high)
     public static void clientSnapshot(
         Player player,
@@ -1112,7 +1169,7 @@ public class NetServer implements ApplicationListener{
 
                 if(syncStream.size() > maxSnapshotSize){
                     dataStream.close();
-                    Call.blockSnapshot(sent, syncStream.toByteArray());
+                    sendBlockSnapshot(sent, syncStream.toByteArray());
                     sent = 0;
                     syncStream.reset();
                 }
@@ -1121,10 +1178,14 @@ public class NetServer implements ApplicationListener{
 
         if(sent > 0){
             dataStream.close();
-            Call.blockSnapshot(sent, syncStream.toByteArray());
+            sendBlockSnapshot(sent, syncStream.toByteArray());
         }
     }
 
+    private void sendBlockSnapshot(short amount, byte[] data){
+        sendSnapshot(() -> Call.blockSnapshot(amount, data));
+    }
+
     public void writeStateSnapshot() throws IOException{
         byte tps = (byte)Math.min(Core.graphics.getFramesPerSecond(), 255);
         syncStream.reset();
@@ -1143,8 +1204,13 @@ public class NetServer implements ApplicationListener{
 
         dataStream.close();
 
-        Call.stateSnapshot(state.wavetime, state.wave, state.enemies, state.isPaused(), state.gameOver,
-        universe.seconds(), tps, GlobalVars.rand.seed0, GlobalVars.rand.seed1, syncStream.toByteArray());
+        float wavetime = state.wavetime;
+        int wave = state.wave, enemies = state.enemies, seconds = universe.seconds();
+        boolean paused = state.isPaused(), gameOver = state.gameOver;
+        long seed0 = GlobalVars.rand.seed0, seed1 = GlobalVars.rand.seed1;
+        byte[] data = syncStream.toByteArray();
+
+        sendSnapshot(() -> Call.stateSnapshot(wavetime, wave, enemies, paused, gameOver, seconds, tps, seed0, seed1, data));
     }
 
     /** Does not check isSyncHidden. Call this if no entities are hidden. */
@@ -1160,7 +1226,7 @@ public class NetServer implements ApplicationListener{
 
             if(syncStream.size() > maxSnapshotSize){
                 dataStream.close();
-                Call.entitySnapshot((short)sent, syncStream.toByteArray());
+                sendEntitySnapshot((short)sent, syncStream.toByteArray());
                 sent = 0;
                 syncStream.reset();
             }
@@ -1169,10 +1235,237 @@ public class NetServer implements ApplicationListener{
         if(sent > 0){
             dataStream.close();
 
-            Call.entitySnapshot((short)sent, syncStream.toByteArray());
+            sendEntitySnapshot((short)sent, syncStream.toByteArray());
         }
     }
 
+    private void sendEntitySnapshot(short amount, byte[] data){
+        sendSnapshot(() -> Call.entitySnapshot(amount, data));
+    }
+
+    /**
+     * Writes entity snapshots separately for each player. Sync data of every entity is only written once.
+     * Only that data and the view of each player are captured here; the per-player packets are built with the other snapshot sends,
+     * which is on the snapshot executor if {@link Config#asyncSnapshots} is enabled.
+     * <p>
+     * With {@code interest}, entities outside of the player's view rectangle (plus {@link Config#interestMargin} world units)
+     * are only sent every {@link Config#offscreenSnapshotInterval} snapshots. Units in view are looked up through each team's unit tree.
+     * An entity that enters the view is sent in the same snapshot; the client interpolates it over one sync instead of the whole time it was off-screen.
+     * <p>
+     * With {@code delta}, every packet is encoded against the data of the last packet the client acknowledged, see {@link SyncBaseline}.
+     * Only the 4-byte words of sync data that changed since then are sent, and unchanged entities are skipped. Packets are sent unreliably;
+     * a lost packet is never acknowledged, so its changes are sent again until a packet that contains them is.
+     * Every {@link Config#snapshotKeyframeInterval} snapshots, everything is sent in full against no base, so a client that can not resolve a base recovers.
+     * Clients limit the interpolation time of entities in per-player snapshots, see {@link NetClient#readSyncEntity(int, byte, Reads, boolean)}.
+     */
+    public void writeEntitySnapshotsPlayers(Seq<Player> players, boolean delta, boolean interest) throws IOException{
+        syncSource.reset();
+        syncEntityInfo.clear();
+        syncPositions.clear();
+
+        for(Syncc entity : Groups.sync){
+            int offset = syncSource.size();
+            entity.beforeWrite();
+            entity.writeSync(syncSourceWrites);
+
+            //units are checked against the unit tree; entities without a position, e.g. weather, are always relevant
+            int kind = entity instanceof Unit ? interestUnit : entity instanceof Posc ? interestPosition : interestAlways;
+            syncEntityInfo.add(entity.id());
+            syncEntityInfo.add(entity.classId() & 0xFF);
+            syncEntityInfo.add(offset);
+            syncEntityInfo.add(syncSource.size() - offset);
+            syncEntityInfo.add(kind);
+            if(kind == interestPosition){
+                syncPositions.add(((Posc)entity).x());
+                syncPositions.add(((Posc)entity).y());
+            }else{
+                syncPositions.add(0f);
+                syncPositions.add(0f);
+            }
+        }
+
+        float margin = Config.interestMargin.num();
+        var connections = new Seq<NetConnection>(players.size);
+
+        for(Player player : players){
+            NetConnection con = player.con;
+            connections.add(con);
+
+            //view rectangle is unknown until the first client snapshot arrives
+            con.interestUnits.clear();
+            if(interest && con.viewWidth > 0 && con.viewHeight > 0){
+                con.interestRect.setCentered(con.viewX, con.viewY, con.viewWidth + margin * 2f, con.viewHeight + margin * 2f);
+                interestTarget = con.interestUnits;
+                for(TeamData data : state.teams.present){
+                    if(data.unitTree != null){
+                        data.unitTree.intersect(con.interestRect, interestAdder);
+                    }
+                }
+                interestTarget = null;
+            }else{
+                con.interestRect.set(0f, 0f, 0f, 0f);
+            }
+        }
+
+        //the captured data is only written again after the previous batch of sends is done
+        byte[] source = syncSource.getBytes();
+        int keyframeInterval = Math.max(Config.snapshotKeyframeInterval.num(), 1);
+        int offscreenInterval = Math.max(Config.offscreenSnapshotInterval.num(), 1);
+
+        var targets = new Seq<NetConnection>(false, connections.size, NetConnection.class);
+        var packets = new Seq<EntityDeltaSnapshotCallPacket>(false, connections.size, EntityDeltaSnapshotCallPacket.class);
+
+        encodeSnapshot(() -> {
+            try{
+                encodeEntitySnapshots(connections, source, delta, keyframeInterval, offscreenInterval, targets, packets);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        });
+
+        //the encoded packets take the place of the capture in the send order
+        sendSnapshot(() -> {
+            for(int i = 0; i < packets.size; i++){
+                targets.items[i].send(packets.items[i], false);
+            }
+        });
+    }
+
+    /**
+     * Builds the per-player packets of {@link #writeEntitySnapshotsPlayers(Seq, boolean, boolean)} from the captured sync data.
+     * Runs on the snapshot executor if {@link Config#asyncSnapshots} is enabled, so it must not read live entities, use the main sync stream or send anything.
+     * @param targets receives the connection of each packet
+     * @param packets receives the packets, in the order they must be sent
+     */
+    private void encodeEntitySnapshots(Seq<NetConnection> connections, byte[] source, boolean delta, int keyframeInterval, int offscreenInterval,
+                                       Seq<NetConnection> targets, Seq<EntityDeltaSnapshotCallPacket> packets) throws IOException{
+        var info = syncEntityInfo.items;
+        var positions = syncPositions.items;
+        int entities = syncEntityInfo.size / 5;
+
+        for(NetConnection con : connections){
+            SyncBaseline baseline = con.syncBaseline;
+            if(con.resetSnapshots){
+                con.resetSnapshots = false;
+                con.snapshotsSinceKeyframe = 0;
+                baseline.clear();
+            }
+
+            boolean keyframe = con.snapshotsSinceKeyframe++ % keyframeInterval == 0;
+            int base = -1;
+            if(delta){
+                //acknowledgements are only applied here, so the baseline is never modified by two threads
+                baseline.resolve(con.lastSnapshotAck);
+                if(!keyframe) base = baseline.id;
+            }
+
+            Rect rect = con.interestRect;
+            boolean filter = rect.width > 0f && rect.height > 0f;
+
+            encodeStream.reset();
+            int sent = 0, total = 0, snapshot = delta ? con.nextSnapshotId++ : -1;
+            IntMap<byte[]> recorded = delta ? baseline.add(snapshot, base) : null;
+
+            for(int i = 0; i < entities; i++){
+                int id = info[i * 5], classId = info[i * 5 + 1], offset = info[i * 5 + 2], length = info[i * 5 + 3], kind = info[i * 5 + 4];
+
+                //off-screen entities are spread out over the interval by ID
+                if(filter && (con.snapshotsSinceKeyframe + id) % offscreenInterval != 0 &&
+                    !(kind == interestAlways || (kind == interestUnit ? con.interestUnits.contains(id) : rect.contains(positions[i * 2], positions[i * 2 + 1])))){
+                    continue;
+                }
+
+                if(!writeEntry(base == -1 ? null : baseline.data.get(id), recorded, id, classId, source, offset, length)) continue;
+
+                sent++;
+                total++;
+
+                if(encodeStream.size() > maxSnapshotSize){
+                    encodeData.close();
+                    addDeltaSnapshot(targets, packets, con, snapshot, base, sent);
+                    sent = 0;
+                    encodeStream.reset();
+
+                    //every packet is acknowledged on its own, so the next one is a separate snapshot on the same base
+                    if(delta){
+                        snapshot = con.nextSnapshotId++;
+                        recorded = baseline.add(snapshot, base);
+                    }
+                }
+            }
+
+            if(sent > 0){
+                encodeData.close();
+                addDeltaSnapshot(targets, packets, con, snapshot, base, sent);
+            }
+
+            con.lastSnapshotEntities = total;
+        }
+    }
+
+    private void addDeltaSnapshot(Seq<NetConnection> targets, Seq<EntityDeltaSnapshotCallPacket> packets, NetConnection con, int snapshot, int base, int sent){
+        var packet = new EntityDeltaSnapshotCallPacket();
+        packet.snapshot = snapshot;
+        packet.base = base;
+        packet.amount = (short)sent;
+        packet.data = encodeStream.toByteArray();
+        targets.add(con);
+        packets.add(packet);
+    }
+
+    /**
+     * Writes an entity of a per-player snapshot: only the changed words if there is a base with the same length, otherwise all of its data.
+     * @param recorded if not null, the full data of the entity is put into it
+     * @return false if nothing changed since the base, in which case nothing is written
+     */
+    private boolean writeEntry(@Nullable byte[] base, @Nullable IntMap<byte[]> recorded, int id, int classId, byte[] source, int offset, int length) throws IOException{
+        if(base != null && base.length == length){
+            int words = (length + 3) / 4, maskLength = (words + 7) / 8;
+            if(deltaMask.length < maskLength) deltaMask = new byte[maskLength];
+            boolean changed = false;
+
+            for(int w = 0; w < words; w++){
+                if(w % 8 == 0) deltaMask[w / 8] = 0;
+                for(int b = w * 4, end = Math.min(b + 4, length); b < end; b++){
+                    if(base[b] != source[offset + b]){
+                        deltaMask[w / 8] |= (byte)(1 << (w % 8));
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+
+            if(!changed) return false;
+
+            encodeData.writeInt(id);
+            encodeData.writeByte(classId);
+            encodeData.writeBoolean(true);
+            encodeData.writeInt(length);
+            encodeData.write(deltaMask, 0, maskLength);
+
+            for(int w = 0; w < words; w++){
+                if((deltaMask[w / 8] & (1 << (w % 8))) != 0){
+                    int start = w * 4;
+                    encodeData.write(source, offset + start, Math.min(start + 4, length) - start);
+                }
+            }
+        }else{
+            encodeData.writeInt(id);
+            encodeData.writeByte(classId);
+            encodeData.writeBoolean(false);
+            encodeData.writeInt(length);
+            encodeData.write(source, offset, length);
+        }
+
+        if(recorded != null){
+            //the base arrays are shared between snapshots, so changed data always goes into a new one
+            byte[] copy = new byte[length];
+            System.arraycopy(source, offset, copy, 0, length);
+            recorded.put(id, copy);
+        }
+        return true;
+    }
+
     /** Checks isSyncHidden for only one player per team. Called if FoW is enabled. */
     public void writeEntitySnapshotsTeam(Team team, Seq<Player> players) throws IOException{
         syncStream.reset();
@@ -1211,8 +1504,14 @@ public class NetServer implements ApplicationListener{
 
         if(hiddenIds.size > 0){
             var packet = new HiddenSnapshotCallPacket();
-            packet.ids = hiddenIds;
-            net.send(packet, tempConnections, false);
+            if(snapshotSends != null){
+                var connections = new Seq<>(tempConnections);
+                packet.ids = new IntSeq(hiddenIds);
+                sendSnapshot(() -> net.send(packet, connections, false));
+            }else{
+                packet.ids = hiddenIds;
+                net.send(packet, tempConnections, false);
+            }
         }
     }
 
@@ -1220,7 +1519,97 @@ public class NetServer implements ApplicationListener{
         var packet = new EntitySnapshotCallPacket();
         packet.amount = amount;
         packet.data = data;
-        net.send(packet, connections, false);
+        if(snapshotSends != null){
+            var copy = new Seq<>(connections);
+            sendSnapshot(() -> net.send(packet, copy, false));
+        }else{
+            net.send(packet, connections, false);
+        }
+    }
+
+    /**
+     * Sends a packet built from captured snapshot data. If snapshots are pipelined, it is queued until the next call to {@link #finishSnapshotSends()} instead.
+     * Sends always run on the main thread, so they are never interleaved with other packets sent to the same connection.
+     */
+    protected void sendSnapshot(Runnable send){
+        if(snapshotSends != null){
+            snapshotSends.add(send);
+        }else{
+            send.run();
+        }
+    }
+
+    /** Encodes packets from captured snapshot data. If snapshots are pipelined, this runs on the snapshot executor instead. */
+    private void encodeSnapshot(Runnable encode){
+        if(snapshotSends != null){
+            snapshotEncodes.add(encode);
+        }else{
+            encode.run();
+        }
+    }
+
+    /** Hands the encoding jobs captured during this sync over to the snapshot executor. Its sends stay queued for the main thread. */
+    private void flushSnapshotSends(){
+        if(snapshotSends == null) return;
+
+        var sends = snapshotSends;
+        snapshotSends = null;
+        if(sends.isEmpty()){
+            snapshotEncodes.clear();
+            return;
+        }
+        pendingSends = sends;
+        if(snapshotEncodes.isEmpty()) return;
+
+        if(snapshotExecutor == null){
+            snapshotExecutor = Threads.executor("Snapshot Encoder", 1);
+        }
+
+        var encodes = snapshotEncodes.toArray();
+        snapshotEncodes.clear();
+
+        snapshotBatch = snapshotExecutor.submit(() -> {
+            long begin = Time.nanos();
+            for(var encode : encodes){
+                try{
+                    encode.run();
+                }catch(Throwable e){
+                    Log.err("Failed to encode snapshot", e);
+                }
+            }
+            snapshotEncodeNanos = Time.timeSinceNanos(begin);
+        });
+    }
+
+    /** Blocks until the last batch of snapshots is encoded, then sends all of its packets from this thread, in the order they were captured. */
+    public void finishSnapshotSends(){
+        if(snapshotBatch != null){
+            PerfCounter.snapshotWait.begin();
+            try{
+                snapshotBatch.get();
+            }catch(InterruptedException | ExecutionException e){
+                throw new RuntimeException(e);
+            }
+            PerfCounter.snapshotWait.end();
+
+            snapshotBatch = null;
+            PerfCounter.snapshotEncode.add(snapshotEncodeNanos);
+        }
+
+        if(pendingSends == null) return;
+
+        var sends = pendingSends;
+        pendingSends = null;
+
+        PerfCounter.snapshotSend.begin();
+        for(int i = 0; i < sends.size; i++){
+            try{
+                sends.items[i].run();
+            }catch(Throwable e){
+                Log.err("Failed to send snapshot", e);
+            }
+        }
+        PerfCounter.snapshotSend.end();
     }
 
     /** Writes a custom snapshot containing player-local entities; this is for entities other players don't see. */
@@ -1236,7 +1625,7 @@ public class NetServer implements ApplicationListener{
 
             if(syncStream.size() > maxSnapshotSize){
                 dataStream.close();
-                Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+                sendCustomEntitySnapshot(player.con, (short)sent, syncStream.toByteArray());
                 sent = 0;
                 syncStream.reset();
             }
@@ -1245,10 +1634,14 @@ public class NetServer implements ApplicationListener{
         if(sent > 0){
             dataStream.close();
 
-            Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+            sendCustomEntitySnapshot(player.con, (short)sent, syncStream.toByteArray());
         }
     }
 
+    private void sendCustomEntitySnapshot(NetConnection con, short amount, byte[] data){
+        sendSnapshot(() -> Call.entitySnapshot(con, amount, data));
+    }
+
     protected void writeEntity(Syncc entity, DataOutputStream dataStream) throws IOException{
         dataStream.writeInt(entity.id());
         dataStream.writeByte(entity.classId() & 0xFF);
@@ -1314,64 +1707,86 @@ public class NetServer implements ApplicationListener{
                 }
             });
 
-            if(Time.timeSinceMillis(snapshotSyncTime) >= interval){
-                snapshotSyncTime = Time.millis();
-
-                writeStateSnapshot();
+            //at most one batch is in flight, so packets are sent in order and never lag more than one sync behind
+            finishSnapshotSends();
+            if(Config.asyncSnapshots.bool()){
+                snapshotSends = new Seq<>(false, 32, Runnable.class);
+            }
 
-                if(Vars.state.rules.fog){
-                    //Serialize by teams
-                    for(Team team : Team.all){ //Not Teams.active, because players can be on inactive teams
-                        var tdata = team.data();
-                        playersToSend.selectFrom(tdata.players, p -> !p.isLocal() && p.con.hasConnected);
+            PerfCounter.snapshotCapture.begin();
+            try{
+                if(Time.timeSinceMillis(snapshotSyncTime) >= interval){
+                    snapshotSyncTime = Time.millis();
+
+                    writeStateSnapshot();
+
+                    if(Vars.state.rules.fog){
+                        //Serialize by teams
+                        for(Team team : Team.all){ //Not Teams.active, because players can be on inactive teams
+                            var tdata = team.data();
+                            playersToSend.selectFrom(tdata.players, p -> !p.isLocal() && p.con.hasConnected);
+                            if(!playersToSend.isEmpty()){
+                                writeEntitySnapshotsTeam(team, playersToSend);
+                            }
+                        }
+                    }else if(Config.deltaSnapshots.bool() || Config.entityInterest.bool()){
+                        //Serialize once, send only what changed or is relevant to each player
+                        playersToSend.clear();
+                        for(Player player : Groups.player){
+                            if(!player.isLocal() && player.con != null && player.con.hasConnected) playersToSend.add(player);
+                        }
                         if(!playersToSend.isEmpty()){
-                            writeEntitySnapshotsTeam(team, playersToSend);
+                            writeEntitySnapshotsPlayers(playersToSend, Config.deltaSnapshots.bool(), Config.entityInterest.bool());
                         }
+                    }else{
+                        //Serialize once for all players
+                        writeEntitySnapshotsAll();
                     }
-                }else{
-                    //Serialize once for all players
-                    writeEntitySnapshotsAll();
-                }
 
-                //write custom player-specific entities (usually labels)
-                for(Player player : Groups.player){
-                    if(player.con != null && player.con.hasConnected && player.con.localEntities.size > 0){
-                        writeCustomEntitySnapshot(player, player.con.localEntities);
+                    //write custom player-specific entities (usually labels)
+                    for(Player player : Groups.player){
+                        if(player.con != null && player.con.hasConnected && player.con.localEntities.size > 0){
+                            writeCustomEntitySnapshot(player, player.con.localEntities);
+                        }
                     }
                 }
-            }
 
 
-            if(Groups.player.size() > 0 && Core.settings.getBool("blocksync") && blockSyncTime.poll()){
-                writeBlockSnapshots();
-            }
+                if(Groups.player.size() > 0 && Core.settings.getBool("blocksync") && blockSyncTime.poll()){
+                    writeBlockSnapshots();
+                }
 
-            if(Groups.player.size() > 0 && buildHealthChanged.size > 0 && healthSyncTime.poll()){
-                healthSeq.clear();
+                if(Groups.player.size() > 0 && buildHealthChanged.size > 0 && healthSyncTime.poll()){
+                    healthSeq.clear();
 
-                var iter = buildHealthChanged.iterator();
-                while(iter.hasNext){
-                    int next = iter.next();
-                    var build = world.build(next);
+                    var iter = buildHealthChanged.iterator();
+                    while(iter.hasNext){
+                        int next = iter.next();
+                        var build = world.build(next);
 
-                    //pack pos + health into update list
-                    if(build != null){
-                        healthSeq.add(next, Float.floatToRawIntBits(build.health));
+                        //pack pos + health into update list
+                        if(build != null){
+                            healthSeq.add(next, Float.floatToRawIntBits(build.health));
+                        }
+
+                        //if size exceeds snapshot limit, send it out and begin building it up again
+                        if(healthSeq.size * 4 >= maxSnapshotSize){
+                            sendHealthUpdate();
+                            healthSeq.clear();
+                        }
                     }
 
-                    //if size exceeds snapshot limit, send it out and begin building it up again
-                    if(healthSeq.size * 4 >= maxSnapshotSize){
-                        Call.buildHealthUpdate(healthSeq);
-                        healthSeq.clear();
+                    //send any residual health updates
+                    if(healthSeq.size > 0){
+                        sendHealthUpdate();
                     }
-                }
 
-                //send any residual health updates
-                if(healthSeq.size > 0){
-                    Call.buildHealthUpdate(healthSeq);
+                    buildHealthChanged.clear();
                 }
-
-                buildHealthChanged.clear();
+            }finally{
+                //captured sends must still go out if a capture failed, or they would be dropped with the next sync
+                flushSnapshotSends();
+                PerfCounter.snapshotCapture.end();
             }
 
             //TODO: this system is a big bandwidth waster, it would be nicer to have a diff system instead
@@ -1420,6 +1835,15 @@ public class NetServer implements ApplicationListener{
         }
     }
 
+    private void sendHealthUpdate(){
+        if(snapshotSends != null){
+            var copy = new IntSeq(healthSeq);
+            sendSnapshot(() -> Call.buildHealthUpdate(copy));
+        }else{
+            Call.buildHealthUpdate(healthSeq);
+        }
+    }
+
     static void clientPlanSnapshotSend(Player player, int groupId, ClientBuildPlans plans){
 
         //only send to others of the same team
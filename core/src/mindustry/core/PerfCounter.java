@@ -15,9 +15,19 @@ public enum PerfCounter{
     buildingUpdate,
     powerUpdate,
     unitUpdate,
+    /** Time spent selecting unit targets before units are updated. Included in unitUpdate. */
+    unitThink,
     unitPhysicsAsync,
     unitPhysicsWait,
     bulletUpdate,
+    /** Main thread time spent capturing server snapshots. */
+    snapshotCapture,
+    /** Main thread time spent waiting for the previous batch of pipelined snapshots to be encoded. */
+    snapshotWait,
+    /** Snapshot executor time spent encoding the last batch of pipelined snapshots. */
+    snapshotEncode,
+    /** Main thread time spent sending the last batch of pipelined snapshots. */
+    snapshotSend,
     ui,
     render;
 
@@ -607,6 +607,11 @@ public class World{
             return tile;
         }
 
+        @Override
+        public boolean concurrentCreate(){
+            return true;
+        }
+
         @Override
         public boolean isGenerating(){
             return World.this.isGenerating();
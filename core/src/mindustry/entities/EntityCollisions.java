@@ -5,14 +5,27 @@ import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
+import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.world.*;
 
+import java.util.*;
+
 import static mindustry.Vars.*;
 
 public class EntityCollisions{
     //move in 1-unit chunks (can this be made more efficient?)
     private static final float seg = 1f, maxDelta = 1000f;
+    //cell size of the bullet broadphase grid
+    private static final float bulletCellSize = tilesize * 4f;
+
+    /**
+     * If true, bullet collision candidates are found through one grid of all units that is built per frame,
+     * instead of a quadtree query per bullet and enemy team. Collisions are still checked in the same bullet order with {@link #checkCollide(Hitboxc, Hitboxc)}.
+     * The grid can not reproduce the order of quadtree queries, so its candidates are sorted by distance instead (see {@link #sortCandidates(Hitboxc)}).
+     * Both produce the same hits, except when a bullet overlaps several enemies in one frame: then this hits the closest one, the quadtree whichever it finds first.
+     */
+    public boolean bulletBroadphase = false;
 
     //tile collisions
     private Vec2 vector = new Vec2(), l1 = new Vec2();
@@ -22,6 +35,16 @@ public class EntityCollisions{
     private Seq<Hitboxc> arrOut = new Seq<>(Hitboxc.class);
     private Cons<Hitboxc> hitCons = this::updateCollision;
     private Cons<QuadTree> treeCons = tree -> tree.intersect(r2, arrOut);
+    //distance of each candidate in arrOut, see sortCandidates()
+    private float[] candidateDst = new float[16];
+
+    //bullet broadphase: units of all present teams, sorted by (team, cell) with a counting sort
+    private Cons<Bullet> bulletCons = this::updateBulletCollision;
+    private int gridWidth, gridHeight, gridCells;
+    private int[] gridStart = {}, gridCursor = {}, unitKeys = {};
+    private Unit[] gridUnits = {}, sortUnits = {};
+    private float[] gridX = {}, gridY = {}, gridHalf = {};
+    private float maxUnitHalf;
 
     public void moveCheck(Hitboxc entity, float deltax, float deltay, SolidPred solidCheck){
         if(!solidCheck.solid(entity.tileX(), entity.tileY())){
@@ -214,7 +237,160 @@ public class EntityCollisions{
 
     @SuppressWarnings("unchecked")
     public <T extends Hitboxc> void collide(EntityGroup<T> groupa){
-        groupa.each((Cons<T>)hitCons);
+        if(bulletBroadphase && (EntityGroup<?>)groupa == Groups.bullet){
+            if(Groups.bullet.isEmpty()) return;
+
+            buildUnitGrid();
+            Groups.bullet.each(bulletCons);
+        }else{
+            groupa.each((Cons<T>)hitCons);
+        }
+    }
+
+    /** Sorts the units of every present team into the broadphase grid. Matches the contents of the team unit trees. */
+    private void buildUnitGrid(){
+        Seq<TeamData> data = state.teams.present;
+
+        gridWidth = Math.max(Mathf.ceil(world.unitWidth() / bulletCellSize), 1);
+        gridHeight = Math.max(Mathf.ceil(world.unitHeight() / bulletCellSize), 1);
+        gridCells = gridWidth * gridHeight;
+
+        int total = gridCells * data.size, amount = 0;
+        for(int t = 0; t < data.size; t++){
+            amount += data.items[t].units.size;
+        }
+
+        if(gridStart.length < total + 1){
+            gridStart = new int[total + 1];
+            gridCursor = new int[total];
+        }else{
+            Arrays.fill(gridStart, 0, total + 1, 0);
+        }
+
+        if(gridUnits.length < amount){
+            int cap = Math.max(amount, gridUnits.length * 7 / 4);
+            gridUnits = new Unit[cap];
+            sortUnits = new Unit[cap];
+            unitKeys = new int[cap];
+            gridX = new float[cap];
+            gridY = new float[cap];
+            gridHalf = new float[cap];
+        }
+
+        maxUnitHalf = 0f;
+        int slot = 0;
+        for(int t = 0; t < data.size; t++){
+            var units = data.items[t].units;
+            for(int i = 0; i < units.size; i++){
+                Unit unit = units.items[i];
+                int key = t * gridCells + cellX(unit.x) + cellY(unit.y) * gridWidth;
+                unitKeys[slot] = key;
+                sortUnits[slot ++] = unit;
+                gridStart[key + 1] ++;
+                maxUnitHalf = Math.max(maxUnitHalf, unit.hitSize / 2f);
+            }
+        }
+
+        for(int i = 0; i < total; i++){
+            gridStart[i + 1] += gridStart[i];
+        }
+
+        System.arraycopy(gridStart, 0, gridCursor, 0, total);
+        for(int i = 0; i < amount; i++){
+            Unit unit = sortUnits[i];
+            int index = gridCursor[unitKeys[i]] ++;
+            gridUnits[index] = unit;
+            gridX[index] = unit.x;
+            gridY[index] = unit.y;
+            gridHalf[index] = unit.hitSize / 2f;
+            sortUnits[i] = null;
+        }
+    }
+
+    private void updateBulletCollision(Bullet bullet){
+        bullet.hitbox(r1);
+        r1.x += (bullet.lastX() - bullet.getX());
+        r1.y += (bullet.lastY() - bullet.getY());
+
+        bullet.hitbox(r2);
+        r2.merge(r1);
+
+        arrOut.clear();
+
+        //same candidates as getCollisions(): units of every other present team whose hitbox overlaps the swept bullet hitbox
+        float x1 = r2.x, y1 = r2.y, x2 = r2.x + r2.width, y2 = r2.y + r2.height;
+        int minX = cellX(x1 - maxUnitHalf), maxX = cellX(x2 + maxUnitHalf), minY = cellY(y1 - maxUnitHalf), maxY = cellY(y2 + maxUnitHalf);
+
+        Seq<TeamData> data = state.teams.present;
+        for(int t = 0; t < data.size; t++){
+            if(data.items[t].team == bullet.team) continue;
+
+            for(int cy = minY; cy <= maxY; cy++){
+                int row = t * gridCells + cy * gridWidth;
+                for(int k = gridStart[row + minX], end = gridStart[row + maxX + 1]; k < end; k++){
+                    float half = gridHalf[k];
+                    if(gridX[k] - half < x2 && gridX[k] + half > x1 && gridY[k] - half < y2 && gridY[k] + half > y1){
+                        arrOut.add(gridUnits[k]);
+                    }
+                }
+            }
+        }
+
+        sortCandidates(bullet);
+
+        var items = arrOut.items;
+        int size = arrOut.size;
+
+        for(int i = 0; i < size; i++){
+            Hitboxc sc = items[i];
+            sc.hitbox(r1);
+            if(r2.overlaps(r1)){
+                checkCollide(bullet, sc);
+                //break out of loop when this object hits something
+                if(!bullet.isAdded()) return;
+            }
+        }
+    }
+
+    /**
+     * Sorts the candidates in arrOut by distance to the previous position of the entity, then by ID. Only used by the bullet broadphase.
+     * Collisions are checked in this order and stop once the entity is removed, so a bullet that overlaps several units hits the closest one along its path,
+     * independent of the order in which the candidates were found.
+     */
+    private void sortCandidates(Hitboxc source){
+        int size = arrOut.size;
+        if(size < 2) return;
+
+        if(candidateDst.length < size) candidateDst = new float[Math.max(size, candidateDst.length * 2)];
+
+        var items = arrOut.items;
+        float[] dst = candidateDst;
+        float sx = source.lastX(), sy = source.lastY();
+        for(int i = 0; i < size; i++){
+            dst[i] = Mathf.dst2(sx, sy, items[i].getX(), items[i].getY());
+        }
+
+        //insertion sort, since there are rarely more than a few candidates
+        for(int i = 1; i < size; i++){
+            Hitboxc item = items[i];
+            float d = dst[i];
+            int j = i - 1;
+            while(j >= 0 && (dst[j] > d || (dst[j] == d && items[j].id() > item.id()))){
+                items[j + 1] = items[j];
+                dst[j + 1] = dst[j];
+                j --;
+            }
+            items[j + 1] = item;
+            dst[j + 1] = d;
+        }
+    }
+
+    private int cellX(float x){
+        return Math.max(Math.min((int)(x / bulletCellSize), gridWidth - 1), 0);
+    }
+
+    private int cellY(float y){
+        return Math.max(Math.min((int)(y / bulletCellSize), gridHeight - 1), 0);
     }
 
     private void updateCollision(Hitboxc solid){
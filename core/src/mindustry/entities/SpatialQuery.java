@@ -0,0 +1,165 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.entities.Units.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+
+/**
+ * Scratch state for a single unit or building query.
+ * Query methods in {@link Units} and {@link mindustry.ai.BlockIndexer} that accept a SpatialQuery only write into it, so they are safe
+ * to call from any thread as long as every thread uses its own instance, and they do not allocate once the instance is warmed up.
+ * The overloads without a SpatialQuery {@link #obtain() obtain} one from a per-thread stack, which also makes them re-entrant
+ * (e.g. when a predicate runs another query).
+ * <p>
+ * A query instance must not be shared between two queries that are running at the same time.
+ */
+public class SpatialQuery{
+    private static final ThreadLocal<Stack> stacks = Threads.local(Stack::new);
+
+    /** Result unit of the last query. */
+    public @Nullable Unit unit;
+    /** Result building of the last query. */
+    public @Nullable Building building;
+    /** Cost (usually distance) of the current result. */
+    public float cost;
+    /** Target priority of the current result. */
+    public float priority;
+    /** Result count of the last counting query. */
+    public int count;
+    /** Reusable buffers for collecting query results. */
+    public final Seq<Building> buildings = new Seq<>(false, 16, Building.class);
+    public final Seq<Unit> units = new Seq<>(false, 16, Unit.class);
+    public final Rect rect = new Rect(), hitrect = new Rect();
+
+    //query parameters, read by the callbacks below
+    Team team;
+    float x, y, range;
+    boolean ground, circle;
+    Boolf<Unit> unitPredicate;
+    Boolf<Building> buildPredicate;
+    Sortf sort;
+
+    final Cons<Unit> closestEnemy = e -> {
+        if(e.dead() || !unitPredicate.get(e) || e.team == Team.derelict || !e.targetable(team) || e.inFogTo(team)) return;
+
+        float dst2 = e.dst2(x, y) - (e.hitSize * e.hitSize);
+        if(dst2 < range*range && (unit == null || dst2 < cost || e.type.targetPriority > priority) && e.type.targetPriority >= priority){
+            unit = e;
+            cost = dst2;
+            priority = e.type.targetPriority;
+        }
+    };
+
+    final Cons<Unit> bestEnemy = e -> {
+        if(e.dead() || !unitPredicate.get(e) || e.team == Team.derelict || !e.within(x, y, range + e.hitSize/2f) || !e.targetable(team) || e.inFogTo(team)) return;
+
+        float value = sort.cost(e, x, y);
+        if((unit == null || value < cost || e.type.targetPriority > priority) && e.type.targetPriority >= priority){
+            unit = e;
+            cost = value;
+            priority = e.type.targetPriority;
+        }
+    };
+
+    final Cons<Unit> closest = e -> {
+        if((circle && !e.within(x, y, range + e.hitSize/2f)) || !e.isValid() || !unitPredicate.get(e)) return;
+
+        float dist = sort == null ? e.dst2(x, y) : sort.cost(e, x, y);
+        if(unit == null || dist < cost){
+            unit = e;
+            cost = dist;
+        }
+    };
+
+    final Cons<Building> closestBuilding = b -> {
+        if(buildPredicate.get(b)){
+            float dst = b.dst(x, y) - b.hitSize()/2f;
+            if(dst <= range && (building == null || dst <= cost)){
+                cost = dst;
+                building = b;
+            }
+        }
+    };
+
+    final Cons<Unit> counter = e -> {
+        if(unitPredicate.get(e)){
+            count ++;
+        }
+    };
+
+    final Boolf<Unit> anyEntity = e -> {
+        if((e.isGrounded() && !e.type.allowLegStep) == ground){
+            e.hitboxTile(hitrect);
+            return hitrect.overlaps(rect);
+        }
+        return false;
+    };
+
+    final Boolf<Unit> anyEntityCheck = e -> {
+        if(unitPredicate.get(e)){
+            e.hitboxTile(hitrect);
+            return hitrect.overlaps(rect);
+        }
+        return false;
+    };
+
+    private @Nullable Stack stack;
+
+    /** @return a free query from the stack of the current thread. Must be returned with {@link #free()}. */
+    public static SpatialQuery obtain(){
+        return stacks.get().obtain();
+    }
+
+    /** Returns a query obtained from {@link #obtain()}. Queries must be freed in the reverse order they were obtained in. */
+    public void free(){
+        reset();
+        if(stack != null){
+            if(stack.depth == 0 || stack.queries.items[stack.depth - 1] != this){
+                throw new IllegalStateException("Spatial queries must be freed in the reverse order they were obtained in.");
+            }
+            stack.depth --;
+        }
+    }
+
+    /** Clears results and parameters, so no references are held. */
+    public SpatialQuery reset(){
+        unit = null;
+        building = null;
+        cost = 0f;
+        priority = 0f;
+        count = 0;
+        team = null;
+        unitPredicate = null;
+        buildPredicate = null;
+        sort = null;
+        circle = false;
+        buildings.clear();
+        units.clear();
+        return this;
+    }
+
+    void set(Team team, float x, float y, float range){
+        this.team = team;
+        this.x = x;
+        this.y = y;
+        this.range = range;
+    }
+
+    static class Stack{
+        final Seq<SpatialQuery> queries = new Seq<>(SpatialQuery.class);
+        int depth;
+
+        SpatialQuery obtain(){
+            if(depth == queries.size){
+                var query = new SpatialQuery();
+                query.stack = this;
+                queries.add(query);
+            }
+            return queries.items[depth ++];
+        }
+    }
+}
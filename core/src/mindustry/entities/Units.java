@@ -17,22 +17,6 @@ import static mindustry.Vars.*;
 
 /** Utility class for unit and team interactions.*/
 public class Units{
-    private static final Rect hitrect = new Rect();
-    private static Unit result;
-    private static float cdist, cpriority;
-    private static int intResult;
-    private static Building buildResult;
-
-    //prevents allocations in anyEntities
-    private static boolean anyEntityGround;
-    private static float aeX, aeY, aeW, aeH;
-    private static final Boolf<Unit> anyEntityLambda = unit -> {
-        if((unit.isGrounded() && !unit.type.allowLegStep) == anyEntityGround){
-            unit.hitboxTile(hitrect);
-            return hitrect.overlaps(aeX, aeY, aeW, aeH);
-        }
-        return false;
-    };
 
     public static void notifyUnitSpawn(Unit unit){
         if(net.server()){
@@ -186,26 +170,37 @@ public class Units{
     }
 
     public static boolean anyEntities(float x, float y, float width, float height, boolean ground){
-        anyEntityGround = ground;
-        aeX = x;
-        aeY = y;
-        aeW = width;
-        aeH = height;
+        var query = SpatialQuery.obtain();
+        try{
+            return anyEntities(query, x, y, width, height, ground);
+        }finally{
+            query.free();
+        }
+    }
+
+    public static boolean anyEntities(SpatialQuery query, float x, float y, float width, float height, boolean ground){
+        query.ground = ground;
+        query.rect.set(x, y, width, height);
 
-        return nearbyCheck(x, y, width, height, anyEntityLambda);
+        return nearbyCheck(x, y, width, height, query.anyEntity);
     }
 
     /** Note that this checks the tile hitbox, not the standard hitbox. */
     public static boolean anyEntities(float x, float y, float width, float height, Boolf<Unit> check){
+        var query = SpatialQuery.obtain();
+        try{
+            return anyEntities(query, x, y, width, height, check);
+        }finally{
+            query.free();
+        }
+    }
 
-        return nearbyCheck(x, y, width, height, unit -> {
-            if(check.get(unit)){
-                unit.hitboxTile(hitrect);
+    /** Note that this checks the tile hitbox, not the standard hitbox. */
+    public static boolean anyEntities(SpatialQuery query, float x, float y, float width, float height, Boolf<Unit> check){
+        query.unitPredicate = check;
+        query.rect.set(x, y, width, height);
 
-                return hitrect.overlaps(x, y, width, height);
-            }
-            return false;
-        });
+        return nearbyCheck(x, y, width, height, query.anyEntityCheck);
     }
 
     /** Returns the nearest damaged tile. */
@@ -227,25 +222,29 @@ public class Units{
 
     /** @return the closest building of the provided team that matches the predicate. */
     public static @Nullable Building closestBuilding(Team team, float wx, float wy, float range, Boolf<Building> pred){
-        buildResult = null;
-        cdist = 0f;
+        var query = SpatialQuery.obtain();
+        try{
+            return closestBuilding(query, team, wx, wy, range, pred);
+        }finally{
+            query.free();
+        }
+    }
+
+    /** @return the closest building of the provided team that matches the predicate. */
+    public static @Nullable Building closestBuilding(SpatialQuery query, Team team, float wx, float wy, float range, Boolf<Building> pred){
+        query.building = null;
+        query.cost = 0f;
 
-        var buildings = team.data().buildingTree;
+        var buildings = state.teams.buildingTree(team);
         if(buildings == null) return null;
-        buildings.intersect(wx - range, wy - range, range*2f, range*2f, b -> {
-            if(pred.get(b)){
-                float dst = b.dst(wx, wy) - b.hitSize()/2f;
-                if(dst <= range && (buildResult == null || dst <= cdist)){
-                    cdist = dst;
-                    buildResult = b;
-                }
-            }
-        });
 
-        var result = buildResult;
-        buildResult = null;
+        query.x = wx;
+        query.y = wy;
+        query.range = range;
+        query.buildPredicate = pred;
+        buildings.intersect(wx - range, wy - range, range*2f, range*2f, query.closestBuilding);
 
-        return result;
+        return query.building;
     }
 
     /** Iterates through all buildings in a range. */
@@ -253,6 +252,11 @@ public class Units{
         indexer.allBuildings(x, y, range, cons);
     }
 
+    /** Iterates through all buildings in a range. */
+    public static void nearbyBuildings(SpatialQuery query, float x, float y, float range, Cons<Building> cons){
+        indexer.allBuildings(query, x, y, range, cons);
+    }
+
     /** Returns the closest target enemy. First, units are checked, then tile entities. */
     public static Teamc closestTarget(Team team, float x, float y, float range){
         return closestTarget(team, x, y, range, Unit::isValid);
@@ -270,76 +274,103 @@ public class Units{
 
     /** Returns the closest target enemy. First, units are checked, then tile entities. */
     public static Teamc closestTarget(Team team, float x, float y, float range, @Nullable Team sourceTeam, Boolf<Unit> unitPred, Boolf<Building> tilePred){
+        var query = SpatialQuery.obtain();
+        try{
+            return closestTarget(query, team, x, y, range, sourceTeam, unitPred, tilePred);
+        }finally{
+            query.free();
+        }
+    }
+
+    /** Returns the closest target enemy. First, units are checked, then tile entities. */
+    public static Teamc closestTarget(SpatialQuery query, Team team, float x, float y, float range, @Nullable Team sourceTeam, Boolf<Unit> unitPred, Boolf<Building> tilePred){
         if(team == Team.derelict) return null;
 
-        Unit unit = closestEnemy(team, x, y, range, unitPred);
+        Unit unit = closestEnemy(query, team, x, y, range, unitPred);
         if(unit != null){
             return unit;
         }else{
-            return indexer.findEnemyTile(team, x, y, range, UnitSorts.buildingDefault, tilePred, sourceTeam);
+            return indexer.findEnemyTile(query, team, x, y, range, UnitSorts.buildingDefault, tilePred, sourceTeam);
         }
     }
 
     /** Returns the closest target enemy. First, units are checked, then buildings. */
     public static Teamc bestTarget(Team team, float x, float y, float range, Boolf<Unit> unitPred, Boolf<Building> tilePred, Sortf sort){
+        var query = SpatialQuery.obtain();
+        try{
+            return bestTarget(query, team, x, y, range, unitPred, tilePred, sort);
+        }finally{
+            query.free();
+        }
+    }
+
+    /** Returns the closest target enemy. First, units are checked, then buildings. */
+    public static Teamc bestTarget(SpatialQuery query, Team team, float x, float y, float range, Boolf<Unit> unitPred, Boolf<Building> tilePred, Sortf sort){
         if(team == Team.derelict) return null;
 
-        Unit unit = bestEnemy(team, x, y, range, unitPred, sort);
+        Unit unit = bestEnemy(query, team, x, y, range, unitPred, sort);
         if(unit != null){
             return unit;
         }else{
-            return findEnemyTile(team, x, y, range, tilePred);
+            return indexer.findEnemyTile(query, team, x, y, range, UnitSorts.buildingDefault, tilePred, null);
         }
     }
 
     /** Returns the closest enemy of this team. Filter by predicate. */
     public static Unit closestEnemy(Team team, float x, float y, float range, Boolf<Unit> predicate){
-        if(team == Team.derelict) return null;
+        var query = SpatialQuery.obtain();
+        try{
+            return closestEnemy(query, team, x, y, range, predicate);
+        }finally{
+            query.free();
+        }
+    }
 
-        result = null;
-        cdist = 0f;
-        cpriority = -99999f;
+    /** Returns the closest enemy of this team. Filter by predicate. */
+    public static Unit closestEnemy(SpatialQuery query, Team team, float x, float y, float range, Boolf<Unit> predicate){
+        if(team == Team.derelict) return null;
 
-        nearbyEnemies(team, x - range, y - range, range*2f, range*2f, e -> {
-            if(e.dead() || !predicate.get(e) || e.team == Team.derelict || !e.targetable(team) || e.inFogTo(team)) return;
+        query.unit = null;
+        query.cost = 0f;
+        query.priority = -99999f;
+        query.set(team, x, y, range);
+        query.unitPredicate = predicate;
 
-            float dst2 = e.dst2(x, y) - (e.hitSize * e.hitSize);
-            if(dst2 < range*range && (result == null || dst2 < cdist || e.type.targetPriority > cpriority) && e.type.targetPriority >= cpriority){
-                result = e;
-                cdist = dst2;
-                cpriority = e.type.targetPriority;
-            }
-        });
+        nearbyEnemies(team, x - range, y - range, range*2f, range*2f, query.closestEnemy);
 
-        return result;
+        return query.unit;
     }
 
     /** Returns the closest enemy of this team using a custom comparison function. Filter by predicate. */
     public static Unit bestEnemy(Team team, float x, float y, float range, Boolf<Unit> predicate, Sortf sort){
-        if(team == Team.derelict) return null;
+        var query = SpatialQuery.obtain();
+        try{
+            return bestEnemy(query, team, x, y, range, predicate, sort);
+        }finally{
+            query.free();
+        }
+    }
 
-        result = null;
-        cdist = 0f;
-        cpriority = -99999f;
+    /** Returns the closest enemy of this team using a custom comparison function. Filter by predicate. */
+    public static Unit bestEnemy(SpatialQuery query, Team team, float x, float y, float range, Boolf<Unit> predicate, Sortf sort){
+        if(team == Team.derelict) return null;
 
-        nearbyEnemies(team, x - range, y - range, range*2f, range*2f, e -> {
-            if(e.dead() || !predicate.get(e) || e.team == Team.derelict || !e.within(x, y, range + e.hitSize/2f) || !e.targetable(team) || e.inFogTo(team)) return;
+        query.unit = null;
+        query.cost = 0f;
+        query.priority = -99999f;
+        query.set(team, x, y, range);
+        query.unitPredicate = predicate;
+        query.sort = sort;
 
-            float cost = sort.cost(e, x, y);
-            if((result == null || cost < cdist || e.type.targetPriority > cpriority) && e.type.targetPriority >= cpriority){
-                result = e;
-                cdist = cost;
-                cpriority = e.type.targetPriority;
-            }
-        });
+        nearbyEnemies(team, x - range, y - range, range*2f, range*2f, query.bestEnemy);
 
-        return result;
+        return query.unit;
     }
 
     /** Returns the closest ally of this team. Filter by predicate. No range. */
     public static Unit closest(Team team, float x, float y, Boolf<Unit> predicate){
-        result = null;
-        cdist = 0f;
+        Unit result = null;
+        float cdist = 0f;
 
         for(Unit e : Groups.unit){
             if(!predicate.get(e) || e.team() != team) continue;
@@ -356,57 +387,60 @@ public class Units{
 
     /** Returns the closest ally of this team in a range. Filter by predicate. */
     public static Unit closest(Team team, float x, float y, float range, Boolf<Unit> predicate){
-        result = null;
-        cdist = 0f;
-
-        nearby(team, x, y, range, e -> {
-            if(!e.isValid() || !predicate.get(e)) return;
-
-            float dist = e.dst2(x, y);
-            if(result == null || dist < cdist){
-                result = e;
-                cdist = dist;
-            }
-        });
-
-        return result;
+        return closest(team, x, y, range, predicate, null);
     }
 
     /** Returns the closest ally of this team in a range. Filter by predicate. */
-    public static Unit closest(Team team, float x, float y, float range, Boolf<Unit> predicate, Sortf sort){
-        result = null;
-        cdist = 0f;
+    public static Unit closest(Team team, float x, float y, float range, Boolf<Unit> predicate, @Nullable Sortf sort){
+        var query = SpatialQuery.obtain();
+        try{
+            return closest(query, team, x, y, range, predicate, sort);
+        }finally{
+            query.free();
+        }
+    }
 
-        nearby(team, x, y, range, e -> {
-            if(!e.isValid() || !predicate.get(e)) return;
+    /**
+     * Returns the closest ally of this team in a range. Filter by predicate.
+     * @param sort the cost function, or null to use the squared distance.
+     */
+    public static Unit closest(SpatialQuery query, Team team, float x, float y, float range, Boolf<Unit> predicate, @Nullable Sortf sort){
+        query.unit = null;
+        query.cost = 0f;
+        query.set(team, x, y, range);
+        query.unitPredicate = predicate;
+        query.sort = sort;
+        query.circle = true;
 
-            float dist = sort.cost(e, x, y);
-            if(result == null || dist < cdist){
-                result = e;
-                cdist = dist;
-            }
-        });
+        nearby(team, x - range, y - range, range*2f, range*2f, query.closest);
 
-        return result;
+        return query.unit;
     }
 
     /** Returns the closest ally of this team. Filter by predicate.
      * Unlike the closest() function, this only guarantees that unit hitboxes overlap the range. */
     public static Unit closestOverlap(Team team, float x, float y, float range, Boolf<Unit> predicate){
-        result = null;
-        cdist = 0f;
+        var query = SpatialQuery.obtain();
+        try{
+            return closestOverlap(query, team, x, y, range, predicate);
+        }finally{
+            query.free();
+        }
+    }
 
-        nearby(team, x - range, y - range, range*2f, range*2f, e -> {
-            if(!e.isValid() || !predicate.get(e)) return;
+    /** Returns the closest ally of this team. Filter by predicate.
+     * Unlike the closest() function, this only guarantees that unit hitboxes overlap the range. */
+    public static Unit closestOverlap(SpatialQuery query, Team team, float x, float y, float range, Boolf<Unit> predicate){
+        query.unit = null;
+        query.cost = 0f;
+        query.set(team, x, y, range);
+        query.unitPredicate = predicate;
+        query.sort = null;
+        query.circle = false;
 
-            float dist = e.dst2(x, y);
-            if(result == null || dist < cdist){
-                result = e;
-                cdist = dist;
-            }
-        });
+        nearby(team, x - range, y - range, range*2f, range*2f, query.closest);
 
-        return result;
+        return query.unit;
     }
 
     /** @return whether any units exist in this square (centered) */
@@ -416,13 +450,20 @@ public class Units{
 
     /** @return whether any units exist in this rectangle */
     public static int count(float x, float y, float width, float height, Boolf<Unit> filter){
-        intResult = 0;
-        Groups.unit.intersect(x, y, width, height, v -> {
-            if(filter.get(v)){
-                intResult ++;
-            }
-        });
-        return intResult;
+        var query = SpatialQuery.obtain();
+        try{
+            return count(query, x, y, width, height, filter);
+        }finally{
+            query.free();
+        }
+    }
+
+    /** @return whether any units exist in this rectangle */
+    public static int count(SpatialQuery query, float x, float y, float width, float height, Boolf<Unit> filter){
+        query.count = 0;
+        query.unitPredicate = filter;
+        Groups.unit.intersect(x, y, width, height, query.counter);
+        return query.count;
     }
 
     /** @return whether any units exist in this rectangle */
@@ -430,13 +471,18 @@ public class Units{
         return Groups.unit.intersect(x, y, width, height, filter);
     }
 
-    /** Iterates over all units in a rectangle. */
+    /** Iterates over all units in a rectangle. Does not create team data or unit trees, so it is safe to call from any thread. */
     public static void nearby(@Nullable Team team, float x, float y, float width, float height, Cons<Unit> cons){
         if(team != null){
-            team.data().tree().intersect(x, y, width, height, cons);
+            var data = state.teams.getOrNull(team);
+            if(data != null && data.unitTree != null){
+                data.unitTree.intersect(x, y, width, height, cons);
+            }
         }else{
             for(var other : state.teams.present){
-                other.tree().intersect(x, y, width, height, cons);
+                if(other.unitTree != null){
+                    other.unitTree.intersect(x, y, width, height, cons);
+                }
             }
         }
     }
@@ -472,8 +518,9 @@ public class Units{
     public static void nearbyEnemies(Team team, float x, float y, float width, float height, Cons<Unit> cons){
         Seq<TeamData> data = state.teams.present;
         for(int i = 0; i < data.size; i++){
-            if(data.items[i].team != team){
-                nearby(data.items[i].team, x, y, width, height, cons);
+            var other = data.items[i];
+            if(other.team != team && other.unitTree != null){
+                other.unitTree.intersect(x, y, width, height, cons);
             }
         }
     }
@@ -498,7 +545,7 @@ public class Units{
         for(int i = 0; i < data.size; i++){
             var other = data.items[i];
             if(other.team != team && other.team != Team.derelict){
-                if(other.tree().any(x, y, width, height)){
+                if(other.unitTree != null && other.unitTree.any(x, y, width, height)){
                     return true;
                 }
                 if(other.turretTree != null && other.turretTree.any(x, y, width, height)){
@@ -17,6 +17,7 @@ import arc.util.*;
 import arc.util.io.*;
 import mindustry.*;
 import mindustry.annotations.Annotations.*;
+import mindustry.async.*;
 import mindustry.audio.*;
 import mindustry.content.*;
 import mindustry.core.*;
@@ -29,6 +30,7 @@ import mindustry.game.*;
 import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.graphics.*;
+import mindustry.io.*;
 import mindustry.logic.*;
 import mindustry.type.*;
 import mindustry.ui.*;
@@ -58,7 +60,6 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     static final Seq<Building> tempBuilds = new Seq<>();
     static final BuildTeamChangeEvent teamChangeEvent = new BuildTeamChangeEvent();
     static final BuildDamageEvent bulletDamageEvent = new BuildDamageEvent();
-    static int sleepingEntities = 0;
 
     @Import float x, y, health, maxHealth;
     @Import Team team;
@@ -102,6 +103,8 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
 
     private transient boolean sleeping;
     private transient float sleepTime;
+    /** Time at which the sleep scheduler wakes this building, or -1 if it sleeps until woken by an event. */
+    private transient long wakeTime = -1;
     private transient boolean initialized;
 
     //used only by the indexer
@@ -655,19 +658,84 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     public void sleep(){
         sleepTime += Time.delta;
         if(!sleeping && sleepTime >= timeToSleep){
-            remove();
-            sleeping = true;
-            sleepingEntities++;
+            beginSleep();
         }
     }
 
+    /** Puts this entity to sleep until {@link #noSleep()} is called, without advancing the sleep timer. Called by {@link #sleep()} once the timer runs out. */
+    public void beginSleep(){
+        if(sleeping) return;
+        if(BuildingScheduler.defer(self(), true)) return;
+        //state from the last updates is no longer seen by incremental saves once it leaves the group
+        SaveJournal.changed(self());
+        remove();
+        sleeping = true;
+        wakeTime = -1;
+        logic.sleepScheduler.sleeping++;
+    }
+
+    /** Puts this entity to sleep right away, until {@link #noSleep()} is called or the specified amount of ticks has passed. */
+    public void sleepFor(float ticks){
+        if(sleeping) return;
+        if(BuildingScheduler.defer(self(), true, ticks)) return;
+        SaveJournal.changed(self());
+        remove();
+        sleeping = true;
+        sleepTime = 0f;
+        wakeTime = logic.sleepScheduler.schedule(self(), ticks);
+        logic.sleepScheduler.sleeping++;
+    }
+
+    /** Call when this entity has nothing to do until its inputs or outputs change. Sleeps for {@link Block#idleSleepInterval} if idle sleeping is enabled. */
+    public void idleSleep(){
+        if(block.idleSleepInterval > 0f && logic.sleepScheduler.enabled){
+            sleepFor(block.idleSleepInterval);
+        }
+    }
+
+    /**
+     * Called by the sleep scheduler when a timer ends.
+     * @return whether this entity was still sleeping on that timer, and was woken up.
+     */
+    public boolean timerWake(long time){
+        if(sleeping && wakeTime == time){
+            noSleep();
+            return !sleeping;
+        }
+        return false;
+    }
+
+    /** Reports changed items or liquids to incremental saves, if this building is not compared on every save because it is not updating. */
+    public void stateChanged(){
+        if(!block.update || sleeping) SaveJournal.changed(self());
+    }
+
+    /**
+     * Called by the power graph when the power satisfaction of this building rises from zero, possibly on another thread.
+     * An idle sleeping building is woken in the next update of the sleep scheduler.
+     */
+    public void powerRestored(){
+        if(sleeping && block.idleSleepInterval > 0f) logic.sleepScheduler.wakeLater(self());
+    }
+
+    /**
+     * Called by the building scheduler after its batches, for an item this building kept because {@link BuildingScheduler#deferTransfer(Building, Building, Item)}
+     * returned true during its update.
+     * @return whether the item was passed to the target
+     */
+    public boolean passDeferred(Building target, Item item){
+        return false;
+    }
+
     /** Call when this entity is updating. This wakes it up. */
     public void noSleep(){
         sleepTime = 0f;
         if(sleeping){
+            if(BuildingScheduler.defer(self(), false)) return;
             add();
             sleeping = false;
-            sleepingEntities--;
+            wakeTime = -1;
+            logic.sleepScheduler.sleeping--;
         }
     }
 
@@ -794,6 +862,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         amount = Math.min(amount, items.get(item));
         noSleep();
         items.remove(item, amount);
+        stateChanged();
         return amount;
     }
 
@@ -801,6 +870,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     public void handleStack(Item item, int amount, @Nullable Teamc source){
         noSleep();
         items.add(item, amount);
+        stateChanged();
     }
 
     /** Returns offset for stack placement. */
@@ -864,7 +934,10 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleItem(Building source, Item item){
+        //other sleeping blocks have always kept sleeping on input, and wake up through their own logic
+        if(block.idleSleepInterval > 0f) noSleep();
         items.add(item, 1);
+        stateChanged();
     }
 
     public boolean acceptItem(Building source, Item item){
@@ -876,7 +949,9 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleLiquid(Building source, Liquid liquid, float amount){
+        if(block.idleSleepInterval > 0f) noSleep();
         liquids.add(liquid, amount);
+        stateChanged();
     }
 
     //TODO entire liquid system is awful
@@ -1418,6 +1493,8 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
 
     /** Called when arbitrary configuration is applied to a tile. */
     public void configured(@Nullable Unit builder, @Nullable Object value){
+        SaveJournal.changed(self());
+
         //null is of type void.class; anonymous classes use their superclass.
         Class<?> type = value == null ? void.class : value.getClass().isAnonymousClass() ? value.getClass().getSuperclass() : value.getClass();
 
@@ -1806,31 +1883,27 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
 
         if(was) indexer.removeIndex(tile);
 
+        if(power != null && updatePower){
+            //leave the old graph while connections are still found through the old team, so only the buildings next to this one are searched for a split
+            power.graph.remove(self());
+        }
+
         this.team = next;
 
         if(power != null && updatePower){
-            var oldGraph = power.graph;
-            for(var other : proximity){
-                if(other != null && other.team != team && other.power != null && other.power.graph == oldGraph){
-                    new PowerGraph().reflow(other);
-                }
-            }
             for(int i = 0; i < power.links.size; i++){
                 var other = world.build(power.links.items[i]);
 
-                //only reflow links that were connected to the old power graph; ones that have a new one were already covered.
-                if(other != null && other.team != team && other.power != null && other.power.graph == oldGraph){
+                //links to the old team no longer conduct; buildings of the new team are merged below
+                if(other != null && other.team == last && other.power != null){
                     power.links.removeIndex(i);
                     other.power.links.removeValue(pos());
-
-                    new PowerGraph().reflow(other);
-
                     i --;
                 }
             }
-            new PowerGraph().reflow(self());
 
             updatePowerGraph();
+            power.graph.checkAdd();
         }
 
         if(was){
@@ -1863,6 +1936,13 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void removeFromProximity(){
+        //sleeping entities are not in any group, so they stop counting as sleeping here
+        if(sleeping){
+            sleeping = false;
+            wakeTime = -1;
+            logic.sleepScheduler.sleeping--;
+        }
+
         onProximityRemoved();
         tmpTiles.clear();
 
@@ -2093,6 +2173,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         }
 
         indexer.notifyHealthChanged(self());
+        SaveJournal.changed(self());
     }
 
     @Override
@@ -5,6 +5,7 @@ import arc.math.geom.*;
 import arc.util.*;
 import mindustry.*;
 import mindustry.ai.*;
+import mindustry.ai.Pathfinder.*;
 import mindustry.ai.types.*;
 import mindustry.async.*;
 import mindustry.entities.*;
@@ -32,6 +33,21 @@ public class AIController implements UnitController{
     protected @Nullable Teamc bomberTarget;
     protected boolean turningAway;
 
+    /** Targets selected by {@link #think()}, used by the update of the same frame if it retargets. */
+    protected @Nullable Teamc plannedTarget;
+    protected @Nullable Teamc[] plannedMountTargets;
+    /** {@link mindustry.core.GameState#updateId} of the frame the targets were planned in. */
+    protected long plannedFrame = -1;
+
+    /** Flow field lookup made by {@link #think()}, used by {@link #pathfind(int, boolean, boolean)} in the same frame if it is called with the same field. */
+    protected @Nullable Tile plannedPathFrom, plannedPathTile;
+    protected @Nullable Flowfield plannedPathField;
+    protected int plannedPathAvoidance;
+    protected long plannedPathFrame = -1;
+    /** Field type and avoidance of the last {@link #pathfind(int, boolean, boolean)} call, which {@link #think()} looks up again. */
+    protected int lastPathField = -1;
+    protected boolean lastPathAvoidance;
+
     {
         resetTimers();
     }
@@ -55,6 +71,71 @@ public class AIController implements UnitController{
         updateMovement();
     }
 
+    /**
+     * First phase of the unit update, see {@link UnitScheduler}. May be called on any thread.
+     * Runs the target search of {@link #updateWeapons()} and the flow field lookup of {@link #pathfind(int, boolean, boolean)} ahead of time,
+     * against the state of the world at the start of the frame. Must not modify anything outside of this controller.
+     * The timers are not reset here; the update still decides whether it retargets, and only uses the plan if it does.
+     */
+    public void think(){
+        if(useFallback()){
+            if(fallback != null && fallback.unit == unit) fallback.think();
+            return;
+        }
+
+        planPath();
+
+        if(unit.hasWeapons() && willRetarget()){
+            planTargets();
+        }
+    }
+
+    /** Searches the targets that {@link #updateWeapons()} would search for if it retargets in this frame. */
+    protected void planTargets(){
+        plannedFrame = state.updateId;
+        plannedTarget = findMainTarget(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
+
+        if(!unit.type.singleTarget){
+            var mounts = unit.mounts;
+            if(plannedMountTargets == null || plannedMountTargets.length != mounts.length){
+                plannedMountTargets = new Teamc[mounts.length];
+            }
+
+            float rotation = unit.rotation - 90;
+            for(int i = 0; i < mounts.length; i++){
+                Weapon weapon = mounts[i].weapon;
+                plannedMountTargets[i] = !weapon.controllable || weapon.noAttack || !weapon.aiControllable ? null :
+                    findTarget(unit.x + Angles.trnsx(rotation, weapon.x, weapon.y), unit.y + Angles.trnsy(rotation, weapon.x, weapon.y), weapon.range(), weapon.bullet.collidesAir, weapon.bullet.collidesGround);
+            }
+        }
+    }
+
+    /** Looks up the next tile of the flow field that was used by the last {@link #pathfind(int, boolean, boolean)} call. */
+    protected void planPath(){
+        if(lastPathField < 0) return;
+
+        Tile tile = unit.tileOn();
+        Flowfield field = pathfinder.getFieldOrNull(unit.team, unit.type.flowfieldPathType, lastPathField);
+        if(tile == null || field == null) return;
+
+        int avoidanceId = avoidanceId(lastPathAvoidance);
+        Tile next = pathfinder.peekTargetTile(tile, field, true, avoidanceId);
+        if(next == null) return;
+
+        plannedPathFrame = state.updateId;
+        plannedPathFrom = tile;
+        plannedPathTile = next;
+        plannedPathField = field;
+        plannedPathAvoidance = avoidanceId;
+    }
+
+    /** @return whether {@link #think()} planned targets for the current frame. The plan can only be used once. */
+    protected boolean usePlan(){
+        boolean planned = plannedFrame == state.updateId;
+        plannedFrame = -1;
+        return planned;
+    }
+
     public boolean hasStance(@Nullable UnitStance stance){
         if(unit.controller() instanceof CommandAI ai){
             return ai.hasStance(stance);
@@ -151,7 +232,15 @@ public class AIController implements UnitController{
 
         Tile tile = unit.tileOn();
         if(tile == null) return;
-        Tile targetTile = pathfinder.getField(unit.team, costType, pathTarget).getNextTile(tile, avoidance && unit.collisionLayer() == PhysicsProcess.layerGround ? unit.id : 0);
+
+        int avoidanceId = avoidanceId(avoidance);
+        Flowfield field = pathfinder.getField(unit.team, costType, pathTarget);
+        boolean planned = plannedPathFrame == state.updateId && plannedPathFrom == tile && plannedPathField == field && plannedPathAvoidance == avoidanceId;
+        Tile targetTile = planned ? pathfinder.confirmTargetTile(tile, field, avoidanceId, plannedPathTile) : field.getNextTile(tile, avoidanceId);
+
+        plannedPathFrame = -1;
+        lastPathField = pathTarget;
+        lastPathAvoidance = avoidance;
 
         if((tile == targetTile && stopAtTargetTile) || !unit.canPass(targetTile.x, targetTile.y)) return;
 
@@ -160,6 +249,10 @@ public class AIController implements UnitController{
         unit.movePref(vec.trns(unit.angleTo(targetTile.worldx(), targetTile.worldy()), prefSpeed()));
     }
 
+    protected int avoidanceId(boolean avoidance){
+        return avoidance && unit.collisionLayer() == PhysicsProcess.layerGround ? unit.id : 0;
+    }
+
     public Vec2 alterPathfind(Vec2 vec){
         return vec;
     }
@@ -171,10 +264,11 @@ public class AIController implements UnitController{
 
     public void updateWeapons(){
         float rotation = unit.rotation - 90;
+        boolean planned = usePlan();
         boolean ret = retarget();
 
         if(ret){
-            target = findMainTarget(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
+            target = planned ? plannedTarget : findMainTarget(unit.x, unit.y, unit.range(), unit.type.targetAir, unit.type.targetGround);
         }
 
         noTargetTime += Time.delta;
@@ -190,7 +284,8 @@ public class AIController implements UnitController{
 
         unit.isShooting = false;
 
-        for(var mount : unit.mounts){
+        for(int mountIndex = 0; mountIndex < unit.mounts.length; mountIndex++){
+            var mount = unit.mounts[mountIndex];
             Weapon weapon = mount.weapon;
             float wrange = weapon.range();
 
@@ -209,7 +304,7 @@ public class AIController implements UnitController{
                 mount.target = target;
             }else{
                 if(ret){
-                    mount.target = findTarget(mountX, mountY, wrange, weapon.bullet.collidesAir, weapon.bullet.collidesGround);
+                    mount.target = planned ? plannedMountTargets[mountIndex] : findTarget(mountX, mountY, wrange, weapon.bullet.collidesAir, weapon.bullet.collidesGround);
                 }
 
                 if(checkTarget(mount.target, mountX, mountY, wrange)){
@@ -283,7 +378,17 @@ public class AIController implements UnitController{
     }
 
     public boolean retarget(){
-        return timer.get(timerTarget, target == null ? 40 : 90);
+        return timer.get(timerTarget, retargetTime(target));
+    }
+
+    /** @return whether {@link #retarget()} would return true, without resetting its timer. */
+    public boolean willRetarget(){
+        return timer.check(timerTarget, retargetTime(target));
+    }
+
+    /** @return the amount of ticks between target searches with the specified current target. */
+    public float retargetTime(@Nullable Teamc target){
+        return target == null ? 40 : 90;
     }
 
     public Teamc findMainTarget(float x, float y, float range, boolean air, boolean ground){
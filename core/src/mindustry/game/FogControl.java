@@ -15,21 +15,29 @@ import mindustry.io.*;
 import mindustry.world.meta.*;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 
 import static mindustry.Vars.*;
 
 public final class FogControl implements CustomChunk{
     private static volatile int ww, wh;
     private static final int dynamicUpdateInterval = 1000 / 25; //25 FPS
-    private static final Object notifyStatic = new Object(), notifyDynamic = new Object();
+    /** Side length of a dynamic fog cell in tiles. Each cell row is exactly one word of the dynamic fog buffers. */
+    private static final int cellSize = 64;
+    private static final Object notifyStatic = new Object();
 
     /** indexed by team */
     private volatile @Nullable FogData[] fog;
 
     private final LongSeq staticEvents = new LongSeq();
     private final LongSeq dynamicEventQueue = new LongSeq(), unitEventQueue = new LongSeq();
-    /** access must be synchronized; accessed from both threads */
-    private final LongSeq dynamicEvents = new LongSeq(100);
+    /** latest dynamic events, handed from the main thread to the dynamic fog thread; replaced on every flush */
+    private final AtomicReference<long[]> dynamicEvents = new AtomicReference<>();
+    /** held while dynamic fog is drawn, so that a thread that is still stopping or a synchronous flush never draws at the same time */
+    private final Object dynamicLock = new Object();
 
     private @Nullable Thread staticFogThread;
     private @Nullable Thread dynamicFogThread;
@@ -119,7 +127,7 @@ public final class FogControl implements CustomChunk{
 
         var data = data(team);
         if(data == null) return false;
-        return data.read.get(Mathf.clamp(x, 0, ww - 1) + Mathf.clamp(y, 0, wh - 1) * ww);
+        return get(data.read, Mathf.clamp(x, 0, ww - 1), Mathf.clamp(y, 0, wh - 1));
     }
 
     public void resetFog(){
@@ -140,7 +148,7 @@ public final class FogControl implements CustomChunk{
             staticFogThread = null;
         }
 
-        dynamicEvents.clear();
+        dynamicEvents.set(null);
         if(dynamicFogThread != null){
             dynamicFogThread.interrupt();
             dynamicFogThread = null;
@@ -287,24 +295,18 @@ public final class FogControl implements CustomChunk{
         }
 
         if(dynamicEventQueue.size > 0){
-            //flush unit events over when something happens
-            synchronized(dynamicEvents){
-                dynamicEvents.clear();
-                dynamicEvents.addAll(dynamicEventQueue);
-            }
+            //flush unit events over when something happens; events the fog thread has not picked up yet are outdated
+            dynamicEvents.set(dynamicEventQueue.toArray());
             dynamicEventQueue.clear();
 
             //force update so visibility doesn't have a pop-in
             if(justLoaded){
-                updateDynamic(new Bits(256));
+                updateDynamic(new Seq<>(FogData.class), new Seq<>(Future.class));
                 justLoaded = false;
             }
 
             //notify that it's time for rendering
-            //TODO this WILL block until it is done rendering, which is inherently problematic.
-            synchronized(notifyDynamic){
-                notifyDynamic.notify();
-            }
+            LockSupport.unpark(dynamicFogThread);
         }
 
         //wake up, it's time to draw some circles
@@ -360,7 +362,9 @@ public final class FogControl implements CustomChunk{
     }
 
     class DynamicFogThread extends Thread{
-        final Bits cleared = new Bits();
+        //owned by this thread, since the next thread can start before this one has stopped
+        final Seq<FogData> teams = new Seq<>(FogData.class);
+        final Seq<Future<?>> futures = new Seq<>(Future.class);
 
         DynamicFogThread(){
             super("DynamicFogThread");
@@ -370,18 +374,15 @@ public final class FogControl implements CustomChunk{
         public void run(){
 
             while(true){
-                try{
-                    synchronized(notifyDynamic){
-                        try{
-                            //wait until an event happens
-                            notifyDynamic.wait();
-                        }catch(InterruptedException e){
-                            //end thread
-                            return;
-                        }
-                    }
+                //wait until an event happens; wakeups before this point are not lost
+                LockSupport.park(this);
+                if(Thread.interrupted()){
+                    //end thread
+                    return;
+                }
 
-                    updateDynamic(cleared);
+                try{
+                    updateDynamic(teams, futures);
 
                     //ignore, don't want to crash this thread
                 }catch(Exception e){
@@ -392,48 +393,119 @@ public final class FogControl implements CustomChunk{
         }
     }
 
-    void updateDynamic(Bits cleared){
-        cleared.clear();
+    /**
+     * Queues the fog sources of every team and draws them on the calling thread, regardless of the update interval.
+     * @param full if true, the dynamic fog is drawn from scratch instead of only around the sources that changed since the last pass.
+     */
+    public void flushDynamic(boolean full){
+        var fog = this.fog;
+        if(fog == null) return;
 
-        //ugly sync
-        synchronized(dynamicEvents){
-            int size = dynamicEvents.size;
+        dynamicEventQueue.clear();
+        for(var team : state.teams.present){
+            var data = fog[team.team.id];
+            if(team.team.isOnlyAI() || data == null) continue;
 
-            //draw step
-            for(int i = 0; i < size; i++){
-                long event = dynamicEvents.items[i];
-                int x = FogEvent.x(event), y = FogEvent.y(event), rad = FogEvent.radius(event), team = FogEvent.team(event);
+            data.dynamicUpdated = false;
+            data.lastDynamicMs = Time.millis();
 
-                if(rad <= 0) continue;
+            for(var build : indexer.getFlagged(team.team, BlockFlag.hasFogRadius)){
+                dynamicEventQueue.add(FogEvent.get(build.tile.x, build.tile.y, Mathf.round(build.fogRadius()), build.team.id));
+            }
+            for(var unit : team.units){
+                if(unit.type.fogRadius > 0f){
+                    dynamicEventQueue.add(FogEvent.get(unit.tileX(), unit.tileY(), (int)unit.type.fogRadius, team.team.id));
+                }
+            }
+        }
 
-                var data = fog[team];
-                if(data != null){
+        synchronized(dynamicLock){
+            //set while holding the lock, so the fog thread can not pick up these events first
+            dynamicEvents.set(dynamicEventQueue.toArray());
+            dynamicEventQueue.clear();
+
+            if(full){
+                for(var data : fog){
+                    if(data != null) data.sources = null;
+                }
+            }
+            updateDynamic(new Seq<>(FogData.class), new Seq<>(Future.class));
+        }
+    }
 
-                    //clear the buffer, since it is being re-drawn
-                    if(!cleared.get(team)){
-                        cleared.set(team);
+    /**
+     * Draws the latest dynamic events, if there are any. Teams are drawn in parallel, and only the cells around sources that changed are redrawn.
+     * The lists are scratch space of the calling thread.
+     */
+    void updateDynamic(Seq<FogData> dynamicTeams, Seq<Future<?>> dynamicFutures){
+        synchronized(dynamicLock){
+            drawDynamic(dynamicTeams, dynamicFutures);
+        }
+    }
 
-                        data.write.clear();
-                    }
+    private void drawDynamic(Seq<FogData> dynamicTeams, Seq<Future<?>> dynamicFutures){
+        long[] events = dynamicEvents.getAndSet(null);
+        var fog = this.fog;
+        if(events == null || fog == null) return;
+
+        //group events by team, sorted within each team so they can be compared with the previous pass
+        int[] offsets = new int[257];
+        for(long event : events){
+            if(FogEvent.radius(event) > 0) offsets[FogEvent.team(event) + 1] ++;
+        }
+        for(int i = 0; i < 256; i++){
+            offsets[i + 1] += offsets[i];
+        }
+
+        long[] sorted = new long[offsets[256]];
+        int[] positions = Arrays.copyOf(offsets, 256);
+        for(long event : events){
+            if(FogEvent.radius(event) > 0) sorted[positions[FogEvent.team(event)] ++] = event;
+        }
+
+        dynamicTeams.clear();
+        for(int team = 0; team < 256; team++){
+            var data = fog[team];
+            if(offsets[team] == offsets[team + 1] || data == null) continue;
 
-                    //radius is always +1 to keep up with visuals
-                    circle(data.write, x, y, rad + 1);
+            Arrays.sort(sorted, offsets[team], offsets[team + 1]);
+            data.pending = Arrays.copyOfRange(sorted, offsets[team], offsets[team + 1]);
+            dynamicTeams.add(data);
+        }
+
+        if(dynamicTeams.size == 1){
+            dynamicTeams.first().redraw();
+        }else if(dynamicTeams.size > 1){
+            dynamicFutures.clear();
+            for(var data : dynamicTeams){
+                dynamicFutures.add(mainExecutor.submit(data::redraw));
+            }
+
+            for(var future : dynamicFutures){
+                try{
+                    future.get();
+                }catch(InterruptedException e){
+                    //the fog thread is being stopped; keep the flag so it exits
+                    Thread.currentThread().interrupt();
+                    dynamicTeams.clear();
+                    return;
+                }catch(ExecutionException e){
+                    throw new RuntimeException(e);
                 }
             }
-            dynamicEvents.clear();
+            dynamicFutures.clear();
         }
 
         //swap step, no need for synchronization or anything
-        for(int i = 0; i < 256; i++){
-            if(cleared.get(i)){
-                var data = fog[i];
-
+        for(var data : dynamicTeams){
+            if(data.drawn){
                 //swap buffers, flushing the data that was just drawn
-                Bits temp = data.read;
+                long[] temp = data.read;
                 data.read = data.write;
                 data.write = temp;
             }
         }
+        dynamicTeams.clear();
     }
 
     @Override
@@ -557,9 +629,75 @@ public final class FogControl implements CustomChunk{
         arr.set(off + x1, off + x2);
     }
 
+    /** @return whether a tile is set in a dynamic fog buffer. */
+    static boolean get(long[] words, int x, int y){
+        return (words[y * stride() + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    /** @return amount of words in one row of a dynamic fog buffer. */
+    static int stride(){
+        return (ww + 63) >>> 6;
+    }
+
+    /**
+     * Sets the same tiles as {@link #circle(Bits, int, int, int)} in a dynamic fog buffer, one word-level run per row.
+     * @param widths scratch array, at least radius + 1 long
+     * @param cells if not null, only cells with a true entry are written
+     */
+    static void circle(long[] words, int x, int y, int radius, int[] widths, @Nullable boolean[] cells){
+        int f = 1 - radius;
+        int ddFx = 1, ddFy = -2 * radius;
+        int px = 0, py = radius;
+
+        //half width of the row at each vertical distance from the center
+        Arrays.fill(widths, 0, radius + 1, -1);
+        widths[radius] = 0;
+        widths[0] = radius;
+
+        while(px < py){
+            if(f >= 0){
+                py--;
+                ddFy += 2;
+                f += ddFy;
+            }
+            px++;
+            ddFx += 2;
+            f += ddFx;
+            widths[py] = Math.max(widths[py], px);
+            widths[px] = Math.max(widths[px], py);
+        }
+
+        for(int d = 0; d <= radius; d++){
+            int w = widths[d];
+            if(w < 0) continue;
+
+            span(words, x - w, x + w, y + d, cells);
+            if(d != 0) span(words, x - w, x + w, y - d, cells);
+        }
+    }
+
+    static void span(long[] words, int x1, int x2, int y, @Nullable boolean[] cells){
+        if(y < 0 || y >= wh) return;
+        if(x1 < 0) x1 = 0;
+        if(x2 >= ww) x2 = ww - 1;
+        if(x1 > x2) return;
+
+        int stride = stride(), row = y * stride, cellRow = (y / cellSize) * stride;
+        int first = x1 >>> 6, last = x2 >>> 6;
+
+        for(int w = first; w <= last; w++){
+            if(cells != null && !cells[cellRow + w]) continue;
+
+            long mask = -1L;
+            if(w == first) mask &= -1L << (x1 & 63);
+            if(w == last) mask &= -1L >>> (63 - (x2 & 63));
+            words[row + w] |= mask;
+        }
+    }
+
     static class FogData{
-        /** dynamic double-buffered data for dynamic (live) coverage */
-        volatile Bits read, write;
+        /** dynamic double-buffered data for dynamic (live) coverage, one row of words per map row */
+        volatile long[] read, write;
         /** static map exploration fog*/
         final Bits staticData;
 
@@ -568,13 +706,116 @@ public final class FogControl implements CustomChunk{
         /** if true, a dynamic fog update must be scheduled. */
         boolean dynamicUpdated = true;
 
+        /** dynamic events of the last drawn pass and the one being drawn, sorted; null if nothing was drawn yet */
+        @Nullable long[] sources, pending;
+        /** whether the last redraw changed the write buffer */
+        boolean drawn;
+        /** cells that must be redrawn, in the same layout as one word per cell row */
+        final boolean[] cells;
+        final int cellsX, cellsY;
+        int[] widths = new int[64];
+
         FogData(){
             int len = ww * wh;
 
-            read = new Bits(len);
-            write = new Bits(len);
+            cellsX = stride();
+            cellsY = (wh + cellSize - 1) / cellSize;
+            read = new long[cellsX * wh];
+            write = new long[cellsX * wh];
+            cells = new boolean[cellsX * cellsY];
             staticData = new Bits(len);
         }
+
+        /** Draws {@link #pending} into the write buffer. Only the cells around sources that were added or removed since the last pass are redrawn. */
+        void redraw(){
+            long[] events = pending, last = sources;
+            pending = null;
+            drawn = false;
+
+            if(last == null){
+                Arrays.fill(write, 0L);
+                for(long event : events){
+                    draw(event, null);
+                }
+            }else{
+                Arrays.fill(cells, false);
+
+                //sources that moved or changed radius mark both their old and new area
+                boolean changed = false;
+                int i = 0, j = 0;
+                while(i < last.length || j < events.length){
+                    if(i < last.length && j < events.length && last[i] == events[j]){
+                        i ++;
+                        j ++;
+                    }else if(j >= events.length || (i < last.length && last[i] < events[j])){
+                        changed |= mark(last[i ++]);
+                    }else{
+                        changed |= mark(events[j ++]);
+                    }
+                }
+
+                if(!changed){
+                    sources = events;
+                    return;
+                }
+
+                long[] write = this.write;
+                System.arraycopy(read, 0, write, 0, write.length);
+                for(int cy = 0; cy < cellsY; cy++){
+                    for(int cx = 0; cx < cellsX; cx++){
+                        if(!cells[cx + cy * cellsX]) continue;
+
+                        for(int y = cy * cellSize, max = Math.min(y + cellSize, wh); y < max; y++){
+                            write[cx + y * cellsX] = 0L;
+                        }
+                    }
+                }
+
+                for(long event : events){
+                    if(touches(event)) draw(event, cells);
+                }
+            }
+
+            sources = events;
+            drawn = true;
+        }
+
+        void draw(long event, @Nullable boolean[] cells){
+            //radius is always +1 to keep up with visuals
+            int radius = FogEvent.radius(event) + 1;
+            if(widths.length <= radius) widths = new int[radius + 1];
+            circle(write, FogEvent.x(event), FogEvent.y(event), radius, widths, cells);
+        }
+
+        /** Marks all cells that the event's circle overlaps. @return whether any cell is on the map. */
+        boolean mark(long event){
+            int x = FogEvent.x(event), y = FogEvent.y(event), radius = FogEvent.radius(event) + 1;
+            int minx = Math.max(x - radius, 0) / cellSize, maxx = Math.min(x + radius, ww - 1) / cellSize;
+            int miny = Math.max(y - radius, 0) / cellSize, maxy = Math.min(y + radius, wh - 1) / cellSize;
+            boolean any = false;
+
+            for(int cy = miny; cy <= maxy; cy++){
+                for(int cx = minx; cx <= maxx; cx++){
+                    cells[cx + cy * cellsX] = true;
+                    any = true;
+                }
+            }
+            return any;
+        }
+
+        /** @return whether the event's circle overlaps any marked cell. */
+        boolean touches(long event){
+            int x = FogEvent.x(event), y = FogEvent.y(event), radius = FogEvent.radius(event) + 1;
+            int minx = Math.max(x - radius, 0) / cellSize, maxx = Math.min(x + radius, ww - 1) / cellSize;
+            int miny = Math.max(y - radius, 0) / cellSize, maxy = Math.min(y + radius, wh - 1) / cellSize;
+
+            for(int cy = miny; cy <= maxy; cy++){
+                for(int cx = minx; cx <= maxx; cx++){
+                    if(cells[cx + cy * cellsX]) return true;
+                }
+            }
+            return false;
+        }
     }
 
     @Struct
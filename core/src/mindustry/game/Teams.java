@@ -107,6 +107,12 @@ public class Teams{
         return map[team.id];
     }
 
+    /** @return the building tree of a team, or null if it has none. Unlike {@link Team#data()}, this never creates team data, so it can be called from any thread. */
+    public @Nullable QuadTree<Building> buildingTree(Team team){
+        var data = map[team.id];
+        return data == null ? null : data.buildingTree;
+    }
+
     public Seq<CoreBuild> playerCores(){
         return get(state.rules.defaultTeam).cores;
     }
@@ -57,6 +57,7 @@ public class MapIO{
             SaveIO.write(file, new SaveOptions(){{
                 extraTags = map.tags;
                 embedAssets = embed;
+                mapRegions = false;
             }});
         }catch(Exception e){
             throw new IOException(e);
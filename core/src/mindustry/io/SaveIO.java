@@ -11,6 +11,8 @@ import mindustry.io.versions.*;
 import mindustry.world.*;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.zip.*;
 
@@ -20,7 +22,7 @@ public class SaveIO{
     /** Save format header. */
     public static final byte[] header = {'M', 'S', 'A', 'V'};
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7(), new Save8(), new Save9(), new Save10(), new Save11(), new Save12(), new Save13());
+    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7(), new Save8(), new Save9(), new Save10(), new Save11(), new Save12(), new Save13(), new Save14(), new Save15());
 
     static{
         for(SaveVersion version : versionArray){
@@ -28,10 +30,21 @@ public class SaveIO{
         }
     }
 
+    /**
+     * Newest version whose map section is not compressed region by region. Used for data that is already compressed as a whole,
+     * such as world data sent to clients, map files and saves without a journal, where deflating every region again only costs time.
+     */
+    public static final int streamVersion = 13;
+
     public static SaveVersion getSaveWriter(){
         return versionArray.peek();
     }
 
+    /** @return the writer for {@link #streamVersion}. World data must be read with the same writer. */
+    public static SaveVersion getStreamWriter(){
+        return versions.get(streamVersion);
+    }
+
     public static @Nullable SaveVersion getSaveWriter(int version){
         return versions.get(version);
     }
@@ -126,7 +139,7 @@ public class SaveIO{
     public static void write(OutputStream os, SaveOptions options){
         try(DataOutputStream stream = new DataOutputStream(os)){
             Events.fire(new SaveWriteEvent());
-            SaveVersion ver = getVersion();
+            SaveVersion ver = options.mapRegions || options.journal != null ? getVersion() : getStreamWriter();
 
             stream.write(header);
             stream.writeInt(ver.version);
@@ -136,6 +149,45 @@ public class SaveIO{
         }
     }
 
+    /**
+     * Writes an uncompressed copy of the current game state into a buffer. This is the only part of saving that needs to happen on the main thread;
+     * the result can then be compressed and written to disk from any thread with {@link #writeCaptured(Fi, ReusableByteOutStream)}.
+     */
+    public static void capture(ReusableByteOutStream out, SaveOptions options){
+        out.reset();
+        write(out, options);
+    }
+
+    /**
+     * Compresses a save captured with {@link #capture(ReusableByteOutStream, SaveOptions)} into a temporary file, syncs it to disk,
+     * then moves it over the target file. Like {@link #save(Fi, SaveOptions)}, the old file is kept as its {@link #backupFileFor(Fi) backup}.
+     * Either the target or its backup is a complete save, even if the process dies midway.
+     * The buffer must not be modified until this method returns.
+     */
+    public static void writeCaptured(Fi file, ReusableByteOutStream data) throws IOException{
+        //prefixed, so it is never mistaken for a save that starts with the same name
+        Fi temp = file.sibling("." + file.name() + ".tmp");
+
+        try(OutputStream out = new FastDeflaterOutputStream(temp.write(false, bufferSize))){
+            out.write(data.getBytes(), 0, data.size());
+        }
+
+        try(FileChannel channel = FileChannel.open(temp.file().toPath(), StandardOpenOption.WRITE)){
+            channel.force(true);
+        }
+
+        if(file.exists()){
+            move(file, backupFileFor(file));
+        }
+        move(temp, file);
+    }
+
+    private static void move(Fi from, Fi to) throws IOException{
+        var source = from.file().toPath();
+        //arc.Files shadows java.nio.file.Files in this class
+        source.getFileSystem().provider().move(source, to.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     public static void load(String saveName) throws SaveException{
         load(saveDirectory.child(saveName + ".msav"));
     }
@@ -147,12 +199,12 @@ public class SaveIO{
     public static void load(Fi file, WorldContext context) throws SaveException{
         try{
             //try and load; if any exception at all occurs
-            load(new InflaterInputStream(file.read(bufferSize)), context);
+            load(new InflaterInputStream(file.read(bufferSize)), context, file);
         }catch(SaveException e){
             Log.err(e);
             Fi backup = file.sibling(file.name() + "-backup." + file.extension());
             if(backup.exists()){
-                load(new InflaterInputStream(backup.read(bufferSize)), context);
+                load(new InflaterInputStream(backup.read(bufferSize)), context, backup);
             }else{
                 throw new SaveException(e.getCause());
             }
@@ -161,6 +213,14 @@ public class SaveIO{
 
     /** Loads from a deflated (!) input stream. */
     public static void load(InputStream is, WorldContext context) throws SaveException{
+        load(is, context, null);
+    }
+
+    /**
+     * Loads from a deflated (!) input stream.
+     * @param file the file that the stream reads, if any. Incremental saves look for their base next to it.
+     */
+    public static void load(InputStream is, WorldContext context, @Nullable Fi file) throws SaveException{
         try(CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
             logic.reset();
             readHeader(stream);
@@ -169,7 +229,9 @@ public class SaveIO{
 
             if(ver == null) throw new IOException("Unknown save version: " + version + ". Are you trying to load a save from a newer version?");
 
-            ver.read(stream, counter, new SaveReadState(context));
+            SaveReadState readState = new SaveReadState(context);
+            readState.file = file;
+            ver.read(stream, counter, readState);
             Events.fire(new SaveLoadEvent(context.isMap()));
         }catch(Throwable e){
             throw new SaveException(e);
@@ -0,0 +1,155 @@
+package mindustry.io;
+
+import arc.*;
+import arc.files.*;
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.io.versions.*;
+import mindustry.world.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Tracks which map regions changed since the last full save, so that later saves only store the regions that differ from it.
+ * <p>
+ * Pass the journal in {@link SaveOptions#journal} after calling {@link #begin(Fi)}. Every {@link #compactInterval}th save, or when the world
+ * was resized or reloaded, a full save is written and becomes the new base. Every other save is incremental: its map section only contains
+ * regions that were marked as changed, and whose serialized data differs from the base.
+ * <p>
+ * A region is marked when a tile, floor or overlay changes in it, when it contains a building that is updating at the time of the save,
+ * or when a building in it reports a change through {@link #changed(Building)}: buildings do so when they are damaged, healed or configured,
+ * when they receive or lose items or liquids without updating, and right before they go to sleep. Tile data changes outside of a tile change
+ * must be reported through {@link #changed(Tile)}; {@link Tile#setPackedData(long)} does so.
+ * <p>
+ * Entities, team data and all other sections are always written in full.
+ * Incremental saves can only be loaded while their base file exists next to them, or in {@link mindustry.Vars#saveDirectory} if they are not read from a file.
+ */
+public class SaveJournal{
+    /** Meta tag of incremental saves that names the file of their base save. */
+    public static final String baseTag = "incrementalBase";
+
+    /** Journals that have a base save and track changes. There is usually at most one. */
+    private static final Seq<SaveJournal> tracking = new Seq<>(false, 2, SaveJournal.class);
+
+    /** Amount of incremental saves written between two full saves. */
+    public int compactInterval = 10;
+
+    /** Base of the next incremental save, or null if the next save must be a full one. */
+    public @Nullable Fi base;
+    /** Whether the current save is a full one. Set by {@link #begin(Fi)}. */
+    public boolean full = true;
+
+    /** Random ID shared by the base save and its incremental saves. */
+    public long baseId;
+    /** Map size of the base save, and amount of incremental saves written since. */
+    public int width, height, deltas;
+    /** CRC32 of the uncompressed data of each region in the base save. */
+    public long[] checksums;
+    /** Regions that changed since the base save was written. */
+    public boolean[] dirty;
+
+    private @Nullable Fi target;
+
+    static{
+        //registered once for all journals, so creating one does not leak listeners
+        Events.on(TileChangeEvent.class, e -> changed(e.tile));
+        Events.on(TileFloorChangeEvent.class, e -> changed(e.tile));
+        Events.on(TileOverlayChangeEvent.class, e -> changed(e.tile));
+        Events.on(WorldLoadEvent.class, e -> {
+            while(tracking.size > 0){
+                tracking.peek().reset();
+            }
+        });
+    }
+
+    /** Prepares the next save to the specified file, and decides whether it is a full one. */
+    public void begin(Fi file){
+        target = file;
+        full = base == null || checksums == null || deltas >= compactInterval || width != world.width() || height != world.height();
+    }
+
+    /** @return save options for the current save, with the base tag set for incremental saves. */
+    public SaveOptions options(){
+        SaveOptions options = new SaveOptions();
+        options.journal = this;
+        if(!full){
+            options.extraTags = StringMap.of(baseTag, base.name());
+        }
+        return options;
+    }
+
+    /** Forces the next save to be a full one. Must be called when the last full save could not be written. */
+    public void reset(){
+        tracking.remove(this, true);
+        base = null;
+        checksums = null;
+        dirty = null;
+        deltas = 0;
+    }
+
+    /** Called by the save writer after a full save was serialized. */
+    public void rebase(long id, int width, int height, long[] checksums){
+        base = target;
+        baseId = id;
+        this.width = width;
+        this.height = height;
+        this.checksums = checksums;
+        dirty = new boolean[checksums.length];
+        deltas = 0;
+        if(!tracking.contains(this, true)) tracking.add(this);
+    }
+
+    /** @return whether any journal tracks changes. Callers that have to collect changed buildings first can skip that if not. */
+    public static boolean isTracking(){
+        return tracking.size > 0;
+    }
+
+    /** Reports a building whose saved state changed while it may not be updating. Must be called on the main thread. */
+    public static void changed(Building build){
+        for(int i = 0; i < tracking.size; i++){
+            tracking.items[i].mark(build);
+        }
+    }
+
+    /** Reports a tile whose data changed without a tile, floor or overlay change event. Must be called on the main thread. */
+    public static void changed(Tile tile){
+        for(int i = 0; i < tracking.size; i++){
+            tracking.items[i].mark(tile);
+        }
+    }
+
+    /** Marks every region that the building covers. */
+    public void mark(Building build){
+        int offset = build.block.sizeOffset, size = build.block.size;
+        markArea(build.tile.x + offset, build.tile.y + offset, build.tile.x + offset + size - 1, build.tile.y + offset + size - 1);
+    }
+
+    void mark(Tile tile){
+        if(tile == null) return;
+
+        //multiblocks only fire events for their center, so neighbouring regions may be affected as well
+        int pad = maxBlockSize / 2;
+        markArea(tile.x - pad, tile.y - pad, tile.x + pad, tile.y + pad);
+    }
+
+    /** Marks all regions that overlap the inclusive tile rectangle. */
+    void markArea(int minx, int miny, int maxx, int maxy){
+        if(dirty == null) return;
+
+        int size = Save14.regionSize, regionsX = Math.max(Mathf.ceil(width / (float)size), 1);
+        minx = Math.max(minx, 0);
+        miny = Math.max(miny, 0);
+        maxx = Math.min(maxx, width - 1);
+        maxy = Math.min(maxy, height - 1);
+        if(minx > maxx || miny > maxy) return;
+
+        for(int y = miny / size; y <= maxy / size; y++){
+            for(int x = minx / size; x <= maxx / size; x++){
+                dirty[x + y * regionsX] = true;
+            }
+        }
+    }
+}
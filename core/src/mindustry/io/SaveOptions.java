@@ -6,4 +6,11 @@ import arc.util.*;
 public class SaveOptions{
     public boolean embedAssets;
     public @Nullable StringMap extraTags;
+    /** If set, only map regions that changed since the journal's base save are written. */
+    public @Nullable SaveJournal journal;
+    /**
+     * If false, and there is no journal, the map is written with {@link SaveIO#streamVersion} instead of in separately compressed regions.
+     * Off by default: save files are deflated as a whole, so compressing every region again costs more time than parallel inflation saves, until measured otherwise.
+     */
+    public boolean mapRegions = false;
 }
@@ -1,11 +1,14 @@
 package mindustry.io;
 
+import arc.files.*;
 import arc.util.*;
 import mindustry.world.*;
 
 public class SaveReadState{
     public final WorldContext context;
     public @Nullable String ruleString;
+    /** File the save is read from, or null if it is read from a stream. Incremental saves look for their base next to it. */
+    public @Nullable Fi file;
 
     public SaveReadState(WorldContext context){
         this.context = context;
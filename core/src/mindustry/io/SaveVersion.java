@@ -238,44 +238,15 @@ public abstract class SaveVersion extends SaveFileReader{
         //blocks
         for(int i = 0; i < world.width() * world.height(); i++){
             Tile tile = world.tiles.geti(i);
-            stream.writeShort(tile.blockID());
 
-            boolean savedata = tile.shouldSaveData();
-
-            //in the old version, the second bit was set to indicate presence of data, but that approach was flawed - it didn't allow buildings + data on the same tile
-            //so now the third bit is used instead
-            byte packed = (byte)((tile.build != null ? 1 : 0) | (savedata ? 4 : 0));
-
-            //make note of whether there was an entity or custom tile data here
-            stream.writeByte(packed);
-
-            if(savedata){
-                //the new 'extra data' format writes 7 bytes of data instead of 1
-                stream.writeByte(tile.data);
-                stream.writeByte(tile.floorData);
-                stream.writeByte(tile.overlayData);
-                stream.writeInt(tile.extraData);
-            }
-
-            //only write the entity for multiblocks once - in the center
-            if(tile.build != null){
-                if(tile.isCenter()){
-                    stream.writeBoolean(true);
-                    writeChunk(stream, out -> {
-                        out.b(tile.build.version());
-                        tile.build.writeAll(out);
-                    });
-                }else{
-                    stream.writeBoolean(false);
-                }
-            }else if(!savedata){ //don't write consecutive blocks when there is custom data
+            if(writeBlock(stream, tile)){
                 //write consecutive non-entity blocks
                 int consecutives = 0;
 
                 for(int j = i + 1; j < world.width() * world.height() && consecutives < 255; j++){
                     Tile nextTile = world.rawTile(j % world.width(), j / world.width());
 
-                    if(nextTile.blockID() != tile.blockID() || savedata != nextTile.shouldSaveData()){
+                    if(nextTile.blockID() != tile.blockID() || nextTile.shouldSaveData()){
                         break;
                     }
 
@@ -288,6 +259,48 @@ public abstract class SaveVersion extends SaveFileReader{
         }
     }
 
+    /**
+     * Writes the block, tile data and building of a single tile.
+     * @return whether the amount of following tiles with the same block must be written next.
+     */
+    protected boolean writeBlock(DataOutput stream, Tile tile) throws IOException{
+        stream.writeShort(tile.blockID());
+
+        boolean savedata = tile.shouldSaveData();
+
+        //in the old version, the second bit was set to indicate presence of data, but that approach was flawed - it didn't allow buildings + data on the same tile
+        //so now the third bit is used instead
+        byte packed = (byte)((tile.build != null ? 1 : 0) | (savedata ? 4 : 0));
+
+        //make note of whether there was an entity or custom tile data here
+        stream.writeByte(packed);
+
+        if(savedata){
+            //the new 'extra data' format writes 7 bytes of data instead of 1
+            stream.writeByte(tile.data);
+            stream.writeByte(tile.floorData);
+            stream.writeByte(tile.overlayData);
+            stream.writeInt(tile.extraData);
+        }
+
+        //only write the entity for multiblocks once - in the center
+        if(tile.build != null){
+            if(tile.isCenter()){
+                stream.writeBoolean(true);
+                writeChunk(stream, out -> {
+                    out.b(tile.build.version());
+                    tile.build.writeAll(out);
+                });
+            }else{
+                stream.writeBoolean(false);
+            }
+            return false;
+        }
+
+        //don't write consecutive blocks when there is custom data
+        return !savedata;
+    }
+
     public void readMap(DataInput stream, WorldContext context) throws IOException{
         int width = stream.readUnsignedShort();
         int height = stream.readUnsignedShort();
@@ -319,75 +332,84 @@ public abstract class SaveVersion extends SaveFileReader{
 
             //read blocks
             for(int i = 0; i < width * height; i++){
-                Block block = content.block(stream.readShort());
                 Tile tile = context.tile(i);
-                if(block == null) block = Blocks.air;
-                boolean isCenter = true;
-                byte packedCheck = stream.readByte();
-                boolean hadEntity = (packedCheck & 1) != 0;
-                //data check (bit 3): 7 bytes (3x block-specific bytes + 1x 4-byte extra data int)
-                boolean hadData = (packedCheck & 4) != 0;
-
-                byte data = 0, floorData = 0, overlayData = 0;
-                int extraData = 0;
-
-                if(hadData){
-                    data = stream.readByte();
-                    floorData = stream.readByte();
-                    overlayData = stream.readByte();
-                    extraData = stream.readInt();
-                }
+                int consecutives = readBlock(stream, tile, context);
 
-                if(hadEntity){
-                    isCenter = stream.readBoolean();
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    context.tile(j).setBlock(tile.block());
                 }
 
-                //set block only if this is the center; otherwise, it's handled elsewhere
-                if(isCenter){
-                    tile.setBlock(block);
-                    if(tile.build != null) tile.build.enabled = true;
-                }
+                i += consecutives;
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
 
-                //must be assigned after setBlock, because that can reset data
-                if(hadData){
-                    tile.data = data;
-                    tile.floorData = floorData;
-                    tile.overlayData = overlayData;
-                    tile.extraData = extraData;
-                    context.onReadTileData();
-                }
+    /**
+     * Reads a tile written with {@link #writeBlock(DataOutput, Tile)} and applies it.
+     * @return the amount of following tiles that have the same block, which the caller has to set.
+     */
+    protected int readBlock(DataInput stream, Tile tile, WorldContext context) throws IOException{
+        Block block = content.block(stream.readShort());
+        if(block == null) block = Blocks.air;
+        boolean isCenter = true;
+        byte packedCheck = stream.readByte();
+        boolean hadEntity = (packedCheck & 1) != 0;
+        //data check (bit 3): 7 bytes (3x block-specific bytes + 1x 4-byte extra data int)
+        boolean hadData = (packedCheck & 4) != 0;
+
+        byte data = 0, floorData = 0, overlayData = 0;
+        int extraData = 0;
+
+        if(hadData){
+            data = stream.readByte();
+            floorData = stream.readByte();
+            overlayData = stream.readByte();
+            extraData = stream.readInt();
+        }
 
-                if(hadEntity){
-                    if(isCenter){ //only read entity for center blocks
-                        if(block.hasBuilding()){
-                            try{
-                                readChunkReads(stream, (in, len) -> {
-                                    byte revision = in.b();
-                                    tile.build.readAll(in, revision);
-                                });
-                            }catch(Throwable e){
-                                throw new IOException("Failed to read tile entity of block: " + block, e);
-                            }
-                        }else{
-                            //skip the entity region, as the entity and its IO code are now gone
-                            skipChunk(stream);
-                        }
-
-                        context.onReadBuilding();
-                    }
-                }else if(!hadData){ //never read consecutive blocks if there's data
-                    int consecutives = stream.readUnsignedByte();
+        if(hadEntity){
+            isCenter = stream.readBoolean();
+        }
 
-                    for(int j = i + 1; j < i + 1 + consecutives; j++){
-                        context.tile(j).setBlock(block);
-                    }
+        //set block only if this is the center; otherwise, it's handled elsewhere
+        if(isCenter){
+            tile.setBlock(block);
+            if(tile.build != null) tile.build.enabled = true;
+        }
 
-                    i += consecutives;
+        //must be assigned after setBlock, because that can reset data
+        if(hadData){
+            tile.data = data;
+            tile.floorData = floorData;
+            tile.overlayData = overlayData;
+            tile.extraData = extraData;
+            context.onReadTileData();
+        }
+
+        if(hadEntity){
+            if(isCenter){ //only read entity for center blocks
+                if(block.hasBuilding()){
+                    try{
+                        readChunkReads(stream, (in, len) -> {
+                            byte revision = in.b();
+                            tile.build.readAll(in, revision);
+                        });
+                    }catch(Throwable e){
+                        throw new IOException("Failed to read tile entity of block: " + block, e);
+                    }
+                }else{
+                    //skip the entity region, as the entity and its IO code are now gone
+                    skipChunk(stream);
                 }
+
+                context.onReadBuilding();
             }
-        }finally{
-            if(!generating) context.end();
+        }else if(!hadData){ //never read consecutive blocks if there's data
+            return stream.readUnsignedByte();
         }
+        return 0;
     }
 
     public void writeTeamBlocks(DataOutput stream) throws IOException{
@@ -0,0 +1,320 @@
+package mindustry.io.versions;
+
+import arc.math.*;
+import arc.util.*;
+import mindustry.content.*;
+import mindustry.io.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Splits map data into square regions of {@link #regionSize} tiles. Each region is deflated on its own and listed in an index,
+ * so regions are compressed and inflated in parallel, and floors are created in parallel if the world context allows it.
+ * Blocks and buildings are still written and read serially, in the same row-major order as before, so building creation order does not change.
+ */
+public class Save14 extends SaveVersion{
+    /** Side length of a map region in tiles. */
+    public static final int regionSize = 64;
+
+    public Save14(){
+        this(14);
+    }
+
+    protected Save14(int version){
+        super(version);
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        Regions regions = new Regions(world.width(), world.height(), regionSize);
+        byte[][] raw = serializeRegions(regions, null);
+        writeRegions(stream, regions, raw, compressRegions(raw));
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int size = stream.readUnsignedShort();
+        Regions regions = new Regions(width, height, size);
+
+        int[] lengths = new int[regions.count];
+        byte[][] compressed = new byte[regions.count][];
+        for(int r = 0; r < regions.count; r++){
+            lengths[r] = stream.readInt();
+            compressed[r] = new byte[stream.readInt()];
+        }
+        for(int r = 0; r < regions.count; r++){
+            stream.readFully(compressed[r]);
+        }
+
+        readRegions(context, regions, lengths, compressed);
+    }
+
+    /**
+     * Serializes floors and blocks of every region.
+     * @param include if not null, only regions with a true entry are serialized, and the others are left null.
+     * @return uncompressed data of each region.
+     */
+    byte[][] serializeRegions(Regions regions, @Nullable boolean[] include) throws IOException{
+        int width = regions.width, height = regions.height;
+
+        ByteArrayOutputStream[] floors = new ByteArrayOutputStream[regions.count], blocks = new ByteArrayOutputStream[regions.count];
+        DataOutputStream[] blockStreams = new DataOutputStream[regions.count];
+        for(int r = 0; r < regions.count; r++){
+            if(include != null && !include[r]) continue;
+
+            floors[r] = new ByteArrayOutputStream();
+            blocks[r] = new ByteArrayOutputStream();
+            blockStreams[r] = new DataOutputStream(blocks[r]);
+        }
+
+        //floors only read tiles, so all regions are written at once
+        parallel(regions.count, r -> {
+            if(floors[r] != null) writeFloors(new DataOutputStream(floors[r]), regions, r);
+        });
+
+        //buildings are written serially, in the same order as a row-major map
+        int[] skip = new int[regions.count];
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                int r = regions.of(x, y);
+                if(blockStreams[r] == null) continue;
+                if(skip[r] > 0){
+                    skip[r] --;
+                    continue;
+                }
+
+                Tile tile = world.rawTile(x, y);
+                if(writeBlock(blockStreams[r], tile)){
+                    int consecutives = 0;
+                    for(int k = regions.local(r, x, y) + 1; k < regions.size(r) && consecutives < 255; k++){
+                        Tile next = regions.tile(r, k);
+                        if(next.blockID() != tile.blockID() || next.shouldSaveData()) break;
+                        consecutives ++;
+                    }
+
+                    blockStreams[r].writeByte(consecutives);
+                    skip[r] = consecutives;
+                }
+            }
+        }
+
+        byte[][] raw = new byte[regions.count][];
+        for(int r = 0; r < regions.count; r++){
+            if(floors[r] == null) continue;
+
+            blocks[r].writeTo(floors[r]);
+            raw[r] = floors[r].toByteArray();
+        }
+        return raw;
+    }
+
+    /** @return each region deflated on its own; null entries stay null. */
+    static byte[][] compressRegions(byte[][] raw) throws IOException{
+        byte[][] compressed = new byte[raw.length][];
+        parallel(raw.length, r -> {
+            if(raw[r] != null) compressed[r] = deflate(raw[r]);
+        });
+        return compressed;
+    }
+
+    /** Writes the map header, the region index and all region data. */
+    static void writeRegions(DataOutput stream, Regions regions, byte[][] raw, byte[][] compressed) throws IOException{
+        stream.writeShort(regions.width);
+        stream.writeShort(regions.height);
+        stream.writeShort(regions.size);
+        for(int r = 0; r < regions.count; r++){
+            stream.writeInt(raw[r].length);
+            stream.writeInt(compressed[r].length);
+        }
+        for(int r = 0; r < regions.count; r++){
+            stream.write(compressed[r]);
+        }
+    }
+
+    /** Resizes the world and creates all tiles from the compressed region data. */
+    void readRegions(WorldContext context, Regions regions, int[] lengths, byte[][] compressed) throws IOException{
+        int width = regions.width, height = regions.height;
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            DataInputStream[] inputs = new DataInputStream[regions.count];
+            parallel(regions.count, r -> inputs[r] = new DataInputStream(new ByteArrayInputStream(inflate(compressed[r], lengths[r]))));
+
+            if(context.concurrentCreate()){
+                parallel(regions.count, r -> readFloors(inputs[r], context, regions, r));
+            }else{
+                for(int r = 0; r < regions.count; r++){
+                    readFloors(inputs[r], context, regions, r);
+                }
+            }
+
+            //blocks are read in row-major order, so buildings are created in the same order as they were in the world
+            int[] pending = new int[regions.count];
+            Block[] runs = new Block[regions.count];
+            for(int y = 0; y < height; y++){
+                for(int x = 0; x < width; x++){
+                    int r = regions.of(x, y);
+                    Tile tile = context.tile(x + y * width);
+
+                    if(pending[r] > 0){
+                        pending[r] --;
+                        tile.setBlock(runs[r]);
+                    }else{
+                        pending[r] = readBlock(inputs[r], tile, context);
+                        runs[r] = tile.block();
+                    }
+                }
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    private void writeFloors(DataOutputStream out, Regions regions, int r) throws IOException{
+        int count = regions.size(r);
+        for(int i = 0; i < count; i++){
+            Tile tile = regions.tile(r, i);
+            out.writeShort(tile.floorID());
+            out.writeShort(tile.overlayID());
+            int consecutives = 0;
+
+            for(int j = i + 1; j < count && consecutives < 255; j++){
+                Tile next = regions.tile(r, j);
+                if(next.floorID() != tile.floorID() || next.overlayID() != tile.overlayID()) break;
+                consecutives ++;
+            }
+
+            out.writeByte(consecutives);
+            i += consecutives;
+        }
+    }
+
+    private void readFloors(DataInputStream in, WorldContext context, Regions regions, int r) throws IOException{
+        int count = regions.size(r), width = regions.width;
+        for(int i = 0; i < count; i++){
+            short floorid = in.readShort();
+            short oreid = in.readShort();
+            int consecutives = in.readUnsignedByte();
+            if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
+
+            for(int j = i; j <= i + consecutives; j++){
+                int index = regions.index(r, j);
+                context.create(index % width, index / width, floorid, oreid, (short)0);
+            }
+
+            i += consecutives;
+        }
+    }
+
+    private static byte[] deflate(byte[] data){
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        var out = new ByteArrayOutputStream(Math.max(data.length / 4, 64));
+        byte[] chunk = new byte[8192];
+
+        deflater.setInput(data);
+        deflater.finish();
+        while(!deflater.finished()){
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int length) throws IOException{
+        Inflater inflater = new Inflater(true);
+        byte[] out = new byte[length];
+        try{
+            inflater.setInput(data);
+            int read = 0;
+            while(read < length){
+                int amount = inflater.inflate(out, read, length - read);
+                if(amount == 0 && (inflater.finished() || inflater.needsInput())) throw new IOException("Truncated map region.");
+                read += amount;
+            }
+        }catch(DataFormatException e){
+            throw new IOException(e);
+        }finally{
+            inflater.end();
+        }
+        return out;
+    }
+
+    /** Runs the task for every index on the main executor, then rethrows the first failure. */
+    static void parallel(int amount, RegionTask task) throws IOException{
+        Future<?>[] futures = new Future<?>[amount];
+        for(int i = 0; i < amount; i++){
+            int index = i;
+            futures[i] = mainExecutor.submit(() -> {
+                task.run(index);
+                return null;
+            });
+        }
+
+        for(var future : futures){
+            try{
+                future.get();
+            }catch(InterruptedException e){
+                throw new RuntimeException(e);
+            }catch(ExecutionException e){
+                if(e.getCause() instanceof IOException io) throw io;
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    interface RegionTask{
+        void run(int region) throws IOException;
+    }
+
+    /** Region layout of a map. Tiles of a region are ordered row-major within that region. */
+    static class Regions{
+        final int width, height, size, regionsX, count;
+
+        Regions(int width, int height, int size){
+            this.width = width;
+            this.height = height;
+            this.size = size;
+            regionsX = Math.max(Mathf.ceil(width / (float)size), 1);
+            count = regionsX * Math.max(Mathf.ceil(height / (float)size), 1);
+        }
+
+        int of(int x, int y){
+            return x / size + (y / size) * regionsX;
+        }
+
+        int regionWidth(int r){
+            return Math.min(size, width - (r % regionsX) * size);
+        }
+
+        /** @return amount of tiles in the region. */
+        int size(int r){
+            return regionWidth(r) * Math.min(size, height - (r / regionsX) * size);
+        }
+
+        /** @return index of a world position within its region. */
+        int local(int r, int x, int y){
+            return (x - (r % regionsX) * size) + (y - (r / regionsX) * size) * regionWidth(r);
+        }
+
+        /** @return world tile array index of a tile within the region. */
+        int index(int r, int local){
+            int w = regionWidth(r);
+            return (r % regionsX) * size + local % w + ((r / regionsX) * size + local / w) * width;
+        }
+
+        Tile tile(int r, int local){
+            int index = index(r, local);
+            return world.rawTile(index % width, index / width);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package mindustry.io.versions;
+
+import arc.files.*;
+import arc.math.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.gen.*;
+import mindustry.io.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Adds incremental saves on top of the region layout of {@link Save14}; see {@link SaveJournal}.
+ * The map section starts with a mode byte. Full saves are followed by their base ID and the Save14 map layout.
+ * Incremental saves are followed by the base file name, base ID and the same layout, where regions with a length of -1 are read from the base save.
+ */
+public class Save15 extends Save14{
+    static final int modeFull = 0, modeIncremental = 1;
+
+    /** Journal of the save that is currently being written. */
+    private @Nullable SaveJournal journal;
+    /** File of the save that is currently being read, if any. */
+    private @Nullable Fi readFile;
+
+    public Save15(){
+        super(15);
+    }
+
+    @Override
+    public void write(DataOutputStream stream, SaveOptions options) throws IOException{
+        journal = options.journal;
+        try{
+            super.write(stream, options);
+        }finally{
+            journal = null;
+        }
+    }
+
+    @Override
+    public void read(DataInputStream stream, CounterInputStream counter, SaveReadState saveState) throws IOException{
+        readFile = saveState.file;
+        try{
+            super.read(stream, counter, saveState);
+        }finally{
+            readFile = null;
+        }
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        Regions regions = new Regions(world.width(), world.height(), regionSize);
+
+        if(journal == null || journal.full){
+            byte[][] raw = serializeRegions(regions, null);
+            long id = journal == null ? 0 : Mathf.rand.nextLong();
+
+            stream.writeByte(modeFull);
+            stream.writeLong(id);
+            writeRegions(stream, regions, raw, compressRegions(raw));
+
+            if(journal != null){
+                journal.rebase(id, regions.width, regions.height, checksums(raw));
+            }
+        }else{
+            //updating buildings can change every frame; everything else was marked by the journal when it changed
+            for(Building build : Groups.build){
+                journal.mark(build);
+            }
+            boolean[] include = journal.dirty.clone();
+
+            byte[][] raw = serializeRegions(regions, include);
+            long[] checksums = checksums(raw);
+            for(int r = 0; r < regions.count; r++){
+                if(raw[r] != null && checksums[r] == journal.checksums[r]) raw[r] = null;
+            }
+            byte[][] compressed = compressRegions(raw);
+
+            stream.writeByte(modeIncremental);
+            stream.writeUTF(journal.base.name());
+            stream.writeLong(journal.baseId);
+            stream.writeShort(regions.width);
+            stream.writeShort(regions.height);
+            stream.writeShort(regions.size);
+            for(int r = 0; r < regions.count; r++){
+                stream.writeInt(raw[r] == null ? -1 : raw[r].length);
+                stream.writeInt(raw[r] == null ? 0 : compressed[r].length);
+            }
+            for(int r = 0; r < regions.count; r++){
+                if(compressed[r] != null) stream.write(compressed[r]);
+            }
+
+            journal.deltas ++;
+        }
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int mode = stream.readUnsignedByte();
+        if(mode == modeFull){
+            stream.readLong();
+            super.readMap(stream, context);
+            return;
+        }else if(mode != modeIncremental){
+            throw new IOException("Unknown map mode: " + mode);
+        }
+
+        String baseName = stream.readUTF();
+        long id = stream.readLong();
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int size = stream.readUnsignedShort();
+        Regions regions = new Regions(width, height, size);
+
+        int[] lengths = new int[regions.count];
+        byte[][] compressed = new byte[regions.count][];
+        for(int r = 0; r < regions.count; r++){
+            lengths[r] = stream.readInt();
+            compressed[r] = new byte[stream.readInt()];
+        }
+        for(int r = 0; r < regions.count; r++){
+            stream.readFully(compressed[r]);
+        }
+
+        //the base is written to the same directory as its incremental saves
+        readBase(readFile != null ? readFile.sibling(baseName) : saveDirectory.child(baseName), id, regions, lengths, compressed);
+        readRegions(context, regions, lengths, compressed);
+    }
+
+    /** Fills in all regions with a length of -1 from the map section of a full save. */
+    private void readBase(Fi file, long id, Regions regions, int[] lengths, byte[][] compressed) throws IOException{
+        if(!file.exists()) throw new IOException("Base of incremental save does not exist: " + file.name());
+
+        try(DataInputStream in = new DataInputStream(new InflaterInputStream(file.read(bufferSize)))){
+            SaveIO.readHeader(in);
+            if(in.readInt() != version) throw new IOException("Base save has a different version: " + file.name());
+
+            //meta, patches, content
+            skipChunk(in);
+            skipChunk(in);
+            skipChunk(in);
+            //map length
+            in.readInt();
+
+            if(in.readUnsignedByte() != modeFull || in.readLong() != id || in.readUnsignedShort() != regions.width ||
+                in.readUnsignedShort() != regions.height || in.readUnsignedShort() != regions.size){
+                throw new IOException("Base save does not match incremental save: " + file.name());
+            }
+
+            boolean[] fromBase = new boolean[regions.count];
+            int[] skip = new int[regions.count];
+            for(int r = 0; r < regions.count; r++){
+                int length = in.readInt(), compressedLength = in.readInt();
+                if(lengths[r] == -1){
+                    fromBase[r] = true;
+                    lengths[r] = length;
+                    compressed[r] = new byte[compressedLength];
+                }else{
+                    skip[r] = compressedLength;
+                }
+            }
+
+            for(int r = 0; r < regions.count; r++){
+                if(fromBase[r]){
+                    in.readFully(compressed[r]);
+                }else if(in.skipBytes(skip[r]) != skip[r]){
+                    throw new EOFException("Base save is truncated: " + file.name());
+                }
+            }
+        }
+    }
+
+    private static long[] checksums(byte[][] raw) throws IOException{
+        long[] out = new long[raw.length];
+        parallel(raw.length, r -> {
+            if(raw[r] == null) return;
+
+            CRC32 crc = new CRC32();
+            crc.update(raw[r]);
+            out[r] = crc.getValue();
+        });
+        return out;
+    }
+}
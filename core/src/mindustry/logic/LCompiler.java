@@ -0,0 +1,131 @@
+package mindustry.logic;
+
+import mindustry.logic.LExecutor.*;
+
+/**
+ * Optional lowering step that runs after {@link LAssembler#assemble(String, boolean)}.
+ * Arithmetic, comparison and jump instructions are replaced with specialized instructions that do not dispatch through the
+ * {@link LogicOp} and {@link ConditionOp} lambdas, and jumps without a valid address are dropped to no-ops.
+ * <p>
+ * The result has exactly one instruction per source instruction, so {@code @counter}, {@code @ipt} accounting and saved wait
+ * indices are unchanged. Every other instruction is kept as the same instance.
+ * Variables stay {@link LVar}s, since other processors, sync and saves read and write them directly.
+ */
+public class LCompiler{
+
+    /** @return the instructions that should be executed in place of the given ones. The input array is not modified. */
+    public static LInstruction[] compile(LInstruction[] instructions){
+        LInstruction[] out = new LInstruction[instructions.length];
+        for(int i = 0; i < instructions.length; i++){
+            out[i] = lower(instructions[i]);
+        }
+        return out;
+    }
+
+    static LInstruction lower(LInstruction inst){
+        if(inst instanceof OpI op && numeric(op.op)){
+            return new NumOpI(op.op, op.a, op.b, op.dest);
+        }else if(inst instanceof JumpI jump){
+            if(jump.address == -1){
+                return new NoopI();
+            }else if(jump.op == ConditionOp.always){
+                return new GotoI(jump.address);
+            }else if(jump.op.objFunction == null && jump.op != ConditionOp.strictEqual){
+                return new NumJumpI(jump.op, jump.value, jump.compare, jump.address);
+            }
+        }
+        return inst;
+    }
+
+    /** @return whether this operation only ever uses its numeric function, and is handled by {@link NumOpI}. */
+    static boolean numeric(LogicOp op){
+        return switch(op){
+            case add, sub, mul, div, idiv, mod, emod, land, lessThan, lessThanEq, greaterThan, greaterThanEq, max, min, abs, floor, ceil, sqrt -> true;
+            default -> false;
+        };
+    }
+
+    /** {@link OpI} for operations that have no object function. */
+    public static class NumOpI implements LInstruction{
+        public final LogicOp op;
+        public final LVar a, b, dest;
+
+        public NumOpI(LogicOp op, LVar a, LVar b, LVar dest){
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.dest = dest;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            double x = a.num();
+            dest.setnum(switch(op){
+                case add -> x + b.num();
+                case sub -> x - b.num();
+                case mul -> x * b.num();
+                case div -> x / b.num();
+                case idiv -> Math.floor(x / b.num());
+                case mod -> x % b.num();
+                case emod -> {
+                    double y = b.num();
+                    yield ((x % y) + y) % y;
+                }
+                case land -> x != 0 && b.num() != 0 ? 1 : 0;
+                case lessThan -> x < b.num() ? 1 : 0;
+                case lessThanEq -> x <= b.num() ? 1 : 0;
+                case greaterThan -> x > b.num() ? 1 : 0;
+                case greaterThanEq -> x >= b.num() ? 1 : 0;
+                case max -> Math.max(x, b.num());
+                case min -> Math.min(x, b.num());
+                case abs -> Math.abs(x);
+                case floor -> Math.floor(x);
+                case ceil -> Math.ceil(x);
+                case sqrt -> Math.sqrt(x);
+                default -> throw new IllegalArgumentException("Operation is not numeric: " + op);
+            });
+        }
+    }
+
+    /** {@link JumpI} for conditions that have no object function. */
+    public static class NumJumpI implements LInstruction{
+        public final ConditionOp op;
+        public final LVar value, compare;
+        public final int address;
+
+        public NumJumpI(ConditionOp op, LVar value, LVar compare, int address){
+            this.op = op;
+            this.value = value;
+            this.compare = compare;
+            this.address = address;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            double a = value.num(), b = compare.num();
+            if(switch(op){
+                case lessThan -> a < b;
+                case lessThanEq -> a <= b;
+                case greaterThan -> a > b;
+                case greaterThanEq -> a >= b;
+                default -> op.function.get(a, b);
+            }){
+                exec.counter.numval = address;
+            }
+        }
+    }
+
+    /** Unconditional {@link JumpI}. */
+    public static class GotoI implements LInstruction{
+        public final int address;
+
+        public GotoI(int address){
+            this.address = address;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            exec.counter.numval = address;
+        }
+    }
+}
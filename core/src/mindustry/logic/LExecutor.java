@@ -31,6 +31,7 @@ import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.logic.*;
 import mindustry.world.blocks.logic.LogicBlock.*;
 import mindustry.world.blocks.logic.LogicDisplay.*;
+import mindustry.world.blocks.logic.MemoryBlock.*;
 import mindustry.world.blocks.logic.MessageBlock.*;
 import mindustry.world.blocks.payloads.*;
 import mindustry.world.meta.*;
@@ -39,6 +40,8 @@ import static mindustry.Vars.*;
 
 public class LExecutor{
     public static int maxInstructions = 1000;
+    /** If true, loaded instructions are lowered with {@link LCompiler} before they are executed. Off by default until it is shown to be faster on real servers. */
+    public static boolean compileInstructions = false;
 
     public static final int
     maxGraphicsBuffer = 256,
@@ -46,6 +49,17 @@ public class LExecutor{
     maxTextBuffer = 400;
 
     public LInstruction[] instructions = {};
+    /** Instructions that are actually executed; either {@link #instructions} or their compiled form, with the same length. */
+    public LInstruction[] program = {};
+    /** For every instruction of {@link #program}, whether it only reads and writes the state of this executor. See {@link #isolated(LInstruction)}. */
+    public boolean[] isolated = {};
+    /**
+     * If true, reads and writes of linked memory cells are isolated: writes are recorded instead of applied, and reads see the recorded writes.
+     * Set by the logic scheduler for processors that are the only ones to link their memory cells. See {@link #flushWrites()}.
+     */
+    public boolean bufferWrites;
+    /** Whether this program can obtain and access buildings that are not linked to it, e.g. through units or world queries. */
+    public boolean reachesUnlinked;
     /** Non-constant variables used for network sync */
     public LVar[] vars = {};
 
@@ -64,6 +78,10 @@ public class LExecutor{
     //maps variable name to index in vars; lazily initialized
     protected @Nullable ObjectIntMap<String> nameMap;
 
+    private final Seq<MemoryBuild> writeTargets = new Seq<>(false, 8, MemoryBuild.class);
+    private final IntSeq writeAddresses = new IntSeq(false, 8);
+    private final LongSeq writeValues = new LongSeq(false, 8);
+
     //yes, this is a minor memory leak, but it's probably not significant enough to matter
     protected static IntFloatMap unitTimeouts = new IntFloatMap();
 
@@ -107,6 +125,68 @@ public class LExecutor{
         return instructions.length > 0;
     }
 
+    /**
+     * @return whether the instruction that the next {@link #runOnce()} call runs is {@link #isolated(LInstruction) isolated},
+     * or reads or writes a linked memory cell while {@link #bufferWrites} is set.
+     */
+    public boolean nextIsolated(){
+        int index = (int)counter.numval;
+        if(index >= isolated.length || index < 0) index = 0;
+        if(isolated[index]) return true;
+        if(!bufferWrites) return false;
+
+        var inst = program[index];
+        Object target = inst instanceof ReadI read ? read.target.obj() : inst instanceof WriteI write ? write.target.obj() : null;
+        return target instanceof MemoryBuild memory && linkIds.contains(memory.id);
+    }
+
+    /** Applies all writes that were recorded while {@link #bufferWrites} was set, in order, and stops recording. Must be called on the main thread. */
+    public void flushWrites(){
+        var targets = writeTargets.items;
+        for(int i = 0; i < writeTargets.size; i++){
+            targets[i].memory[writeAddresses.items[i]] = Double.longBitsToDouble(writeValues.items[i]);
+        }
+        writeTargets.clear();
+        writeAddresses.clear();
+        writeValues.clear();
+        bufferWrites = false;
+    }
+
+    void bufferWrite(MemoryBuild memory, LVar position, LVar value){
+        int address = position.numi();
+        if(address < 0 || address >= memory.memory.length) return;
+
+        writeTargets.add(memory);
+        writeAddresses.add(address);
+        writeValues.add(Double.doubleToRawLongBits(value.num()));
+    }
+
+    void bufferedRead(MemoryBuild memory, LVar position, LVar output){
+        int address = position.numi();
+        //the latest recorded write to this address wins
+        for(int i = writeTargets.size - 1; i >= 0; i--){
+            if(writeTargets.items[i] == memory && writeAddresses.items[i] == address){
+                output.setnum(Double.longBitsToDouble(writeValues.items[i]));
+                return;
+            }
+        }
+        memory.read(position, output);
+    }
+
+    /**
+     * @return whether this instruction only reads and writes the state of the executor that runs it (variables, buffers, wait timers),
+     * so it can run concurrently with other processors. Instructions that read the world, touch links or use shared random state are not isolated.
+     */
+    public static boolean isolated(LInstruction inst){
+        if(inst instanceof OpI op) return op.op != LogicOp.rand;
+        return
+            inst instanceof SetI || inst instanceof SelectI || inst instanceof JumpI ||
+            inst instanceof LCompiler.NumOpI || inst instanceof LCompiler.NumJumpI || inst instanceof LCompiler.GotoI ||
+            inst instanceof EndI || inst instanceof NoopI || inst instanceof WaitI || inst instanceof StopI || inst instanceof SetRateI ||
+            inst instanceof DrawI || inst instanceof PrintI || inst instanceof PrintCharI || inst instanceof FormatI ||
+            inst instanceof LookupI || inst instanceof PackColorI || inst instanceof UnpackColorI;
+    }
+
     /** Runs a single instruction. */
     public void runOnce(){
         //reset to start
@@ -116,7 +196,7 @@ public class LExecutor{
 
         if(counter.numval < instructions.length){
             counter.isobj = false;
-            instructions[(int)(counter.numval++)].run(this);
+            program[(int)(counter.numval++)].run(this);
         }
     }
 
@@ -131,6 +211,7 @@ public class LExecutor{
         }
 
         instructions = builder.instructions;
+        recompile();
         counter = builder.getVar("@counter");
         unit = builder.getVar("@unit");
         thisv = builder.getVar("@this");
@@ -138,6 +219,25 @@ public class LExecutor{
         if(builder.privileged) queryResult = builder.putConst("@queries", null);
     }
 
+    /**
+     * Rebuilds {@link #program} from the loaded instructions, depending on {@link #compileInstructions}.
+     * Variables and the counter are kept, since compiled programs have the same instruction indices.
+     */
+    public void recompile(){
+        program = compileInstructions ? LCompiler.compile(instructions) : instructions;
+        isolated = new boolean[program.length];
+
+        boolean access = false, source = false;
+        for(int i = 0; i < program.length; i++){
+            var inst = program[i];
+            isolated[i] = isolated(inst);
+            access |= inst instanceof ReadI || inst instanceof WriteI || inst instanceof ControlI || inst instanceof SetPropI;
+            source |= inst instanceof UnitControlI || inst instanceof UnitLocateI || inst instanceof SenseI || inst instanceof RadarI ||
+                inst instanceof FetchI || inst instanceof GetBlockI || inst instanceof QueryI;
+        }
+        reachesUnlinked = access && source;
+    }
+
     //region utility
 
 
@@ -631,7 +731,11 @@ public class LExecutor{
                     output.setobj(null);
                     return;
                 }
-                read.read(position, output);
+                if(exec.bufferWrites && read instanceof MemoryBuild memory){
+                    exec.bufferedRead(memory, position, output);
+                }else{
+                    read.read(position, output);
+                }
             }else{
                 int address = position.numi();
                 if(targetObj instanceof CharSequence str){
@@ -662,7 +766,11 @@ public class LExecutor{
             Object targetObj = target.obj();
             if(targetObj instanceof LWritable write){
                 if(!write.writable(exec)) return;
-                write.write(position, value);
+                if(exec.bufferWrites && write instanceof MemoryBuild memory){
+                    exec.bufferWrite(memory, position, value);
+                }else{
+                    write.write(position, value);
+                }
             }
         }
     }
@@ -35,7 +35,7 @@ public class LogicScript{
         int timeCheck = 0;
 
         var counter = executor.counter;
-        var instructions = executor.instructions;
+        var instructions = executor.program;
         int timeout = (this.timeout <= 0 ? defaultTimeoutMs : this.timeout);
 
         while(counter.numval >= 0 && counter.numval < executor.instructions.length && !executor.stop){
@@ -11,8 +11,10 @@ import arc.util.serialization.*;
 import mindustry.*;
 import mindustry.ai.*;
 import mindustry.gen.*;
+import mindustry.logic.*;
 import mindustry.type.*;
 import mindustry.world.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
 import mindustry.world.blocks.payloads.*;
 
 import java.util.regex.*;
@@ -559,8 +561,46 @@ public class Administration{
         autosave = new Config("autosave", "Whether the periodically save the map when playing.", false),
         autosaveAmount = new Config("autosaveAmount", "The maximum amount of autosaves. Older ones get replaced.", 10),
         autosaveSpacing = new Config("autosaveSpacing", "Spacing between autosaves in seconds.", 60 * 5),
+        asyncAutosave = new Config("asyncAutosave", "Whether autosaves are compressed and written to disk in the background.", false),
+        incrementalAutosave = new Config("incrementalAutosave", "Whether autosaves only store map regions that changed since the last full autosave, which they refer to.", false),
+        autosaveCompaction = new Config("autosaveCompaction", "Amount of incremental autosaves written between two full autosaves.", 10),
         debug = new Config("debug", "Enable debug logging.", false, () -> Log.level = debug() ? LogLevel.debug : LogLevel.info),
         snapshotInterval = new Config("snapshotInterval", "Client entity snapshot interval in ms.", 200),
+        deltaSnapshots = new Config("deltaSnapshots", "Whether to only send changed entity data in snapshots. Not used with fog of war.", false),
+        snapshotKeyframeInterval = new Config("snapshotKeyframeInterval", "How many delta snapshots are sent between full keyframes.", 10),
+        entityInterest = new Config("entityInterest", "Whether entities outside of a player's view are synced less often. Not used with fog of war.", false),
+        interestMargin = new Config("interestMargin", "Extra distance around a player's view in which entities are still synced every snapshot, in world units.", 160),
+        sharedWorldData = new Config("sharedWorldData", "Whether players joining in the same frame share serialized world data, which is compressed and sent on a separate thread.", false),
+        asyncSnapshots = new Config("asyncSnapshots", "Whether snapshot packets are encoded on a separate thread while the next tick is simulated, and sent at the start of the next sync.", false),
+        offscreenSnapshotInterval = new Config("offscreenSnapshotInterval", "How many snapshots pass between updates of entities outside of a player's view.", 5),
+        parallelBuildings = new Config("parallelBuildings", "Whether to update connected groups of conveyor-like buildings in parallel. Experimental.", false, () -> {
+            if(logic != null) logic.buildScheduler.enabled = Config.parallelBuildings.bool();
+        }),
+        parallelPower = new Config("parallelPower", "Whether to solve independent power graphs in parallel.", false, () -> {
+            if(logic != null) logic.powerScheduler.enabled = Config.parallelPower.bool();
+        }),
+        parallelUnits = new Config("parallelUnits", "Whether unit AI plans targets and paths in parallel before units are updated.", false, () -> {
+            if(logic != null) logic.unitScheduler.enabled = Config.parallelUnits.bool();
+        }),
+        parallelLogic = new Config("parallelLogic", "Whether processors that only use their own variables run in parallel before buildings are updated.", false, () -> {
+            if(logic != null) logic.logicScheduler.enabled = Config.parallelLogic.bool();
+        }),
+        idleSleep = new Config("idleSleep", "Whether idle drills and crafters sleep, and only check their inputs and outputs periodically or when they receive something.", false, () -> {
+            if(logic != null) logic.sleepScheduler.enabled = Config.idleSleep.bool();
+        }),
+        batchTurretTargeting = new Config("batchTurretTargeting", "Whether nearby turrets share one enemy unit search per frame.", false, () -> {
+            if(indexer != null) indexer.turretTargeting.enabled = Config.batchTurretTargeting.bool();
+        }),
+        bulletBroadphase = new Config("bulletBroadphase", "Whether bullet collisions use one unit grid per frame instead of a quadtree query per bullet. Bullets that overlap several enemies at once hit the closest one.", false, () -> {
+            if(collisions != null) collisions.bulletBroadphase = Config.bulletBroadphase.bool();
+        }),
+        compileLogic = new Config("compileLogic", "Whether processor code is lowered to specialized instructions. Experimental, and not yet shown to be faster. Processors that are already placed are recompiled.", false, () -> {
+            LExecutor.compileInstructions = Config.compileLogic.bool();
+            //processors can be asleep or disabled, so the whole world is scanned instead of Groups.build
+            if(world != null) world.tiles.eachTile(t -> {
+                if(t.isCenter() && t.build instanceof LogicBuild build) build.executor.recompile();
+            });
+        }),
         autoPause = new Config("autoPause", "Whether the game should pause when nobody is online.", false),
         roundExtraTime = new Config("roundExtraTime", "Time before loading a new map after the gameover, in seconds.", 12),
         maxLogLength = new Config("maxLogLength", "The Maximum log file size, in bytes.", 1024 * 1024 * 5),
@@ -39,6 +39,9 @@ public class ArcNetProvider implements NetProvider{
     private static final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
     private static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
     private static final ThreadLocal<Seq<Connection>> writeConnections = Threads.local(Seq::new);
+    /** Reused holder for packets that are serialized once and written to several connections. Sending copies the bytes synchronously, so this can be reused right after. */
+    private static final ThreadLocal<SerializedPacket> broadcastPacket = Threads.local(() -> new SerializedPacket(ByteBuffer.allocate(16384)));
+    private static final PacketSerializer broadcastSerializer = new PacketSerializer();
 
     private volatile int playerLimitCache, packetSpamLimit;
     private Ratekeeper clientUdpErrorRate = new Ratekeeper();
@@ -344,10 +347,12 @@ public class ArcNetProvider implements NetProvider{
             }
         }
 
+        Object sent = cons.size > 1 ? serializeShared(object) : object;
+
         if(reliable){
-            server.sendToAllTCP(object, cons);
+            server.sendToAllTCP(sent, cons);
         }else{
-            server.sendToAllUDP(object, cons);
+            server.sendToAllUDP(sent, cons);
         }
 
         cons.clear();
@@ -355,13 +360,26 @@ public class ArcNetProvider implements NetProvider{
 
     @Override
     public void sendAllServer(Object object, boolean reliable){
+        Object sent = connections.size() > 1 ? serializeShared(object) : object;
+
         if(reliable){
-            server.sendToAllTCP(object);
+            server.sendToAllTCP(sent);
         }else{
-            server.sendToAllUDP(object);
+            server.sendToAllUDP(sent);
         }
     }
 
+    /** Encodes and compresses a packet once, so that every connection it is sent to only has to copy the bytes. */
+    Object serializeShared(Object object){
+        if(!(object instanceof Packet)) return object;
+
+        var shared = broadcastPacket.get();
+        shared.buffer.clear();
+        broadcastSerializer.write(shared.buffer, object);
+        shared.buffer.flip();
+        return shared;
+    }
+
     @Override
     public void sendExceptServer(NetConnection except, Object object, boolean reliable){
         if(!(except instanceof ArcConnection con)){
@@ -476,6 +494,15 @@ public class ArcNetProvider implements NetProvider{
         }
     }
 
+    /** Output of {@link PacketSerializer#write(ByteBuffer, Object)}, ready to be written to any number of connections. */
+    public static class SerializedPacket{
+        final ByteBuffer buffer;
+
+        SerializedPacket(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+    }
+
     public static class PacketSerializer implements NetSerializer{
         //for debugging total read/write speeds
         private static final boolean debug = false;
@@ -548,6 +575,9 @@ public class ArcNetProvider implements NetProvider{
             //write raw buffer
             if(o instanceof ByteBuffer raw){
                 byteBuffer.put(raw);
+            }else if(o instanceof SerializedPacket shared){
+                //already encoded; the shared buffer must not be consumed, as it is written to several connections
+                byteBuffer.put(shared.buffer.array(), shared.buffer.arrayOffset(), shared.buffer.limit());
             }else if(o instanceof FrameworkMessage msg){
                 byteBuffer.put((byte)-2); //code for framework message
                 writeFramework(byteBuffer, msg);
@@ -1,5 +1,6 @@
 package mindustry.net;
 
+import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.entities.units.*;
@@ -31,6 +32,20 @@ public abstract class NetConnection{
     public Ratekeeper packetRate = new Ratekeeper();
     /** Entities that only this player will get synced to them. */
     public Seq<Syncc> localEntities = new Seq<>(false);
+    /** Sync data that delta snapshots to this connection are encoded against. Only modified by the snapshot encoder. */
+    public final SyncBaseline syncBaseline = new SyncBaseline();
+    /** ID of the next delta snapshot packet, and the highest one acknowledged by the client. */
+    public int nextSnapshotId;
+    public volatile int lastSnapshotAck = -1;
+    /** If set, the snapshot encoder drops the baseline and sends a keyframe next. Set when world data is sent. */
+    public volatile boolean resetSnapshots;
+    /** Per-player entity snapshots sent since the last keyframe. */
+    public int snapshotsSinceKeyframe;
+    /** How many entities were sent to this connection in the last per-player entity snapshot. */
+    public int lastSnapshotEntities;
+    /** View rectangle with margin and IDs of units in it, captured for the last per-player entity snapshot. The rectangle is empty if entities were not filtered. */
+    public Rect interestRect = new Rect();
+    public IntSet interestUnits = new IntSet();
 
     //TODO: refactor to state enum
     public boolean hasConnected, hasBegunConnecting, determiningAssets, receivingAssets, hasDisconnected;
@@ -30,53 +30,66 @@ public class NetworkIO{
     public static void writeWorld(Player player, OutputStream os){
 
         try(DataOutputStream stream = new DataOutputStream(os)){
-            //write all researched content to rules if hosting
-            if(state.isCampaign()){
-                state.rules.researched.clear();
-                for(ContentType type : ContentType.all){
-                    for(Content c : content.getBy(type)){
-                        if(c instanceof UnlockableContent u && u.unlocked() && u.techNode != null){
-                            state.rules.researched.add(u);
-                        }
+            writeWorldState(stream);
+            writeWorldPlayer(player, stream);
+            writeWorldMap(stream);
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Writes the rules and global state that precede the player in world data. Shared by all players. */
+    public static void writeWorldState(DataOutputStream stream) throws IOException{
+        //write all researched content to rules if hosting
+        if(state.isCampaign()){
+            state.rules.researched.clear();
+            for(ContentType type : ContentType.all){
+                for(Content c : content.getBy(type)){
+                    if(c instanceof UnlockableContent u && u.unlocked() && u.techNode != null){
+                        state.rules.researched.add(u);
                     }
                 }
             }
+        }
 
-            //data patches must be first, as rules can involve patched content
-            SaveIO.getSaveWriter().writeDataPatches(stream, false);
+        //data patches must be first, as rules can involve patched content
+        SaveIO.getStreamWriter().writeDataPatches(stream, false);
 
-            stream.writeUTF(JsonIO.write(state.rules));
-            stream.writeUTF(JsonIO.write(state.mapLocales));
-            SaveIO.getSaveWriter().writeStringMap(stream, state.map.tags);
+        stream.writeUTF(JsonIO.write(state.rules));
+        stream.writeUTF(JsonIO.write(state.mapLocales));
+        SaveIO.getStreamWriter().writeStringMap(stream, state.map.tags);
 
-            stream.writeInt(state.wave);
-            stream.writeFloat(state.wavetime);
-            stream.writeDouble(state.tick);
-            stream.writeLong(GlobalVars.rand.seed0);
-            stream.writeLong(GlobalVars.rand.seed1);
+        stream.writeInt(state.wave);
+        stream.writeFloat(state.wavetime);
+        stream.writeDouble(state.tick);
+        stream.writeLong(GlobalVars.rand.seed0);
+        stream.writeLong(GlobalVars.rand.seed1);
+    }
 
-            stream.writeInt(player.id);
-            player.write(new Writes(stream));
+    /** Writes the part of world data that is specific to the receiving player. */
+    public static void writeWorldPlayer(Player player, DataOutputStream stream) throws IOException{
+        stream.writeInt(player.id);
+        player.write(new Writes(stream));
+    }
 
-            SaveIO.getSaveWriter().writeContentHeader(stream);
-            SaveIO.getSaveWriter().writeMap(stream);
-            SaveIO.getSaveWriter().writeTeamBlocks(stream);
-            SaveIO.getSaveWriter().writeMarkers(stream);
-            SaveIO.getSaveWriter().writeCustomChunks(stream, true);
-        }catch(IOException e){
-            throw new RuntimeException(e);
-        }
+    /** Writes the map, team blocks, markers and custom chunks that follow the player in world data. Shared by all players. */
+    public static void writeWorldMap(DataOutputStream stream) throws IOException{
+        SaveIO.getStreamWriter().writeContentHeader(stream);
+        SaveIO.getStreamWriter().writeMap(stream);
+        SaveIO.getStreamWriter().writeTeamBlocks(stream);
+        SaveIO.getStreamWriter().writeMarkers(stream);
+        SaveIO.getStreamWriter().writeCustomChunks(stream, true);
     }
 
     public static void loadWorld(InputStream is){
 
         try(DataInputStream stream = new DataInputStream(is)){
             Time.clear();
-            SaveIO.getSaveWriter().readDataPatches(stream, new SaveReadState(world.context));
+            SaveIO.getStreamWriter().readDataPatches(stream, new SaveReadState(world.context));
 
             state.rules = JsonIO.read(Rules.class, stream.readUTF());
             state.mapLocales = JsonIO.read(MapLocales.class, stream.readUTF());
-            state.map = new Map(SaveIO.getSaveWriter().readStringMap(stream));
+            state.map = new Map(SaveIO.getStreamWriter().readStringMap(stream));
 
             state.wave = stream.readInt();
             state.wavetime = stream.readFloat();
@@ -93,11 +106,11 @@ public class NetworkIO{
             player.id = id;
             player.add();
 
-            SaveIO.getSaveWriter().readContentHeader(stream);
-            SaveIO.getSaveWriter().readMap(stream, world.context);
-            SaveIO.getSaveWriter().readTeamBlocks(stream);
-            SaveIO.getSaveWriter().readMarkers(stream);
-            SaveIO.getSaveWriter().readCustomChunks(stream);
+            SaveIO.getStreamWriter().readContentHeader(stream);
+            SaveIO.getStreamWriter().readMap(stream, world.context);
+            SaveIO.getStreamWriter().readTeamBlocks(stream);
+            SaveIO.getStreamWriter().readMarkers(stream);
+            SaveIO.getStreamWriter().readCustomChunks(stream);
         }catch(IOException e){
             throw new RuntimeException(e);
         }finally{
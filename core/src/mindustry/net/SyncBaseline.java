@@ -0,0 +1,106 @@
+package mindustry.net;
+
+import arc.struct.*;
+
+/**
+ * Entity sync data that delta snapshots are encoded against, kept the same way by the server for each connection and by the client.
+ * <p>
+ * Every delta snapshot packet has an ID and the ID of its base, which is the snapshot last acknowledged by the client when it was encoded, or -1.
+ * Both sides record the full data of every entity in a packet as a pending snapshot. When the server receives an acknowledgement,
+ * or the client receives a packet whose base it has not acknowledged yet, {@link #resolve(int)} applies the pending snapshots
+ * from the current base up to that one. Since a packet with base -1 starts from no data at all, both sides always resolve to the same data.
+ * A snapshot whose chain of bases does not lead to the current one can not be resolved; it is dropped once a newer one is resolved.
+ */
+public class SyncBaseline{
+    /** Amount of pending snapshots that are kept. Older ones are dropped, so acknowledgements that arrive too late are ignored. */
+    public static final int maxPending = 64;
+
+    /** ID of the resolved snapshot, or -1 if there is none. */
+    public int id = -1;
+    /** Sync data of each entity as of the resolved snapshot, by entity ID. The arrays are never modified. */
+    public final IntMap<byte[]> data = new IntMap<>();
+
+    private final IntMap<Pending> pending = new IntMap<>();
+    private final IntSeq pendingIds = new IntSeq();
+    private final Seq<Pending> free = new Seq<>(false, 16, Pending.class);
+
+    /** Drops all data, so the next snapshot must be encoded against base -1. */
+    public void clear(){
+        id = -1;
+        data.clear();
+        for(int i = 0; i < pendingIds.size; i++){
+            free(pending.get(pendingIds.items[i]));
+        }
+        pending.clear();
+        pendingIds.clear();
+    }
+
+    /**
+     * Records a snapshot that is encoded against the specified base. IDs must increase.
+     * @return the map to put the full sync data of every entity in the snapshot into
+     */
+    public IntMap<byte[]> add(int snapshot, int base){
+        if(pendingIds.size >= maxPending){
+            free(pending.remove(pendingIds.removeIndex(0)));
+        }
+
+        Pending next = free.isEmpty() ? new Pending() : free.pop();
+        next.base = base;
+        pending.put(snapshot, next);
+        pendingIds.add(snapshot);
+        return next.data;
+    }
+
+    /**
+     * Makes the specified snapshot the resolved one, if it is pending and its chain of bases leads to the resolved snapshot or to -1.
+     * Pending snapshots up to it are dropped.
+     * @return whether the snapshot is resolved now
+     */
+    public boolean resolve(int snapshot){
+        if(snapshot == id) return true;
+        if(snapshot == -1 || snapshot < id || !chained(snapshot)) return false;
+
+        apply(snapshot);
+
+        while(pendingIds.size > 0 && pendingIds.first() <= snapshot){
+            free(pending.remove(pendingIds.removeIndex(0)));
+        }
+        return true;
+    }
+
+    private boolean chained(int snapshot){
+        while(snapshot != id && snapshot != -1){
+            Pending frame = pending.get(snapshot);
+            if(frame == null) return false;
+            snapshot = frame.base;
+        }
+        return true;
+    }
+
+    private void apply(int snapshot){
+        if(snapshot == id) return;
+        if(snapshot == -1){
+            data.clear();
+            id = -1;
+            return;
+        }
+
+        Pending frame = pending.get(snapshot);
+        apply(frame.base);
+        for(var entry : frame.data){
+            data.put(entry.key, entry.value);
+        }
+        id = snapshot;
+    }
+
+    private void free(Pending frame){
+        if(frame == null) return;
+        frame.data.clear();
+        free.add(frame);
+    }
+
+    static class Pending{
+        final IntMap<byte[]> data = new IntMap<>();
+        int base;
+    }
+}
@@ -0,0 +1,189 @@
+package mindustry.net;
+
+import arc.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.net.Packets.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Shares world data between players that join while the world does not change.
+ * <p>
+ * World data is one zlib stream: the {@link NetworkIO#writeWorldState state}, the {@link NetworkIO#writeWorldPlayer player},
+ * and the shared {@link NetworkIO#writeWorldMap map}. The map is serialized and deflated once per world epoch, as raw deflate blocks that end the stream.
+ * The epoch changes with every game update and every tile or building change event, so a paused world is only serialized once.
+ * For every player, the state and player header are serialized, deflated and sync-flushed in front of it,
+ * and the zlib checksum is combined from both parts, so clients read the result with a plain {@link InflaterInputStream} as before.
+ * <p>
+ * Compression and sending run on a background worker, so packets that the main thread sends to the same connection in the meantime
+ * may arrive before or between the chunks of the world stream. Connections serialize their writes, and clients queue every packet
+ * that is not high priority until the world is loaded, then handle them in order. Since the world data is captured before the stream is queued,
+ * those packets only describe later changes, and applying them after the world is correct.
+ */
+public class WorldStreamCache{
+    private static final int adlerBase = 65521;
+
+    private final ExecutorService executor = Threads.executor("World Stream", 1);
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream data = new DataOutputStream(buffer);
+
+    /** Incremented whenever the world may have changed. */
+    private long epoch;
+    private long cachedEpoch = -1;
+    private @Nullable Entry current;
+
+    public WorldStreamCache(){
+        Events.on(WorldLoadEvent.class, e -> clear());
+        Events.run(Trigger.beforeGameUpdate, this::changed);
+        Events.on(TileChangeEvent.class, e -> changed());
+        Events.on(TileFloorChangeEvent.class, e -> changed());
+        Events.on(TileOverlayChangeEvent.class, e -> changed());
+        Events.on(BuildTeamChangeEvent.class, e -> changed());
+        Events.on(BuildRotateEvent.class, e -> changed());
+        Events.on(ConfigEvent.class, e -> changed());
+    }
+
+    /** Marks the cached world data as outdated. Must be called when the world changes in a way that fires none of the events above. */
+    public void changed(){
+        epoch ++;
+    }
+
+    /** Drops the cached world data. */
+    public void clear(){
+        changed();
+        current = null;
+    }
+
+    /** Serializes the player header on the calling thread, then compresses and sends world data to the player in the background. */
+    public void sendAsync(Player player, NetConnection con){
+        Entry entry = entry();
+        byte[] header = header(entry, player);
+        executor.submit(() -> {
+            try{
+                con.sendStreamAsync(new WorldStream(), assemble(entry, header));
+            }catch(Throwable e){
+                Log.err("Failed to send world data to " + con.address, e);
+            }
+        });
+    }
+
+    /** @return compressed world data for this player, in the same format as {@link NetworkIO#writeWorld(Player, OutputStream)} with a deflater. */
+    public ByteArrayOutputStream write(Player player){
+        Entry entry = entry();
+        byte[] header = header(entry, player);
+        try{
+            return executor.submit(() -> assemble(entry, header)).get();
+        }catch(InterruptedException | ExecutionException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return world state followed by the player header, uncompressed. The state is small and may change without an event, so it is never cached. */
+    private byte[] header(Entry entry, Player player){
+        try{
+            buffer.reset();
+            NetworkIO.writeWorldState(data);
+            NetworkIO.writeWorldPlayer(player, data);
+            data.flush();
+            return buffer.toByteArray();
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Entry entry(){
+        if(current == null || cachedEpoch != epoch){
+            cachedEpoch = epoch;
+
+            try{
+                Entry entry = new Entry();
+
+                buffer.reset();
+                NetworkIO.writeWorldMap(data);
+                data.flush();
+                byte[] map = buffer.toByteArray();
+
+                //compressed once, before any player of this epoch, since the executor is sequential
+                executor.submit(() -> {
+                    Adler32 adler = new Adler32();
+                    adler.update(map);
+                    entry.mapAdler = adler.getValue();
+                    entry.mapLength = map.length;
+                    entry.map = deflate(map, true);
+                });
+
+                current = entry;
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+        return current;
+    }
+
+    private static ByteArrayOutputStream assemble(Entry entry, byte[] header){
+        Adler32 adler = new Adler32();
+        adler.update(header);
+        long checksum = combine(adler.getValue(), entry.mapAdler, entry.mapLength);
+        byte[] start = deflate(header, false);
+
+        var out = new ByteArrayOutputStream(2 + start.length + entry.map.length + 4);
+        //zlib header for default compression
+        out.write(0x78);
+        out.write(0x9C);
+        out.write(start, 0, start.length);
+        out.write(entry.map, 0, entry.map.length);
+        out.write((int)(checksum >>> 24) & 0xff);
+        out.write((int)(checksum >>> 16) & 0xff);
+        out.write((int)(checksum >>> 8) & 0xff);
+        out.write((int)checksum & 0xff);
+        return out;
+    }
+
+    /** @return raw deflate blocks of the input, either ending the stream or sync-flushed so more blocks can follow. */
+    private static byte[] deflate(byte[] input, boolean finish){
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        var out = new ByteArrayOutputStream(Math.max(input.length / 4, 64));
+        byte[] chunk = new byte[8192];
+
+        deflater.setInput(input);
+        if(finish){
+            deflater.finish();
+            while(!deflater.finished()){
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        }else{
+            int written;
+            do{
+                written = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                out.write(chunk, 0, written);
+            }while(written == chunk.length || !deflater.needsInput());
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** @return the Adler-32 checksum of two concatenated inputs, given the checksum of each part and the length of the second. */
+    static long combine(long adler1, long adler2, long length2){
+        long rem = length2 % adlerBase;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % adlerBase;
+        sum1 += (adler2 & 0xffff) + adlerBase - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + adlerBase - rem;
+        if(sum1 >= adlerBase) sum1 -= adlerBase;
+        if(sum1 >= adlerBase) sum1 -= adlerBase;
+        if(sum2 >= (adlerBase << 1)) sum2 -= (adlerBase << 1);
+        if(sum2 >= adlerBase) sum2 -= adlerBase;
+        return sum1 | (sum2 << 16);
+    }
+
+    static class Entry{
+        //written on the executor
+        byte[] map;
+        long mapAdler;
+        int mapLength;
+    }
+}
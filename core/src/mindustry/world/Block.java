@@ -168,6 +168,17 @@ public class Block extends UnlockableContent implements Senseable{
     public boolean autoResetEnabled = true;
     /** if true, the block stops updating when disabled */
     public boolean noUpdateDisabled = false;
+    /**
+     * If true, updateTile() only reads and writes state of this building and its direct proximity, and never touches global state (effects, groups, random, team data).
+     * Unmarked buildings in its proximity may only receive items after {@link mindustry.async.BuildingScheduler#deferTransfer} returned false.
+     * Connected groups of such buildings may be updated concurrently by {@link mindustry.async.BuildingScheduler}.
+     */
+    public boolean parallelUpdate = false;
+    /**
+     * If positive, idle buildings of this block sleep for this many ticks between checks of their inputs and outputs, when {@link mindustry.async.SleepScheduler#enabled} is set.
+     * Receiving items or liquids and proximity changes still wake them right away; power returning wakes them in the next update.
+     */
+    public float idleSleepInterval = 0f;
     /** if true, this block updates when it's a payload in a unit. */
     public boolean updateInUnits = true;
     /** if true, this block updates in payloads in units regardless of the experimental game rule */
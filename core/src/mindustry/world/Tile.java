@@ -15,6 +15,7 @@ import mindustry.content.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
+import mindustry.io.*;
 import mindustry.type.*;
 import mindustry.ui.*;
 import mindustry.world.blocks.environment.*;
@@ -29,7 +30,6 @@ public class Tile implements Position, QuadTreeObject, Displayable{
     private static final TileOverlayChangeEvent overlayChange = new TileOverlayChangeEvent();;
 
     private static final ObjectSet<Building> tileSet = new ObjectSet<>();
-    private static final IntSet staleGraphs = new IntSet();
 
     /**
      * Extra data for specific blocks. Only saved if Block#saveData is true.
@@ -715,6 +715,7 @@ public class Tile implements Position, QuadTreeObject, Displayable{
         data = PackedTileData.data(packed);
         floorData = PackedTileData.floorData(packed);
         overlayData = PackedTileData.overlayData(packed);
+        SaveJournal.changed(this);
     }
 
     @Override
@@ -861,58 +862,13 @@ public class Tile implements Position, QuadTreeObject, Displayable{
     public static void setTeams(int[] positions, Team team){
         if(positions == null) return;
 
-        staleGraphs.clear();
-        tileSet.clear();
-
+        //each building leaves its graph and merges into the graphs of the new team, which only searches near the changed buildings
         for(int pos : positions){
             var build = world.build(pos);
             if(build != null){
-                var power = build.power;
-                if(build.power != null){
-                    staleGraphs.add(build.power.graph.getID());
-
-                    for(int i = 0; i < power.links.size; i++){
-                        var other = world.build(power.links.items[i]);
-                        if(other != null && other.power != null){
-                            tileSet.add(other);
-                            staleGraphs.add(other.power.graph.getID());
-                        }
-                    }
-                }
-                build.changeTeam(team, false);
+                build.changeTeam(team, true);
             }
         }
-
-        for(var external : tileSet){
-            reflowPower(team, external);
-        }
-
-        //update power graphs in a second pass
-        for(int pos : positions){
-            var build = world.build(pos);
-            reflowPower(team, build);
-        }
-    }
-
-    private static void reflowPower(Team team, Building build){
-        if(build != null && build.power != null && staleGraphs.contains(build.power.graph.getID())){
-            for(int i = 0; i < build.power.links.size; i++){
-                var other = world.build(build.power.links.items[i]);
-
-                //only reflow links that were connected to the old power graph; ones that have a new one were already covered.
-                if(other != null && other.team != team && other.power != null && staleGraphs.contains(other.power.graph.getID())){
-                    build.power.links.removeIndex(i);
-                    other.power.links.removeValue(build.pos());
-
-                    new PowerGraph().reflow(other);
-
-                    i --;
-                }
-            }
-            new PowerGraph().reflow(build);
-
-            build.updatePowerGraph();
-        }
     }
 
     @Remote(called = Loc.server)
@@ -14,6 +14,11 @@ public interface WorldContext{
     /** This should create a tile and put it into the tile array, then return it. */
     Tile create(int x, int y, int floorID, int overlayID, int wallID);
 
+    /** @return whether {@link #create(int, int, int, int, int)} may be called for different tiles from multiple threads at once. */
+    default boolean concurrentCreate(){
+        return false;
+    }
+
     /** Returns whether the world is already generating.*/
     boolean isGenerating();
 
@@ -10,6 +10,8 @@ public class ArmoredConveyor extends Conveyor{
     public ArmoredConveyor(String name){
         super(name);
         noSideBlend = true;
+        //acceptItem additionally reads the block and tile of the source, neither of which changes during a building update
+        parallelUpdate = true;
     }
 
     @Override
@@ -8,6 +8,7 @@ import arc.struct.*;
 import arc.util.*;
 import arc.util.io.*;
 import mindustry.annotations.Annotations.*;
+import mindustry.async.*;
 import mindustry.content.*;
 import mindustry.ctype.*;
 import mindustry.entities.*;
@@ -50,6 +51,7 @@ public class Conveyor extends Block implements Autotiler{
         ambientSoundVolume = 0.0022f;
         unloadable = false;
         noUpdateDisabled = false;
+        parallelUpdate = true;
     }
 
     @Override
@@ -298,8 +300,24 @@ public class Conveyor extends Block implements Autotiler{
         }
 
         public boolean pass(Item item){
-            if(item != null && next != null && next.team == team && next.acceptItem(this, item)){
-                next.handleItem(this, item);
+            if(item != null && next != null && next.team == team){
+                //the next building may be fed by another batch of the building scheduler; the item is offered again after it
+                if(BuildingScheduler.deferTransfer(this, next, item)) return false;
+
+                if(next.acceptItem(this, item)){
+                    next.handleItem(this, item);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean passDeferred(Building target, Item item){
+            //the item waits at the end of the conveyor, unless something took it or the conveyor turned since
+            if(len > 0 && ids[len - 1] == item && ys[len - 1] >= 1f && target == next && pass(item)){
+                items.remove(item, 1);
+                remove(len - 1);
                 return true;
             }
             return false;
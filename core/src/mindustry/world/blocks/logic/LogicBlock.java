@@ -268,12 +268,28 @@ public class LogicBlock extends Block{
 
         /** Block of code to run after load. */
         public @Nullable Runnable loadBlock;
+        /** Update ID in which all instructions of this processor already ran in the isolated phase of the logic scheduler. */
+        public long isolatedUpdate = -1;
+        /** Index in the processor list of the logic scheduler, or -1 if not registered. */
+        public int schedulerIndex = -1;
 
         {
             executor.privileged = privileged;
             executor.build = this;
         }
 
+        @Override
+        public void add(){
+            super.add();
+            logic.logicScheduler.add(this);
+        }
+
+        @Override
+        public void remove(){
+            super.remove();
+            logic.logicScheduler.remove(this);
+        }
+
         public void readCompressed(byte[] data, boolean relative){
             try(DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))){
                 int version = stream.read();
@@ -554,15 +570,8 @@ public class LogicBlock extends Block{
             if(state.rules.disableWorldProcessors && privileged) return;
 
             if(enabled && executor.initialized()){
-                if(accumulator > maxInstructionScale * ipt) accumulator = maxInstructionScale * ipt;
-
-                while(accumulator >= 1f){
-                    executor.runOnce();
-                    if(executor.yield){
-                        executor.yield = false;
-                        break;
-                    }
-                    accumulator --;
+                if(isolatedUpdate != state.updateId){
+                    runInstructions(false);
                 }
 
                 // Do not move in front of the loop, otherwise the curTime accumulated in WaitI
@@ -571,6 +580,27 @@ public class LogicBlock extends Block{
             }
         }
 
+        /**
+         * Runs instructions until the accumulated budget is used up or the executor yields.
+         * @param isolated if true, stops before the first instruction that is not isolated, see {@link LExecutor#nextIsolated()}.
+         * @return false if execution stopped before a non-isolated instruction, and the rest of the budget still has to be run serially.
+         */
+        public boolean runInstructions(boolean isolated){
+            if(accumulator > maxInstructionScale * ipt) accumulator = maxInstructionScale * ipt;
+
+            while(accumulator >= 1f){
+                if(isolated && !executor.nextIsolated()) return false;
+
+                executor.runOnce();
+                if(executor.yield){
+                    executor.yield = false;
+                    break;
+                }
+                accumulator --;
+            }
+            return true;
+        }
+
         public void updateLinks(){
             if(linksVar == null) return;
 
@@ -270,15 +270,8 @@ public class BeamNode extends PowerBlock{
                         prev.power.links.removeValue(pos());
                         power.links.removeValue(prev.pos());
 
-                        PowerGraph newgraph = new PowerGraph();
-                        //reflow from this point, covering all tiles on this side
-                        newgraph.reflow(this);
-
-                        if(prev.power.graph != newgraph){
-                            //reflow power for other end
-                            PowerGraph og = new PowerGraph();
-                            og.reflow(prev);
-                        }
+                        //only the two ends of the removed link can become disconnected
+                        power.graph.disconnect(this, prev);
                     }
 
                     //linked to a new one, connect graphs
@@ -4,6 +4,7 @@ import arc.math.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.gen.*;
+import mindustry.io.*;
 
 public class PowerGraph{
     private static final Queue<Building> queue = new Queue<>();
@@ -11,6 +12,14 @@ public class PowerGraph{
     private static final Seq<Building> outArray2 = new Seq<>();
     private static final IntSet closedSet = new IntSet();
 
+    //scratch data for split detection in remove()/disconnect()
+    private static final Seq<Building> splitRoots = new Seq<>(false, 16, Building.class);
+    private static final Seq<Building> searchBuilds = new Seq<>(false, 64, Building.class);
+    private static final IntSeq searchLabels = new IntSeq(), searchParents = new IntSeq();
+    private static final IntIntMap searchIndex = new IntIntMap();
+    private static final Seq<Queue<Building>> searchQueues = new Seq<>();
+    private static boolean[] searchFinished = new boolean[16];
+
     //do not modify any of these unless you know what you're doing!
     public final Seq<Building> producers = new Seq<>(false, 16, Building.class);
     public final Seq<Building> consumers = new Seq<>(false, 16, Building.class);
@@ -23,6 +32,11 @@ public class PowerGraph{
     private float lastScaledPowerIn, lastScaledPowerOut, lastCapacity;
     //diodes workaround for correct energy production info
     private float energyDelta = 0f;
+    //results of compute(), used by apply()
+    private float computedNeeded, computedProduced, computedStored, computedMissing, computedCapacity;
+    private boolean cheating;
+    //set by apply() when battery charge may have changed; reported by reportChanges() on the main thread
+    private boolean batteriesChanged;
 
     private final int graphID;
     private static int lastGraphID;
@@ -152,7 +166,11 @@ public class PowerGraph{
     }
 
     public float useBatteries(float needed){
-        float stored = getBatteryStored();
+        return useBatteries(needed, getBatteryStored());
+    }
+
+    /** @param stored the result of {@link #getBatteryStored()}, if already known. */
+    public float useBatteries(float needed, float stored){
         if(Mathf.equal(stored, 0f)) return 0f;
 
         float used = Math.min(stored, needed);
@@ -168,7 +186,11 @@ public class PowerGraph{
     }
 
     public float chargeBatteries(float excess){
-        float capacity = getBatteryCapacity();
+        return chargeBatteries(excess, getBatteryCapacity());
+    }
+
+    /** @param capacity the result of {@link #getBatteryCapacity()}, if already known. */
+    public float chargeBatteries(float excess, float capacity){
         //how much of the missing in each battery % is charged
         float chargedPercent = Math.min(excess/capacity, 1f);
         if(Mathf.equal(capacity, 0f)) return 0f;
@@ -192,6 +214,7 @@ public class PowerGraph{
             var consumer = items[i];
             //TODO how would it even be null
             var cons = consumer.block.consPower;
+            float lastStatus = consumer.power.status;
             if(cons.buffered){
                 if(!Mathf.zero(cons.capacity)){
                     // Add an equal percentage of power to all buffers, based on the global power coverage in this graph
@@ -209,31 +232,58 @@ public class PowerGraph{
                         consumer.power.status = 0f;
                     }
                 }
+
+                if(lastStatus <= 0f && consumer.power.status > 0f){
+                    consumer.powerRestored();
+                }
             }
         }
     }
 
     public void update(){
-        if(!consumers.isEmpty() && consumers.first().cheating()){
+        compute();
+        apply();
+        reportChanges();
+    }
+
+    /**
+     * Sums up production, consumption and battery state without modifying any building.
+     * Graphs never share buildings, so this can be called concurrently for different graphs.
+     */
+    public void compute(){
+        cheating = !consumers.isEmpty() && consumers.first().cheating();
+        if(cheating) return;
+
+        computedNeeded = getPowerNeeded();
+        computedProduced = getPowerProduced();
+        computedStored = getBatteryStored();
+        computedMissing = getBatteryCapacity();
+        computedCapacity = getTotalBatteryCapacity();
+    }
+
+    /** Applies the results of the last {@link #compute()} call: updates statistics, charges or drains batteries and distributes power to consumers. */
+    public void apply(){
+        if(cheating){
             //when cheating, just set status to 1
-            for(Building tile : consumers){
-                tile.power.status = 1f;
+            var items = consumers.items;
+            for(int i = 0; i < consumers.size; i++){
+                items[i].power.status = 1f;
             }
 
             lastPowerNeeded = lastPowerProduced = 1f;
             return;
         }
 
-        float powerNeeded = getPowerNeeded();
-        float powerProduced = getPowerProduced();
+        float powerNeeded = computedNeeded;
+        float powerProduced = computedProduced;
 
         lastPowerNeeded = powerNeeded;
         lastPowerProduced = powerProduced;
 
         lastScaledPowerIn = (powerProduced + energyDelta) / Time.delta;
         lastScaledPowerOut = powerNeeded / Time.delta;
-        lastCapacity = getTotalBatteryCapacity();
-        lastPowerStored = getBatteryStored();
+        lastCapacity = computedCapacity;
+        lastPowerStored = computedStored;
 
         powerBalance.add((lastPowerProduced - lastPowerNeeded + energyDelta) / Time.delta);
         energyDelta = 0f;
@@ -242,13 +292,15 @@ public class PowerGraph{
             boolean charged = false;
 
             if(!Mathf.equal(powerNeeded, powerProduced)){
+                batteriesChanged = true;
+
                 if(powerNeeded > powerProduced){
-                    float powerBatteryUsed = useBatteries(powerNeeded - powerProduced);
+                    float powerBatteryUsed = useBatteries(powerNeeded - powerProduced, computedStored);
                     powerProduced += powerBatteryUsed;
                     lastPowerProduced += powerBatteryUsed;
                 }else if(powerProduced > powerNeeded){
                     charged = true;
-                    powerProduced -= chargeBatteries(powerProduced - powerNeeded);
+                    powerProduced -= chargeBatteries(powerProduced - powerNeeded, computedMissing);
                 }
             }
 
@@ -256,6 +308,22 @@ public class PowerGraph{
         }
     }
 
+    /**
+     * Reports batteries whose charge changed in the last {@link #apply()} call to the save journal. Batteries do not update,
+     * so incremental saves only see their charge if it is reported. Must be called on the main thread, since {@link #apply()} may run on a worker.
+     */
+    public void reportChanges(){
+        if(!batteriesChanged) return;
+        batteriesChanged = false;
+
+        if(SaveJournal.isTracking()){
+            var items = batteries.items;
+            for(int i = 0; i < batteries.size; i++){
+                SaveJournal.changed(items[i]);
+            }
+        }
+    }
+
     public void addGraph(PowerGraph graph){
         if(graph == this) return;
 
@@ -337,43 +405,158 @@ public class PowerGraph{
         batteries.remove(build);
     }
 
-    /** Note that this does not actually remove the building from the graph;
-     * it creates *new* graphs that contain the correct buildings. Doing this invalidates the graph. */
+    /**
+     * Removes a building from this graph. Parts that become disconnected are moved into new graphs;
+     * the part that is still being searched when all others are done keeps this graph, see {@link #split(Building, Seq)}.
+     * This is not necessarily the largest part. The removed building is assigned a new, empty graph.
+     */
     public void remove(Building tile){
+        splitRoots.clear();
 
         //go through all the connections of this tile
         for(Building other : tile.getPowerConnections(outArray1)){
-            //a graph has already been assigned to this tile from a previous call, skip it
-            if(other.power.graph != this) continue;
-
-            //create graph for this branch
-            PowerGraph graph = new PowerGraph();
-            graph.checkAdd();
-            graph.add(other);
-            //add to queue for BFS
-            queue.clear();
-            queue.addLast(other);
-            while(queue.size > 0){
-                //get child from queue
+            if(other.power.graph == this && !splitRoots.contains(other, true)){
+                splitRoots.add(other);
+            }
+        }
+
+        removeList(tile);
+        tile.power.graph = null;
+        new PowerGraph().add(tile);
+
+        if(all.isEmpty()){
+            //implied empty graph here
+            if(entity != null) entity.remove();
+        }else{
+            split(tile, splitRoots);
+        }
+    }
+
+    /** Call after a direct link between two buildings of this graph was removed. Moves whatever became disconnected into a new graph. */
+    public void disconnect(Building a, Building b){
+        if(a.power.graph != this || b.power.graph != this || a == b) return;
+
+        splitRoots.clear();
+        splitRoots.add(a);
+        splitRoots.add(b);
+        split(null, splitRoots);
+    }
+
+    /**
+     * Checks whether the roots are still connected to each other without going through the removed building.
+     * One breadth-first search is started per root, and all searches advance one building at a time. Searches that meet are merged.
+     * A search that runs out of buildings without meeting any other has found a disconnected part, which is moved into a new graph.
+     * This stops as soon as only one unresolved search is left, so the cost is bounded by the size of the smaller parts, not the whole graph.
+     * The part of that last search stays in this graph without its size being known; it is usually, but not always, the largest one.
+     */
+    private void split(@Nullable Building removed, Seq<Building> roots){
+        int searches = roots.size;
+        if(searches <= 1) return;
+
+        searchIndex.clear();
+        searchBuilds.clear();
+        searchLabels.clear();
+        searchParents.clear();
+        while(searchQueues.size < searches) searchQueues.add(new Queue<>());
+
+        for(int i = 0; i < searches; i++){
+            Building root = roots.items[i];
+            searchParents.add(i);
+            searchQueues.get(i).clear();
+            searchIndex.put(root.pos(), searchBuilds.size);
+            searchBuilds.add(root);
+            searchLabels.add(i);
+            searchQueues.get(i).addLast(root);
+        }
+
+        if(searchFinished.length < searches) searchFinished = new boolean[searches];
+        boolean[] finished = searchFinished;
+        for(int i = 0; i < searches; i++) finished[i] = false;
+        int remaining = searches;
+        boolean changed = false;
+
+        while(remaining > 1){
+            for(int i = 0; i < searches; i++){
+                var queue = searchQueues.get(i);
+                if(queue.size == 0) continue;
+
                 Building child = queue.removeFirst();
-                //add it to the new branch graph
-                graph.add(child);
-                //go through connections
                 for(Building next : child.getPowerConnections(outArray2)){
-                    //make sure it hasn't looped back, and that the new graph being assigned hasn't already been assigned
-                    //also skip closed tiles
-                    if(next != tile && next.power.graph != graph){
-                        graph.add(next);
+                    if(next == removed || next.power.graph != this) continue;
+
+                    int index = searchIndex.get(next.pos(), -1);
+                    if(index == -1){
+                        searchIndex.put(next.pos(), searchBuilds.size);
+                        searchBuilds.add(next);
+                        searchLabels.add(i);
                         queue.addLast(next);
+                    }else{
+                        int a = find(i), b = find(searchLabels.items[index]);
+                        if(a != b){
+                            searchParents.items[b] = a;
+                            remaining --;
+                        }
+                    }
+                }
+            }
+
+            //a label whose searches have all run dry was fully explored without touching any other label, so it is disconnected
+            for(int label = 0; label < searches && remaining > 1; label++){
+                if(finished[label] || find(label) != label || !dry(label, searches)) continue;
+
+                finished[label] = true;
+                remaining --;
+                changed = true;
+
+                PowerGraph graph = new PowerGraph();
+                for(int j = 0; j < searchBuilds.size; j++){
+                    if(find(searchLabels.items[j]) == label){
+                        Building build = searchBuilds.items[j];
+                        //unset first, so that adding does not invalidate this graph
+                        build.power.graph = null;
+                        graph.add(build);
                     }
                 }
+                graph.checkAdd();
+                //update the graph once so direct consumers without any connected producer lose their power
+                graph.update();
             }
-            //update the graph once so direct consumers without any connected producer lose their power
-            graph.update();
         }
 
-        //implied empty graph here
-        if(entity != null) entity.remove();
+        if(changed){
+            removeMoved(all);
+            removeMoved(producers);
+            removeMoved(consumers);
+            removeMoved(batteries);
+        }
+
+        searchBuilds.clear();
+    }
+
+    /** Removes buildings that were moved to another graph from one of the lists of this graph. */
+    private void removeMoved(Seq<Building> list){
+        var items = list.items;
+        for(int i = list.size - 1; i >= 0; i--){
+            if(items[i].power.graph != this){
+                list.remove(i);
+            }
+        }
+    }
+
+    private static boolean dry(int label, int searches){
+        for(int i = 0; i < searches; i++){
+            if(searchQueues.get(i).size > 0 && find(i) == label) return false;
+        }
+        return true;
+    }
+
+    private static int find(int label){
+        var parents = searchParents.items;
+        while(parents[label] != label){
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
     }
 
     @Override
@@ -67,20 +67,14 @@ public class PowerNode extends PowerBlock{
                 power.links.removeValue(value);
                 if(valid) other.power.links.removeValue(entity.pos());
 
-                PowerGraph newgraph = new PowerGraph();
-
-                //reflow from this point, covering all tiles on this side
-                newgraph.reflow(entity);
-
-                newgraph.update();
-
-                if(valid && other.power.graph != newgraph){
-                    //create new graph for other end
-                    PowerGraph og = new PowerGraph();
-                    //reflow from other end
-                    og.reflow(other);
+                //only the two ends of the removed link can become disconnected
+                if(valid){
+                    power.graph.disconnect(entity, other);
+                }
 
-                    og.update();
+                power.graph.update();
+                if(valid && other.power.graph != power.graph){
+                    other.power.graph.update();
                 }
             }else if(linkValid(entity, other) && valid && power.links.size < maxNodes){
 
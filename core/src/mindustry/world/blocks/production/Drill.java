@@ -85,6 +85,7 @@ public class Drill extends Block{
         //drills work in space I guess
         envEnabled |= Env.space;
         flags = EnumSet.of(BlockFlag.drill);
+        idleSleepInterval = 30f;
     }
 
     @Override
@@ -309,6 +310,8 @@ public class Drill extends Block{
             }else{
                 lastDrillSpeed = 0f;
                 warmup = Mathf.approachDelta(warmup, 0f, warmupSpeed);
+                //full or without input, and fully spun down
+                if(warmup <= 0f) idleSleep();
                 return;
             }
 
@@ -59,6 +59,7 @@ public class GenericCrafter extends Block{
         ambientSoundVolume = 0.03f;
         flags = EnumSet.of(BlockFlag.factory);
         drawArrow = false;
+        idleSleepInterval = 30f;
     }
 
     @Override
@@ -261,6 +262,11 @@ public class GenericCrafter extends Block{
             }
 
             dumpOutputs();
+
+            //missing inputs or blocked outputs, and fully spun down
+            if(efficiency <= 0f && warmup <= 0f){
+                idleSleep();
+            }
         }
 
         @Override
@@ -8,6 +8,7 @@ import arc.util.*;
 import arc.util.Timer;
 import arc.util.CommandHandler.*;
 import arc.util.Timer.*;
+import arc.util.io.*;
 import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import arc.util.serialization.JsonWriter.*;
@@ -38,6 +39,7 @@ import java.net.*;
 import java.time.*;
 import java.time.format.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 import static arc.util.ColorCodes.*;
@@ -58,6 +60,12 @@ public class ServerControl implements ApplicationListener{
     public final Fi logFolder = Core.settings.getDataDirectory().child("logs/");
 
     private final Interval autosaveCount = new Interval();
+    /** Autosave captured on the main thread, waiting to be written by {@link #autosaveExecutor}. */
+    private final ReusableByteOutStream autosaveBuffer = new ReusableByteOutStream();
+    private final ExecutorService autosaveExecutor = Threads.executor("Autosave", 1);
+    private volatile boolean autosaving;
+    /** Tracks changed map regions for incremental autosaves. */
+    private final SaveJournal autosaveJournal = new SaveJournal();
 
     /** The file to which the logs are currently being written. */
     public Fi currentLogFile;
@@ -151,6 +159,15 @@ public class ServerControl implements ApplicationListener{
 
         //update log level
         Config.debug.set(Config.debug.bool());
+        //apply update scheduler modes
+        Config.parallelBuildings.set(Config.parallelBuildings.bool());
+        Config.parallelPower.set(Config.parallelPower.bool());
+        Config.parallelUnits.set(Config.parallelUnits.bool());
+        Config.parallelLogic.set(Config.parallelLogic.bool());
+        Config.batchTurretTargeting.set(Config.batchTurretTargeting.bool());
+        Config.bulletBroadphase.set(Config.bulletBroadphase.bool());
+        Config.compileLogic.set(Config.compileLogic.bool());
+        Config.idleSleep.set(Config.idleSleep.bool());
 
         try{
             lastMode = Gamemode.valueOf(Core.settings.getString("lastServerMode", "survival"));
@@ -300,20 +317,43 @@ public class ServerControl implements ApplicationListener{
 
                     //delete older saves
                     if(autosaves.size >= max){
+                        ObjectSet<String> bases = autosaveBases(autosaves, max - 1);
                         for(int i = max - 1; i < autosaves.size; i++){
-                            autosaves.get(i).delete();
+                            if(!bases.contains(autosaves.get(i).name())){
+                                autosaves.get(i).delete();
+                            }
                         }
                     }
 
                     String fileName = "auto_" + mapName + "_" + date + "." + saveExtension;
                     Fi file = saveDirectory.child(fileName);
-                    info("Autosaving...");
 
-                    try{
-                        SaveIO.save(file);
-                        info("Autosave completed.");
-                    }catch(Throwable e){
-                        err("Autosave failed.", e);
+                    SaveOptions options;
+                    if(Config.incrementalAutosave.bool()){
+                        autosaveJournal.compactInterval = Config.autosaveCompaction.num();
+                        autosaveJournal.begin(file);
+                        options = autosaveJournal.options();
+                        if(autosaveJournal.full){
+                            info("Autosaving...");
+                        }else{
+                            info("Autosaving incrementally, based on @...", autosaveJournal.base.name());
+                        }
+                    }else{
+                        autosaveJournal.reset();
+                        options = new SaveOptions();
+                        info("Autosaving...");
+                    }
+
+                    if(Config.asyncAutosave.bool()){
+                        autosave(file, options);
+                    }else{
+                        try{
+                            SaveIO.save(file, options);
+                            info("Autosave completed.");
+                        }catch(Throwable e){
+                            autosaveJournal.reset();
+                            err("Autosave failed.", e);
+                        }
                     }
                 }
             }
@@ -623,13 +663,33 @@ public class ServerControl implements ApplicationListener{
                     info("  @ seconds until next wave.", (int)(state.wavetime / 60));
                 }
                 info("  @ units / @ enemies", Groups.unit.size(), state.enemies);
+                info("  @ buildings updating / @ sleeping", Groups.build.size(), logic.sleepScheduler.sleeping);
 
                 info("  @ FPS, @ MB used.", Core.graphics.getFramesPerSecond(), Core.app.getJavaHeap() / 1024 / 1024);
 
+                if(Config.parallelUnits.bool()){
+                    info("  Units: @ ms update / @ ms target selection",
+                        Strings.fixed(PerfCounter.unitUpdate.rawValueMs(), 2), Strings.fixed(PerfCounter.unitThink.rawValueMs(), 2));
+                }
+
+                if(Config.parallelLogic.bool()){
+                    info("  Processors: @ ran in parallel", logic.logicScheduler.lastIsolated);
+                }
+
+                if(Config.asyncSnapshots.bool()){
+                    info("  Snapshots: @ ms capture / @ ms wait / @ ms encode / @ ms send",
+                        Strings.fixed(PerfCounter.snapshotCapture.rawValueMs(), 2), Strings.fixed(PerfCounter.snapshotWait.rawValueMs(), 2),
+                        Strings.fixed(PerfCounter.snapshotEncode.rawValueMs(), 2), Strings.fixed(PerfCounter.snapshotSend.rawValueMs(), 2));
+                }
+
                 if(Groups.player.size() > 0){
                     info("  Players: @", Groups.player.size());
                     for(Player p : Groups.player){
-                        info("    @ @ / @", p.admin() ? "&r[A]&c" : "&b[P]&c", p.plainName(), p.uuid());
+                        if(p.con != null && (Config.deltaSnapshots.bool() || Config.entityInterest.bool())){
+                            info("    @ @ / @ &lk(@ entities synced)", p.admin() ? "&r[A]&c" : "&b[P]&c", p.plainName(), p.uuid(), p.con.lastSnapshotEntities);
+                        }else{
+                            info("    @ @ / @", p.admin() ? "&r[A]&c" : "&b[P]&c", p.plainName(), p.uuid());
+                        }
                     }
                 }else{
                     info("  No players connected.");
@@ -1323,6 +1383,57 @@ public class ServerControl implements ApplicationListener{
         mods.eachClass(p -> p.registerServerCommands(handler));
     }
 
+    /** Captures the game state on the main thread, then compresses and writes it to the file in the background. */
+    void autosave(Fi file, SaveOptions options){
+        if(autosaving){
+            warn("Previous autosave is still being written, skipping.");
+            return;
+        }
+
+        long begin = Time.nanos();
+        try{
+            SaveIO.capture(autosaveBuffer, options);
+        }catch(Throwable e){
+            autosaveJournal.reset();
+            err("Autosave failed.", e);
+            return;
+        }
+        float pause = Time.timeSinceNanos(begin) / (float)Time.nanosPerMilli;
+        debug("Autosave captured in @ ms (@ KB uncompressed).", Strings.fixed(pause, 2), autosaveBuffer.size() / 1024);
+
+        autosaving = true;
+        autosaveExecutor.submit(() -> {
+            try{
+                long writeBegin = Time.nanos();
+                SaveIO.writeCaptured(file, autosaveBuffer);
+                info("Autosave completed. (main thread paused for @ ms, written in @ ms)",
+                    Strings.fixed(pause, 2), Strings.fixed(Time.timeSinceNanos(writeBegin) / (float)Time.nanosPerMilli, 2));
+            }catch(Throwable e){
+                //the next incremental autosave must not be based on a file that was never written
+                Core.app.post(autosaveJournal::reset);
+                err("Autosave failed.", e);
+            }finally{
+                autosaving = false;
+            }
+        });
+    }
+
+    /** @return names of the base saves that the newest autosaves and the next incremental autosave depend on. */
+    ObjectSet<String> autosaveBases(Seq<Fi> autosaves, int kept){
+        ObjectSet<String> bases = new ObjectSet<>();
+        if(autosaveJournal.base != null) bases.add(autosaveJournal.base.name());
+
+        for(int i = 0; i < kept && i < autosaves.size; i++){
+            try{
+                String base = SaveIO.getMeta(autosaves.get(i)).tags.get(SaveJournal.baseTag);
+                if(base != null) bases.add(base);
+            }catch(Throwable e){
+                debug("Could not read autosave meta of @: @", autosaves.get(i).name(), e.getMessage());
+            }
+        }
+        return bases;
+    }
+
     public void handleCommandString(String line){
         CommandResponse response = handler.handleMessage(line);
 
@@ -1,6 +1,7 @@
 import arc.*;
 import arc.backend.headless.*;
 import arc.files.*;
+import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
@@ -8,15 +9,20 @@ import arc.util.io.*;
 import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import mindustry.*;
+import mindustry.ai.*;
+import mindustry.async.*;
 import mindustry.content.*;
 import mindustry.core.*;
 import mindustry.core.GameState.*;
 import mindustry.ctype.*;
+import mindustry.entities.*;
 import mindustry.entities.units.*;
 import mindustry.game.MapObjectives.*;
 import mindustry.game.*;
 import mindustry.gen.*;
 import mindustry.io.*;
+import mindustry.io.versions.*;
+import mindustry.logic.*;
 import mindustry.maps.*;
 import mindustry.mod.*;
 import mindustry.mod.Mods.*;
@@ -24,6 +30,10 @@ import mindustry.net.*;
 import mindustry.net.Packets.*;
 import mindustry.type.*;
 import mindustry.world.*;
+import mindustry.world.blocks.distribution.Conveyor.*;
+import mindustry.world.blocks.environment.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
+import mindustry.world.blocks.logic.MemoryBlock.*;
 import mindustry.world.blocks.payloads.*;
 import mindustry.world.blocks.storage.*;
 import org.json.*;
@@ -33,6 +43,8 @@ import org.junit.jupiter.params.provider.*;
 
 import java.io.*;
 import java.nio.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
 
 import static mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -224,6 +236,37 @@ public class ApplicationTests{
         }});
     }
 
+    @Test
+    void syncBaselineAcks(){
+        SyncBaseline server = new SyncBaseline(), client = new SyncBaseline();
+
+        //keyframe, received and acknowledged
+        server.add(0, -1).put(1, new byte[]{1});
+        client.add(0, -1).put(1, new byte[]{1});
+        assertTrue(server.resolve(0));
+
+        //lost; the next packet is still encoded against the acknowledged one
+        server.add(1, 0).put(1, new byte[]{2});
+        server.add(2, 0).put(2, new byte[]{3});
+        assertTrue(client.resolve(0));
+        client.add(2, 0).put(2, new byte[]{3});
+
+        //the lost packet is never acknowledged, so neither side ever uses it
+        assertTrue(server.resolve(2));
+        assertFalse(server.resolve(1));
+        assertTrue(client.resolve(2));
+
+        assertEquals(2, server.id);
+        assertArrayEquals(server.data.get(1), client.data.get(1));
+        assertArrayEquals(server.data.get(2), client.data.get(2));
+        assertArrayEquals(new byte[]{1}, client.data.get(1));
+
+        //a later keyframe replaces everything
+        server.add(3, -1).put(2, new byte[]{4});
+        assertTrue(server.resolve(3));
+        assertNull(server.data.get(1));
+    }
+
     @Test
     void serverListJson(){
         String[] files = {"servers_v6.json", "servers_v7.json"};
@@ -375,6 +418,386 @@ public class ApplicationTests{
         assertTrue(state.teams.playerCores().size > 0);
     }
 
+    @Test
+    void saveCapturedLoad() throws IOException{
+        world.loadMap(testMap);
+
+        float hp = 30f;
+        Unit unit = UnitTypes.dagger.spawn(Team.sharded, 20f, 30f);
+        unit.health = hp;
+
+        Fi file = saveDirectory.child("captured.msav");
+        var buffer = new ReusableByteOutStream();
+
+        Time.mark();
+        SaveIO.capture(buffer, new SaveOptions());
+        Log.info("Captured save in @ms (@ bytes)", Time.elapsed(), buffer.size());
+
+        //the state can change freely while the capture is being written
+        unit.health = 1f;
+
+        SaveIO.writeCaptured(file, buffer);
+        assertTrue(SaveIO.isSaveValid(file));
+
+        resetWorld();
+        SaveIO.load(file);
+
+        Unit spawned = Groups.unit.find(u -> u.type == UnitTypes.dagger);
+        assertNotNull(spawned, "Saved daggers must persist");
+        assertEquals(hp, spawned.health, "Dagger health must be saved as it was during capture.");
+        assertTrue(state.teams.playerCores().size > 0);
+    }
+
+    @Test
+    void regionSaveBench() throws IOException{
+        resetWorld();
+        int size = 1000;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        Rand rand = new Rand(0);
+        for(Tile tile : tiles){
+            if(rand.chance(0.1)) tile.setFloor((Floor)Blocks.sand);
+            if(rand.chance(0.02)) tile.setOverlay(Blocks.oreCopper);
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        for(int i = 0; i < 20_000; i++){
+            Tile tile = world.tile(rand.random(size - 1), rand.random(size - 1));
+            tile.setBlock(rand.chance(0.5) ? Blocks.copperWall : Blocks.conveyor, Team.sharded, rand.random(3));
+        }
+        world.tile(size / 2, size / 2).setBlock(Blocks.coreShard, Team.sharded);
+
+        int[] expected = tileState();
+
+        for(int version : new int[]{13, 14}){
+            var out = new ByteArrayOutputStream();
+
+            Time.mark();
+            try(var stream = new DataOutputStream(new FastDeflaterOutputStream(out))){
+                stream.write(SaveIO.header);
+                stream.writeInt(version);
+                SaveIO.getSaveWriter(version).write(stream, new SaveOptions());
+            }
+            float saveTime = Time.elapsed();
+
+            resetWorld();
+            Time.mark();
+            SaveIO.load(new InflaterInputStream(new ByteArrayInputStream(out.toByteArray())), world.context);
+            float loadTime = Time.elapsed();
+
+            assertArrayEquals(expected, tileState(), "Version " + version + " must restore every tile.");
+            Log.info("Save version @, @x@ map: save @ms, load @ms, @", version, size, size, saveTime, loadTime, Strings.formatByteCount(out.size()));
+        }
+    }
+
+    @Test
+    void regionSaveBoundaries() throws IOException{
+        resetWorld();
+        int edge = Save14.regionSize, size = edge * 2 + 10;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //multiblocks of every size whose tiles lie in two or four regions; even sizes extend further to the top right
+        world.tile(edge - 1, edge - 1).setBlock(Blocks.mechanicalDrill, Team.sharded);
+        world.tile(edge * 2, edge).setBlock(Blocks.coreShard, Team.sharded);
+        world.tile(edge, edge * 2 - 1).setBlock(Blocks.coreFoundation, Team.sharded);
+        world.tile(edge * 2, edge * 2).setBlock(Blocks.coreNucleus, Team.sharded);
+        world.tile(20, edge - 1).setBlock(Blocks.siliconSmelter, Team.sharded);
+        world.tile(edge, 20).setBlock(Blocks.thoriumReactor, Team.sharded);
+
+        //tile data on both sides of every region boundary, including tiles that are next to each other and would otherwise be run-length encoded
+        Rand rand = new Rand(1);
+        for(int i = 0; i < size; i++){
+            for(int line : new int[]{edge - 1, edge, edge * 2 - 1, edge * 2}){
+                for(Tile tile : new Tile[]{world.tile(line, i), world.tile(i, line)}){
+                    if(tile.build != null || rand.chance(0.3)) continue;
+
+                    if(rand.chance(0.5)){
+                        tile.setBlock(Blocks.coloredWall);
+                        tile.extraData = rand.nextInt();
+                    }else{
+                        tile.setBlock(Blocks.cliff);
+                        tile.data = (byte)rand.random(255);
+                    }
+                }
+            }
+        }
+        world.tile(5, edge).setFloor((Floor)Blocks.coloredFloor);
+        world.tile(5, edge).extraData = 0x12345678;
+
+        int[] expected = tileState();
+
+        for(int version : new int[]{13, 14, 15}){
+            var out = new ByteArrayOutputStream();
+            try(var stream = new DataOutputStream(new FastDeflaterOutputStream(out))){
+                stream.write(SaveIO.header);
+                stream.writeInt(version);
+                SaveIO.getSaveWriter(version).write(stream, new SaveOptions());
+            }
+
+            resetWorld();
+            SaveIO.load(new InflaterInputStream(new ByteArrayInputStream(out.toByteArray())), world.context);
+            assertArrayEquals(expected, tileState(), "Version " + version + " must restore tile data and multiblocks on region boundaries.");
+        }
+
+        //saves without a journal are compressed as a whole, so they keep the format without regions
+        var out = new ByteArrayOutputStream();
+        SaveIO.write(new FastDeflaterOutputStream(out), new SaveOptions());
+        assertEquals(SaveIO.streamVersion, SaveIO.getMeta(new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(out.toByteArray())))).version);
+    }
+
+    @Test
+    void incrementalSave(){
+        resetWorld();
+        Tiles tiles = world.resize(300, 300);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        Rand rand = new Rand(0);
+        for(int i = 0; i < 500; i++){
+            world.tile(rand.random(299), rand.random(299)).setBlock(Blocks.copperWall, Team.sharded);
+        }
+        world.tile(150, 150).setBlock(Blocks.coreShard, Team.sharded);
+        world.tile(40, 250).setBlock(Blocks.container, Team.sharded);
+        world.tile(100, 200).setBlock(Blocks.copperWallLarge, Team.sharded);
+        world.tile(5, 295).setFloor((Floor)Blocks.coloredFloor);
+
+        SaveJournal journal = new SaveJournal();
+        Fi base = saveDirectory.child("incremental-base.msav"), delta = saveDirectory.child("incremental-delta.msav"), moved = saveDirectory.child("incremental-moved");
+
+        try{
+            journal.begin(base);
+            assertTrue(journal.full);
+            SaveIO.write(base, journal.options());
+
+            world.tile(10, 10).setFloor((Floor)Blocks.sand);
+            world.tile(200, 20).setBlock(Blocks.conveyor, Team.sharded, 2);
+            world.tile(280, 290).setBlock(Blocks.air);
+
+            //buildings that do not update only change through events that the journal tracks
+            world.tile(40, 250).build.handleStack(Items.copper, 30, null);
+            world.tile(100, 200).build.damage(50f);
+            world.tile(5, 295).setPackedData(world.tile(5, 295).getPackedData() + 1);
+
+            journal.begin(delta);
+            assertFalse(journal.full, "Second save must only contain changes.");
+            SaveIO.write(delta, journal.options());
+
+            assertEquals(base.name(), SaveIO.getMeta(delta).tags.get(SaveJournal.baseTag));
+            assertTrue(delta.length() < base.length(), "Incremental save must be smaller than its base.");
+
+            int[] expected = tileState();
+            float health = world.tile(100, 200).build.health;
+            resetWorld();
+            SaveIO.load(delta);
+            assertArrayEquals(expected, tileState(), "Incremental save must restore every tile.");
+            assertEquals(30, world.tile(40, 250).build.items.get(Items.copper), "Items in a building that does not update must be saved.");
+            assertEquals(health, world.tile(100, 200).build.health, "Damage to a building that does not update must be saved.");
+
+            //the base is found next to the incremental save, not only in the save directory
+            base.moveTo(moved.child(base.name()));
+            delta.moveTo(moved.child(delta.name()));
+            resetWorld();
+            SaveIO.load(moved.child(delta.name()));
+            assertArrayEquals(expected, tileState(), "Incremental save must be loaded with the base next to it.");
+        }finally{
+            journal.reset();
+            base.delete();
+            delta.delete();
+            moved.deleteDirectory();
+        }
+    }
+
+    @Test
+    void dynamicFogRedraw(){
+        resetWorld();
+        Tiles tiles = world.resize(300, 200);
+        world.beginMapLoad();
+        tiles.fill();
+        state.rules.fog = true;
+        world.endMapLoad();
+        state.set(State.playing);
+
+        Rand rand = new Rand(2);
+        var units = new Seq<Unit>();
+        for(int i = 0; i < 40; i++){
+            units.add(UnitTypes.dagger.spawn(i % 2 == 0 ? Team.sharded : Team.blue, rand.random(299) * tilesize, rand.random(199) * tilesize));
+        }
+        Unit a = units.first();
+        int radius = (int)UnitTypes.dagger.fogRadius;
+
+        try{
+            state.teams.updateTeamStats();
+            //the first update after loading draws on the calling thread
+            fogControl.update();
+
+            assertTrue(fogControl.isVisibleTile(Team.sharded, a.tileX(), a.tileY()));
+            assertTrue(fogControl.isVisibleTile(Team.sharded, a.tileX(), Math.min(a.tileY() + radius, 199)));
+
+            for(int step = 0; step < 30; step++){
+                //some units stay in their cell, some move a little and some jump across the map
+                for(var unit : units){
+                    if(rand.chance(0.3)){
+                        unit.set(rand.random(299) * tilesize, rand.random(199) * tilesize);
+                    }else if(rand.chance(0.5)){
+                        unit.set(Mathf.clamp(unit.x + rand.range(8f) * tilesize, 0, 299 * tilesize), Mathf.clamp(unit.y + rand.range(8f) * tilesize, 0, 199 * tilesize));
+                    }
+                }
+                if(step == 20){
+                    units.pop().remove();
+                }
+                state.teams.updateTeamStats();
+
+                fogControl.flushDynamic(false);
+                boolean[] partial = fogState();
+                fogControl.flushDynamic(true);
+
+                assertArrayEquals(fogState(), partial, "Partial redraw must match a full redraw at step " + step + ".");
+            }
+        }finally{
+            units.each(Unit::remove);
+            state.rules.fog = false;
+        }
+    }
+
+    boolean[] fogState(){
+        int size = world.width() * world.height();
+        boolean[] out = new boolean[size * 2];
+        for(int i = 0; i < size; i++){
+            out[i] = fogControl.isVisibleTile(Team.sharded, i % world.width(), i / world.width());
+            out[size + i] = fogControl.isVisibleTile(Team.blue, i % world.width(), i / world.width());
+        }
+        return out;
+    }
+
+    @Test
+    void idleDrillSleeps(){
+        resetWorld();
+        Tiles tiles = world.resize(20, 20);
+        world.beginMapLoad();
+        tiles.fill();
+        for(int x = 5; x < 7; x++){
+            for(int y = 5; y < 7; y++){
+                tiles.get(x, y).setOverlay(Blocks.oreCopper);
+            }
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        world.tile(5, 5).setBlock(Blocks.mechanicalDrill, Team.sharded);
+        Building drill = world.build(5, 5);
+
+        logic.sleepScheduler.enabled = true;
+        try{
+            //fills up with nowhere to dump, then spins down
+            for(int i = 0; i < 20000 && drill.isAdded(); i++){
+                Time.update();
+                logic.sleepScheduler.update();
+                Groups.build.update();
+            }
+
+            assertFalse(drill.isAdded(), "Full drill must sleep.");
+            assertEquals(drill.block.itemCapacity, drill.items.total());
+            assertEquals(1, logic.sleepScheduler.sleeping);
+
+            //the timer wakes it up to check its outputs, and it goes back to sleep during that update
+            int woken = 0;
+            for(int i = 0; i <= drill.block.idleSleepInterval; i++){
+                Time.update();
+                logic.sleepScheduler.update();
+                woken += logic.sleepScheduler.lastWoken;
+                Groups.build.update();
+            }
+            assertEquals(1, woken);
+            assertFalse(drill.isAdded());
+
+            //taking items wakes it right away
+            drill.removeStack(Items.copper, drill.items.total());
+            assertTrue(drill.isAdded());
+            assertEquals(0, logic.sleepScheduler.sleeping);
+
+            //sleeping buildings that are removed no longer count
+            for(int i = 0; i < 20000 && drill.isAdded(); i++){
+                Time.update();
+                logic.sleepScheduler.update();
+                Groups.build.update();
+            }
+            world.tile(5, 5).setAir();
+            assertEquals(0, logic.sleepScheduler.sleeping);
+        }finally{
+            logic.sleepScheduler.enabled = false;
+        }
+    }
+
+    @Test
+    void idleDrillWakesOnPower(){
+        resetWorld();
+        Tiles tiles = world.resize(20, 20);
+        world.beginMapLoad();
+        tiles.fill();
+        for(int x = 4; x < 7; x++){
+            for(int y = 4; y < 7; y++){
+                tiles.get(x, y).setOverlay(Blocks.oreCopper);
+            }
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        world.tile(5, 5).setBlock(Blocks.laserDrill, Team.sharded);
+        Building drill = world.build(5, 5);
+
+        logic.sleepScheduler.enabled = true;
+        try{
+            //without power, it never spins up
+            for(int i = 0; i < 20000 && drill.isAdded(); i++){
+                Time.update();
+                logic.sleepScheduler.update();
+                Groups.powerGraph.update();
+                Groups.build.update();
+            }
+
+            assertFalse(drill.isAdded(), "Unpowered drill must sleep.");
+            assertEquals(0, drill.items.total());
+
+            world.tile(7, 5).setBlock(Blocks.powerSource, Team.sharded);
+            Groups.powerGraph.update();
+
+            //no time passes, so only the power change can wake it
+            Time.delta = 0f;
+            logic.sleepScheduler.update();
+            assertEquals(0, logic.sleepScheduler.lastWoken);
+            assertTrue(drill.isAdded(), "Power returning must wake the drill.");
+        }finally{
+            logic.sleepScheduler.enabled = false;
+        }
+    }
+
+    /** @return floor, overlay, block, building rotation and center, and all tile data of every tile. */
+    int[] tileState(){
+        int stride = 9;
+        int[] out = new int[world.width() * world.height() * stride];
+        for(int i = 0; i < world.width() * world.height(); i++){
+            Tile tile = world.tiles.geti(i);
+            out[i * stride] = tile.floorID();
+            out[i * stride + 1] = tile.overlayID();
+            out[i * stride + 2] = tile.blockID();
+            out[i * stride + 3] = tile.build == null ? -1 : tile.build.rotation;
+            out[i * stride + 4] = tile.build == null ? -1 : tile.build.tile.pos();
+            out[i * stride + 5] = tile.data;
+            out[i * stride + 6] = tile.floorData;
+            out[i * stride + 7] = tile.overlayData;
+            out[i * stride + 8] = tile.extraData;
+        }
+        return out;
+    }
+
     void updateBlocks(int times){
         for(Tile tile : world.tiles){
             if(tile.build != null && tile.isCenter()){
@@ -619,6 +1042,1113 @@ public class ApplicationTests{
         assertNotEquals(0, itemsa[0]);
     }
 
+    @Test
+    void parallelBuildingDeterminism(){
+        int[][] results = new int[3][];
+
+        try{
+            //plain Groups.build.update(), then the scheduler on one thread and on the executor
+            for(int mode = 0; mode < 3; mode++){
+                results[mode] = runConveyorRings(mode > 0, mode == 2);
+            }
+        }finally{
+            logic.buildScheduler.enabled = false;
+            logic.buildScheduler.multithreaded = true;
+            logic.buildScheduler.minParallelBuildings = 1024;
+        }
+
+        assertNotEquals(0, results[0].length, "Conveyors must be placed.");
+        assertArrayEquals(results[0], results[1], "Scheduled building updates must match a serial update.");
+        assertArrayEquals(results[0], results[2], "Parallel building updates must match a serial update.");
+    }
+
+    @Test
+    void parallelBuildingTransfers(){
+        int[][] results = new int[3][];
+        int deferred;
+
+        try{
+            for(int mode = 0; mode < 3; mode++){
+                results[mode] = runConveyorLines(mode > 0, mode == 2);
+            }
+            deferred = logic.buildScheduler.lastDeferred;
+        }finally{
+            logic.buildScheduler.enabled = false;
+            logic.buildScheduler.multithreaded = true;
+            logic.buildScheduler.minParallelBuildings = 1024;
+        }
+
+        //the first value is the amount of lines, the second the amount of items in all vaults
+        int lines = results[0][0];
+        assertNotEquals(0, results[0][1], "Conveyors must deliver items.");
+        assertTrue(deferred > 0, "Items entering vaults must be deferred.");
+        assertArrayEquals(results[1], results[2], "Parallel building updates must not depend on the amount of threads.");
+        //deferred items still arrive in the same frame, only later in it
+        assertTrue(Math.abs(results[0][1] - results[1][1]) <= lines * 2, "Deferred transfers must deliver as many items as a serial update: " + results[0][1] + " != " + results[1][1]);
+    }
+
+    int[] runConveyorRings(boolean scheduled, boolean multithreaded){
+        resetWorld();
+        int size = 128;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //2x2 conveyor loops that start out loaded and touch no other block
+        for(int y = 0; y + 2 < size; y += 3){
+            for(int x = 0; x + 2 < size; x += 3){
+                world.tile(x, y).setBlock(Blocks.conveyor, Team.sharded, 0);
+                world.tile(x + 1, y).setBlock(Blocks.conveyor, Team.sharded, 1);
+                world.tile(x + 1, y + 1).setBlock(Blocks.conveyor, Team.sharded, 2);
+                world.tile(x, y + 1).setBlock(Blocks.conveyor, Team.sharded, 3);
+
+                for(int i = 0; i < 4; i++){
+                    world.tile(x + (i == 1 || i == 2 ? 1 : 0), y + i / 2).build.handleStack(Items.copper, 2, null);
+                }
+            }
+        }
+
+        logic.buildScheduler.enabled = scheduled;
+        logic.buildScheduler.multithreaded = multithreaded;
+        logic.buildScheduler.minParallelBuildings = 0;
+
+        for(int i = 0; i < 600; i++){
+            Time.update();
+            logic.buildScheduler.update();
+        }
+
+        IntSeq out = new IntSeq();
+        for(int i = 0; i < size * size; i++){
+            if(world.tiles.geti(i).build instanceof ConveyorBuild conv && conv.tile.array() == i){
+                out.add(i);
+                out.add(conv.items.total());
+                for(int j = 0; j < conv.len; j++){
+                    out.add(conv.ids[j].id);
+                    out.add(Float.floatToIntBits(conv.xs[j]));
+                    out.add(Float.floatToIntBits(conv.ys[j]));
+                }
+            }
+        }
+        return out.toArray();
+    }
+
+    int[] runConveyorLines(boolean scheduled, boolean multithreaded){
+        resetWorld();
+        int size = 128, length = 30;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //pairs of lines from an item source into the same vault, so that two batches may feed it
+        Seq<Building> vaults = new Seq<>();
+        int lines = 0;
+        for(int y = 0; y + 2 < size; y += 4){
+            for(int x = 0; x + length + 3 < size; x += length + 4){
+                for(int line = 0; line < 2; line++){
+                    int ly = y + line * 2;
+                    world.tile(x, ly).setBlock(Blocks.itemSource, Team.sharded);
+                    world.tile(x, ly).build.configureAny(Items.copper);
+                    for(int i = 1; i <= length; i++){
+                        world.tile(x + i, ly).setBlock(Blocks.conveyor, Team.sharded, 0);
+                    }
+                    lines ++;
+                }
+
+                world.tile(x + length + 2, y + 1).setBlock(Blocks.vault, Team.sharded);
+                vaults.add(world.build(x + length + 2, y + 1));
+            }
+        }
+
+        logic.buildScheduler.enabled = scheduled;
+        logic.buildScheduler.multithreaded = multithreaded;
+        logic.buildScheduler.minParallelBuildings = 0;
+
+        for(int i = 0; i < 600; i++){
+            Time.update();
+            logic.buildScheduler.update();
+        }
+
+        IntSeq out = IntSeq.with(lines, vaults.sum(v -> v.items.total()));
+        for(var vault : vaults){
+            out.add(vault.items.total());
+        }
+        for(int i = 0; i < size * size; i++){
+            if(world.tiles.geti(i).build instanceof ConveyorBuild conv && conv.tile.array() == i){
+                out.add(conv.len);
+                for(int j = 0; j < conv.len; j++){
+                    out.add(Float.floatToIntBits(conv.xs[j]));
+                    out.add(Float.floatToIntBits(conv.ys[j]));
+                }
+            }
+        }
+        return out.toArray();
+    }
+
+    @Test
+    void parallelUnitDeterminism(){
+        int[] serial, parallel;
+
+        try{
+            serial = runUnitBattle(false);
+            parallel = runUnitBattle(true);
+        }finally{
+            logic.unitScheduler.enabled = false;
+            logic.unitScheduler.minParallelUnits = 256;
+        }
+
+        assertArrayEquals(serial, parallel, "Parallel unit AI must match the serial update.");
+    }
+
+    @Test
+    void parallelLogicDeterminism(){
+        String[] serial, single, parallel;
+        try{
+            serial = runProcessors(false, false);
+            single = runProcessors(true, false);
+            parallel = runProcessors(true, true);
+        }finally{
+            logic.logicScheduler.enabled = false;
+            logic.logicScheduler.multithreaded = true;
+            logic.logicScheduler.minParallelProcessors = 32;
+        }
+
+        assertArrayEquals(serial, single, "Isolated processor phase must match the serial update.");
+        assertArrayEquals(serial, parallel, "Parallel processors must match the serial update.");
+    }
+
+    String[] runProcessors(boolean scheduled, boolean multithreaded){
+        resetWorld();
+        int size = 60;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.rules.waves = false;
+        state.set(State.playing);
+
+        var processors = new Seq<LogicBuild>();
+        var cells = new Seq<MemoryBuild>();
+        for(int x = 2; x < size - 2; x += 2){
+            for(int y = 2; y < size - 2; y += 2){
+                world.tile(x + 1, y).setBlock(Blocks.memoryCell, Team.sharded);
+                cells.add((MemoryBuild)world.tile(x + 1, y).build);
+
+                world.tile(x, y).setBlock(Blocks.microProcessor, Team.sharded);
+                var build = (LogicBuild)world.tile(x, y).build;
+
+                //a third links a private cell, a third also links the cell of the processor to its left, which is then shared
+                int kind = processors.size % 3;
+                if(kind != 2) build.links.add(new LogicLink(x + 1, y, "cell1", true));
+                if(kind == 1 && x > 2) build.links.add(new LogicLink(x - 1, y, "cell2", true));
+
+                //the sensor instruction is not isolated, so the rest of the budget has to continue serially
+                build.updateCode("set k " + processors.size + "\n" + """
+                op add i i 1
+                op mul x i k
+                op mod x x 13
+                print x
+                read m cell1 0
+                op add m m x
+                write m cell1 0
+                write i cell2 1
+                jump 11 lessThan x 6
+                sensor px @this @x
+                op add s s px
+                jump 1 lessThan i 2000
+                wait 0.1
+                set i 0
+                """);
+                processors.add(build);
+            }
+        }
+
+        logic.logicScheduler.enabled = scheduled;
+        logic.logicScheduler.multithreaded = multithreaded;
+        logic.logicScheduler.minParallelProcessors = 0;
+
+        int linked = 0;
+        for(int i = 0; i < 240; i++){
+            Time.update();
+            state.updateId ++;
+            logic.logicScheduler.update();
+            linked = Math.max(linked, logic.logicScheduler.lastLinked);
+            Groups.build.update();
+        }
+
+        if(scheduled){
+            assertTrue(logic.logicScheduler.lastIsolated > 0, "Processors without shared links must run in the isolated phase.");
+            assertTrue(linked > 0, "Processors with private memory cells must run in the isolated phase.");
+        }
+
+        String[] out = new String[processors.size + cells.size];
+        for(int i = 0; i < processors.size; i++){
+            var build = processors.get(i);
+            StringBuilder result = new StringBuilder().append(build.accumulator).append(' ').append(build.executor.textBuffer);
+            for(var v : build.executor.vars){
+                result.append(' ').append(v);
+            }
+            out[i] = result.toString();
+        }
+        for(int i = 0; i < cells.size; i++){
+            out[processors.size + i] = java.util.Arrays.toString(cells.get(i).memory);
+        }
+        return out;
+    }
+
+    int[] runUnitBattle(boolean parallel){
+        resetWorld();
+        int size = 120, amount = 1200;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.rules.waves = false;
+        state.set(State.playing);
+
+        Mathf.rand.setSeed(0);
+        Rand rand = new Rand(0);
+        Unit[] units = new Unit[amount];
+        for(int i = 0; i < amount; i++){
+            boolean left = i % 2 == 0;
+            units[i] = UnitTypes.flare.spawn(left ? Team.sharded : Team.crux, (left ? 40f : 80f) * tilesize + rand.range(100f), size * tilesize / 2f + rand.range(300f));
+        }
+
+        logic.unitScheduler.enabled = parallel;
+        logic.unitScheduler.minParallelUnits = 0;
+
+        Time.mark();
+        for(int i = 0; i < 300; i++){
+            Time.update();
+            state.updateId ++;
+            state.teams.updateTeamStats();
+            logic.unitScheduler.update();
+            Groups.bullet.update();
+            Groups.bullet.collide();
+        }
+        Log.info("@ units, parallel: @: @ms", amount, parallel, Time.elapsed());
+
+        int[] out = new int[amount * 3];
+        for(int i = 0; i < amount; i++){
+            out[i * 3] = Float.floatToIntBits(units[i].x);
+            out[i * 3 + 1] = Float.floatToIntBits(units[i].y);
+            out[i * 3 + 2] = Float.floatToIntBits(units[i].health);
+        }
+
+        Groups.unit.clear();
+        Groups.bullet.clear();
+        return out;
+    }
+
+    @Test
+    void scheduledPowerGraphs(){
+        int[] serial, scheduled;
+
+        try{
+            serial = runPowerGraphs(false);
+            scheduled = runPowerGraphs(true);
+        }finally{
+            logic.powerScheduler.enabled = false;
+            logic.powerScheduler.minParallelGraphs = 64;
+        }
+
+        assertArrayEquals(serial, scheduled, "Scheduled power graphs must match a serial update.");
+    }
+
+    int[] runPowerGraphs(boolean scheduled){
+        resetWorld();
+        int size = 128;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //separate strips of panels, a battery and menders, with a different balance in each
+        int graphs = 0;
+        for(int y = 0; y < size; y += 2){
+            for(int x = 0; x + 7 <= size; x += 8){
+                int panels = 1 + graphs % 5;
+                for(int i = 0; i < 7; i++){
+                    world.tile(x + i, y).setBlock(i < panels ? Blocks.solarPanel : i == panels ? Blocks.battery : Blocks.mender, Team.sharded);
+                }
+                graphs ++;
+            }
+        }
+
+        assertEquals(graphs, Groups.powerGraph.size());
+
+        logic.powerScheduler.enabled = scheduled;
+        logic.powerScheduler.minParallelGraphs = 0;
+
+        for(int i = 0; i < 300; i++){
+            Time.update();
+            logic.powerScheduler.update();
+            Groups.build.update();
+        }
+
+        IntSeq out = new IntSeq();
+        for(var build : Groups.build){
+            out.add(build.tile.array());
+            out.add(Float.floatToIntBits(build.power.status));
+            out.add(Float.floatToIntBits(build.power.graph.getLastPowerStored()));
+            out.add(Float.floatToIntBits(build.power.graph.getLastPowerProduced()));
+        }
+        return out.toArray();
+    }
+
+    @Test
+    void pathfinderWorkersBench(){
+        int fields = 8, workers = pathfinder.workers;
+        int[][] serial, parallel;
+
+        try{
+            serial = completeFlowfields(fields, 1);
+            parallel = completeFlowfields(fields, fields);
+        }finally{
+            pathfinder.workers = workers;
+        }
+
+        for(int i = 0; i < fields; i++){
+            assertArrayEquals(serial[i], parallel[i], "Flow field " + i + " must not depend on the amount of workers");
+        }
+    }
+
+    int[][] completeFlowfields(int fields, int workers){
+        int size = 500;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+
+        //walls with gaps, so fields don't just flood an empty map
+        for(int x = 20; x < size - 20; x += 20){
+            for(int y = 0; y < size; y++){
+                if((y + x * 3) % 97 > 6) tiles.getn(x, y).setBlock(Blocks.stoneWall);
+            }
+        }
+        world.endMapLoad();
+        world.tile(size - 10, size / 2).setBlock(Blocks.coreShard, Team.sharded, 0);
+
+        //keep the pathfinding thread idle
+        state.set(State.paused);
+
+        pathfinder.workers = workers;
+        var result = new Pathfinder.Flowfield[fields];
+        for(int i = 0; i < fields; i++){
+            result[i] = pathfinder.getField(Team.get(10 + i), i % 2 == 0 ? Pathfinder.costGround : Pathfinder.costLegs, Pathfinder.fieldCore);
+        }
+
+        Time.mark();
+        pathfinder.updateAll();
+        Log.info("@ flow fields on a @x@ map completed in @ms with @ worker(s)", fields, size, size, Time.elapsed(), workers);
+
+        int[][] weights = new int[fields][];
+        for(int i = 0; i < fields; i++){
+            assertTrue(result[i].hasCompleteWeights());
+            weights[i] = result[i].completeWeights.clone();
+        }
+        return weights;
+    }
+
+    @Test
+    void flowfieldRepair(){
+        int size = 200;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        for(int x = 20; x < size - 20; x += 20){
+            for(int y = 0; y < size; y++){
+                if((y + x * 3) % 61 > 5) tiles.getn(x, y).setBlock(Blocks.stoneWall);
+            }
+        }
+        tiles.getn(size - 10, size / 2).setBlock(Blocks.coreShard, Team.sharded, 0);
+        world.endMapLoad();
+
+        //keep the pathfinding thread idle
+        state.set(State.paused);
+
+        var field = pathfinder.getField(Team.crux, Pathfinder.costGround, Pathfinder.fieldCore);
+        pathfinder.updateAll();
+        assertTrue(field.hasCompleteWeights());
+
+        Rand rand = new Rand(7);
+        for(int round = 0; round < 10; round++){
+            //open and close gaps in walls, and build in open space
+            for(int i = 0; i < 30; i++){
+                Tile tile = world.tile(20 + 20 * rand.random(7), rand.random(size - 1));
+                tile.setBlock(tile.solid() ? Blocks.air : Blocks.stoneWall);
+            }
+            for(int i = 0; i < 10; i++){
+                world.tile(rand.random(21, size - 22), rand.random(size - 2)).setBlock(Blocks.copperWall, Team.sharded);
+            }
+
+            pathfinder.incrementalRepair = true;
+            pathfinder.refreshFields();
+            Time.mark();
+            pathfinder.updateAll();
+            float repairTime = Time.elapsed();
+            int[] repaired = field.completeWeights.clone();
+
+            pathfinder.incrementalRepair = false;
+            pathfinder.refreshFields();
+            Time.mark();
+            pathfinder.updateAll();
+            float fullTime = Time.elapsed();
+
+            Log.info("Flow field repaired in @ms, recomputed in @ms", repairTime, fullTime);
+            assertArrayEquals(field.completeWeights, repaired, "Repaired flow field must match a full recompute (round " + round + ")");
+        }
+
+        pathfinder.incrementalRepair = true;
+    }
+
+    @Test
+    void controlPathfinderBench(){
+        int defaultWorkers = ControlPathfinder.workers;
+        try{
+            controlPathRequests(1);
+            controlPathRequests(Math.max(defaultWorkers, 2));
+        }finally{
+            ControlPathfinder.workers = defaultWorkers;
+        }
+    }
+
+    void controlPathRequests(int workers){
+        resetWorld();
+        ControlPathfinder.workers = workers;
+
+        int size = 300, requests = 200;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        //walls with gaps between the units and their destinations, so no request can be satisfied with a raycast
+        for(int x = 40; x < size - 20; x += 30){
+            for(int y = 0; y < size; y++){
+                if((y + x) % 53 > 4) tiles.getn(x, y).setBlock(Blocks.stoneWall);
+            }
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        Rand rand = new Rand(requests);
+        Unit[] units = new Unit[requests];
+        Vec2[] targets = new Vec2[requests];
+        for(int i = 0; i < requests; i++){
+            units[i] = UnitTypes.dagger.spawn(Team.sharded, (5 + rand.random(25)) * tilesize, rand.random(5, size - 5) * tilesize);
+            //every unit is its own command group, with its own destination field
+            targets[i] = new Vec2((size - 15 + rand.random(5)) * tilesize, rand.random(5, size - 5) * tilesize);
+        }
+
+        long[] times = new long[requests];
+        for(int i = 0; i < requests; i++){
+            times[i] = -1;
+        }
+
+        long start = Time.nanos();
+        int remaining = requests;
+        while(remaining > 0 && Time.timeSinceNanos(start) < Time.millisToNanos(60_000)){
+            for(int i = 0; i < requests; i++){
+                if(times[i] < 0){
+                    var result = controlPath.getPathPosition(units[i], targets[i]);
+                    if(result.move || result.unreachable){
+                        times[i] = Time.timeSinceNanos(start);
+                        remaining --;
+                    }
+                }
+            }
+            Threads.sleep(1);
+        }
+
+        assertEquals(0, remaining, "All path requests must be resolved");
+
+        java.util.Arrays.sort(times);
+        Log.info("@ path requests with @ worker(s): first path after @ms, median @ms, p99 @ms, all after @ms", requests, workers,
+            times[0] / Time.nanosPerMilli, times[requests / 2] / Time.nanosPerMilli, times[(int)(requests * 0.99f) - 1] / Time.nanosPerMilli, times[requests - 1] / Time.nanosPerMilli);
+
+        for(Unit unit : units){
+            unit.remove();
+        }
+        state.set(State.menu);
+    }
+
+    @Test
+    void concurrentQueries() throws Exception{
+        resetWorld();
+        int size = 150, amount = 600, queries = 2000, threads = 4;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        Rand rand = new Rand(1);
+        for(int i = 0; i < 300; i++){
+            tiles.getn(rand.random(size - 1), rand.random(size - 1)).setBlock(Blocks.copperWall, Team.crux);
+        }
+        world.endMapLoad();
+        state.set(State.playing);
+
+        for(int i = 0; i < amount; i++){
+            (i % 2 == 0 ? UnitTypes.dagger : UnitTypes.flare).spawn(i % 3 == 0 ? Team.sharded : Team.crux, rand.random(size * tilesize), rand.random(size * tilesize));
+        }
+        state.teams.updateTeamStats();
+
+        float[] xs = new float[queries], ys = new float[queries];
+        for(int i = 0; i < queries; i++){
+            xs[i] = rand.random(size * tilesize);
+            ys[i] = rand.random(size * tilesize);
+        }
+
+        Teamc[] expected = new Teamc[queries];
+        int[] expectedBlocks = new int[queries];
+        for(int i = 0; i < queries; i++){
+            expected[i] = Units.closestTarget(Team.sharded, xs[i], ys[i], 120f);
+            expectedBlocks[i] = countBlocks(xs[i], ys[i]);
+        }
+
+        //nested queries from inside a predicate must not clobber the outer query
+        for(int i = 0; i < queries; i++){
+            float x = xs[i], y = ys[i];
+            assertEquals(expected[i], Units.closestTarget(Team.sharded, x, y, 120f, u -> {
+                Units.closestEnemy(Team.crux, x, y, 60f, o -> true);
+                return u.isValid();
+            }, b -> countBlocks(x, y) >= 0));
+        }
+
+        var executor = Threads.executor("Query Test", threads);
+        var futures = new Seq<Future<?>>();
+        Teamc[] results = new Teamc[queries];
+        int[] resultBlocks = new int[queries];
+        for(int t = 0; t < threads; t++){
+            int offset = t;
+            futures.add(executor.submit(() -> {
+                var query = new SpatialQuery();
+                for(int i = offset; i < queries; i += threads){
+                    //alternate between the caller-provided and the per-thread context
+                    results[i] = i % 2 == 0 ?
+                        Units.closestTarget(query, Team.sharded, xs[i], ys[i], 120f, null, Unit::isValid, b -> true) :
+                        Units.closestTarget(Team.sharded, xs[i], ys[i], 120f);
+                    resultBlocks[i] = countBlocks(xs[i], ys[i]);
+                }
+            }));
+        }
+        for(var future : futures){
+            future.get();
+        }
+        executor.shutdown();
+
+        for(int i = 0; i < queries; i++){
+            assertEquals(expected[i], results[i], "Query " + i + " differs");
+            assertEquals(expectedBlocks[i], resultBlocks[i], "Block query " + i + " differs");
+        }
+
+        Groups.unit.clear();
+    }
+
+    static int countBlocks(float x, float y){
+        int[] count = {0};
+        indexer.eachBlock(null, x, y, 80f, b -> true, b -> count[0] ++);
+        return count[0];
+    }
+
+    @Test
+    void turretTargetingBench(){
+        resetWorld();
+        int size = 150, amount = 3000, iterations = 30;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        var turrets = new Seq<Building>();
+        for(int x = 10; x < size - 10; x += 3){
+            for(int y = 10; y < size - 10; y += 3){
+                world.tile(x, y).setBlock(Blocks.duo, Team.sharded);
+                turrets.add(world.tile(x, y).build);
+            }
+        }
+
+        Rand rand = new Rand(0);
+        for(int i = 0; i < amount; i++){
+            (i % 2 == 0 ? UnitTypes.dagger : UnitTypes.flare).spawn(Team.crux, rand.random(size * tilesize), rand.random(size * tilesize));
+        }
+        state.teams.updateTeamStats();
+
+        var targeting = indexer.turretTargeting;
+        Teamc[] expected = new Teamc[iterations * turrets.size], actual = new Teamc[expected.length];
+
+        targeting.enabled = false;
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            state.updateId ++;
+            for(int t = 0; t < turrets.size; t++){
+                var build = turrets.get(t);
+                expected[i * turrets.size + t] = targeting.bestTarget(Team.sharded, build.x, build.y, ((Ranged)build).range(), u -> !u.dead(), b -> true, UnitSorts.closest);
+            }
+        }
+        float separate = Time.elapsed();
+
+        targeting.enabled = true;
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            state.updateId ++;
+            for(int t = 0; t < turrets.size; t++){
+                var build = turrets.get(t);
+                actual[i * turrets.size + t] = targeting.bestTarget(Team.sharded, build.x, build.y, ((Ranged)build).range(), u -> !u.dead(), b -> true, UnitSorts.closest);
+            }
+        }
+        float shared = Time.elapsed();
+        targeting.enabled = false;
+
+        assertArrayEquals(expected, actual, "Shared candidate cells must select the same targets as separate queries.");
+        assertTrue(targeting.lastScans < targeting.lastQueries, "Turrets must share candidate cells.");
+        Log.info("@ turrets, @ units: separate queries @ms, shared cells @ms (@ scans for @ queries)", turrets.size, amount, separate, shared, targeting.lastScans, targeting.lastQueries);
+
+        Groups.unit.clear();
+    }
+
+    @Test
+    void bulletCollisionBench(){
+        int iterations = 5;
+        float[] expected = null;
+        float quadTime = 0f, gridTime = 0f;
+
+        for(int i = 0; i < iterations; i++){
+            float[] quad = runBulletCollisions(false, 200, 5f, 20_000);
+            quadTime += quad[quad.length - 1];
+            float[] grid = runBulletCollisions(true, 200, 5f, 20_000);
+            gridTime += grid[grid.length - 1];
+
+            quad[quad.length - 1] = grid[grid.length - 1] = 0f;
+            assertArrayEquals(quad, grid, "Broadphase must produce the same hits.");
+            expected = quad;
+        }
+
+        Log.info("@ units, 20000 bullets: quadtree collisions @ms, grid broadphase @ms", expected.length - 2, quadTime / iterations, gridTime / iterations);
+    }
+
+    @Test
+    void bulletCollisionFirstHit(){
+        resetWorld();
+        Tiles tiles = world.resize(20, 20);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        float x = 10 * tilesize, y = 10 * tilesize;
+        Unit far = UnitTypes.dagger.spawn(Team.crux, x, y + 3.5f), near = UnitTypes.dagger.spawn(Team.crux, x + 2f, y), middle = UnitTypes.dagger.spawn(Team.crux, x - 3f, y);
+        state.teams.updateTeamStats();
+
+        UnitTypes.dagger.weapons.first().bullet.create(null, Team.sharded, x, y, 0f);
+        Groups.bullet.updatePhysics();
+
+        //the quadtree hits whichever unit it finds first, the broadphase always the closest one
+        collisions.bulletBroadphase = true;
+        try{
+            Groups.bullet.collide();
+        }finally{
+            collisions.bulletBroadphase = false;
+        }
+
+        assertTrue(near.health < near.maxHealth, "The closest unit must be hit.");
+        assertEquals(far.maxHealth, far.health, "A bullet must stop at the first unit it hits.");
+        assertEquals(middle.maxHealth, middle.health, "A bullet must stop at the first unit it hits.");
+        assertEquals(0, Groups.bullet.size());
+
+        Groups.unit.clear();
+        Groups.bullet.clear();
+    }
+
+    /** @return the health of every unit, the amount of remaining bullets and the time taken by collisions. */
+    float[] runBulletCollisions(boolean broadphase, int size, float spacing, int bullets){
+        resetWorld();
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        var units = new Seq<Unit>();
+        int rows = (int)(size / spacing) - 1;
+        for(int x = 1; x < rows; x++){
+            for(int y = 1; y < rows; y++){
+                units.add(UnitTypes.dagger.spawn((x + y) % 2 == 0 ? Team.crux : Team.sharded, x * spacing * tilesize, y * spacing * tilesize));
+            }
+        }
+        state.teams.updateTeamStats();
+
+        Rand rand = new Rand(0);
+        var bullet = UnitTypes.dagger.weapons.first().bullet;
+        for(int i = 0; i < bullets; i++){
+            bullet.create(null, i % 2 == 0 ? Team.crux : Team.sharded, rand.random(size * tilesize), rand.random(size * tilesize), rand.random(360f));
+        }
+        Groups.bullet.updatePhysics();
+
+        collisions.bulletBroadphase = broadphase;
+        Time.mark();
+        Groups.bullet.collide();
+        float time = Time.elapsed();
+        collisions.bulletBroadphase = false;
+
+        float[] result = new float[units.size + 2];
+        for(int i = 0; i < units.size; i++){
+            result[i] = units.get(i).health;
+        }
+        result[units.size] = Groups.bullet.size();
+        result[units.size + 1] = time;
+
+        Groups.unit.clear();
+        Groups.bullet.clear();
+        return result;
+    }
+
+    @Test
+    void compiledLogicMatchesInterpreter(){
+        String code = """
+        set i 0
+        set s 0
+        op add i i 1
+        op mul t i 3
+        op mod t t 7
+        op emod u t -5
+        op max s s t
+        op add s s u
+        op add n null i
+        op idiv q s 3
+        op sqrt r q
+        op floor r r
+        jump 14 equal n null
+        op sub s s 1
+        jump 2 lessThan i 5000
+        op div z s 0
+        jump 18 greaterThan q 1000
+        set i 0
+        jump 2 always
+        """;
+
+        int steps = 500_000;
+        var interpreted = logicExecutor(code, false);
+        var compiled = logicExecutor(code, true);
+
+        for(int i = 0; i < 10_000; i++){
+            interpreted.runOnce();
+            compiled.runOnce();
+        }
+
+        //best of several alternating rounds, so that a single slow round on a busy machine does not decide the result
+        float interpretedTime = Float.MAX_VALUE, compiledTime = Float.MAX_VALUE;
+        for(int round = 0; round < 5; round++){
+            Time.mark();
+            for(int i = 0; i < steps; i++){
+                interpreted.runOnce();
+            }
+            interpretedTime = Math.min(interpretedTime, Time.elapsed());
+
+            Time.mark();
+            for(int i = 0; i < steps; i++){
+                compiled.runOnce();
+            }
+            compiledTime = Math.min(compiledTime, Time.elapsed());
+        }
+
+        assertLogicEquals(interpreted, compiled);
+
+        //timings are only logged: wall clock comparisons are not reliable enough to fail a build on
+        Log.info("@ logic instructions: interpreted @ms, compiled @ms", steps, interpretedTime, compiledTime);
+    }
+
+    @Test
+    void recompiledLogicKeepsState(){
+        String code = """
+        op add i i 1
+        op mul t i 3
+        op mod t t 7
+        op add s s t
+        jump 0 lessThan i 1000
+        set i 0
+        """;
+
+        var reference = logicExecutor(code, false);
+        var toggled = logicExecutor(code, false);
+
+        for(int i = 0; i < 20_000; i++){
+            reference.runOnce();
+            toggled.runOnce();
+
+            if(i == 7_777 || i == 15_555){
+                LExecutor.compileInstructions = i == 7_777;
+                try{
+                    toggled.recompile();
+                }finally{
+                    LExecutor.compileInstructions = false;
+                }
+                assertEquals(i == 7_777, toggled.program != toggled.instructions);
+            }
+        }
+
+        assertLogicEquals(reference, toggled);
+    }
+
+    void assertLogicEquals(LExecutor expected, LExecutor actual){
+        assertEquals(expected.vars.length, actual.vars.length);
+        for(int i = 0; i < expected.vars.length; i++){
+            var a = expected.vars[i];
+            var b = actual.vars[i];
+            assertEquals(a.name, b.name);
+            assertEquals(a.isobj, b.isobj, a.name);
+            assertEquals(a.numval, b.numval, a.name);
+            assertEquals(a.objval, b.objval, a.name);
+        }
+    }
+
+    LExecutor logicExecutor(String code, boolean compile){
+        var executor = new LExecutor();
+        LExecutor.compileInstructions = compile;
+        try{
+            executor.load(LAssembler.assemble(code, false));
+        }finally{
+            LExecutor.compileInstructions = false;
+        }
+        assertEquals(compile, executor.program != executor.instructions);
+        return executor;
+    }
+
+    @Test
+    void sharedWorldStream() throws IOException{
+        resetWorld();
+        Tiles tiles = world.resize(300, 300);
+        world.beginMapLoad();
+        tiles.fill();
+        world.endMapLoad();
+        state.set(State.playing);
+
+        Rand rand = new Rand(0);
+        for(int i = 0; i < 2000; i++){
+            world.tile(rand.random(299), rand.random(299)).setBlock(Blocks.copperWall, Team.sharded);
+        }
+
+        var cache = new WorldStreamCache();
+        int joins = 40;
+
+        Time.mark();
+        for(int i = 0; i < joins; i++){
+            var player = Player.create();
+            player.id = i;
+            NetworkIO.writeWorld(player, new FastDeflaterOutputStream(new ByteArrayOutputStream()));
+        }
+        float separate = Time.elapsed();
+
+        Time.mark();
+        for(int i = 0; i < joins; i++){
+            var player = Player.create();
+            player.id = i;
+
+            //a changed tile must not be served from the cached map
+            if(i == joins / 2) world.tile(150, 150).setBlock(Blocks.titaniumWall, Team.sharded);
+
+            var raw = new ByteArrayOutputStream();
+            var shared = cache.write(player);
+            if(i == 0) Log.info("World data: @ compressed", Strings.formatByteCount(shared.size()));
+
+            NetworkIO.writeWorld(player, raw);
+            assertArrayEquals(raw.toByteArray(), new InflaterInputStream(new ByteArrayInputStream(shared.toByteArray())).readAllBytes(), "Shared world data must inflate to the same bytes.");
+        }
+        float shared = Time.elapsed();
+
+        Log.info("@ joins: separate world data @ms, shared world data @ms (including verification)", joins, separate, shared);
+    }
+
+    @Test
+    void physicsWorldBench(){
+        int amount = 10_000, steps = 60;
+        float size = 400f * tilesize;
+        Rect bounds = new Rect(-finalWorldBounds, -finalWorldBounds, size + finalWorldBounds * 2f, size + finalWorldBounds * 2f);
+
+        var physics = new PhysicsProcess.PhysicsWorld(bounds);
+        var bodies = new Seq<PhysicsProcess.PhysicsWorld.PhysicsBody>();
+        var reference = new Seq<PhysicsProcess.PhysicsWorld.PhysicsBody>();
+
+        Rand rand = new Rand(0);
+        for(int i = 0; i < amount; i++){
+            //dense blob of ground units, like a wave pushing through a choke point
+            float x = size / 2f + rand.range(size / 8f), y = size / 2f + rand.range(size / 8f);
+            bodies.add(physicsBody(x, y));
+            reference.add(physicsBody(x, y));
+            //one boss-sized body, which must not make the grid coarser for everything else
+            if(i == 0) bodies.peek().radius = reference.peek().radius *= 16f;
+            physics.add(bodies.peek());
+        }
+
+        float initialOverlap = totalOverlap(bodies);
+
+        var quadTree = new QuadTreePhysicsWorld(bounds);
+        for(var body : reference) quadTree.add(body);
+
+        Time.mark();
+        for(int i = 0; i < steps; i++){
+            quadTree.update();
+        }
+        float quadTime = Time.elapsed();
+
+        Time.mark();
+        for(int i = 0; i < steps; i++){
+            physics.update();
+        }
+        float gridTime = Time.elapsed();
+
+        float gridOverlap = totalOverlap(bodies), quadOverlap = totalOverlap(reference);
+        Log.info("@ bodies, @ steps: quadtree @ms, grid @ms. Overlap: initial @, quadtree @, grid @", amount, steps, quadTime, gridTime, (int)initialOverlap, (int)quadOverlap, (int)gridOverlap);
+
+        assertTrue(gridOverlap < initialOverlap * 0.5f, "Bodies must be pushed apart.");
+        assertTrue(gridOverlap <= quadOverlap * 1.1f, "Grid must separate bodies as well as the quadtree.");
+    }
+
+    @Test
+    void physicsStripDeterminism(){
+        int amount = 20_000, steps = 30;
+        float size = 400f * tilesize;
+        Rect bounds = new Rect(-finalWorldBounds, -finalWorldBounds, size + finalWorldBounds * 2f, size + finalWorldBounds * 2f);
+
+        float[][] results = new float[2][];
+        for(int mode = 0; mode < 2; mode++){
+            var physics = new PhysicsProcess.PhysicsWorld(bounds);
+            physics.multithreaded = mode == 1;
+            physics.minParallelBodies = 0;
+
+            var bodies = new Seq<PhysicsProcess.PhysicsWorld.PhysicsBody>();
+            Rand rand = new Rand(1);
+            for(int i = 0; i < amount; i++){
+                //a wide swarm, so every strip has work
+                bodies.add(physicsBody(size / 2f + rand.range(size / 2.5f), size / 2f + rand.range(size / 2.5f)));
+                //a few bodies that are too large for the grid, which are resolved after the strips
+                if(i % 1000 == 0) bodies.peek().radius *= 8f;
+                physics.add(bodies.peek());
+            }
+
+            Time.mark();
+            for(int i = 0; i < steps; i++){
+                physics.update();
+            }
+            Log.info("@ bodies, multithreaded: @: @ms", amount, mode == 1, Time.elapsed());
+
+            results[mode] = new float[amount * 2];
+            for(int i = 0; i < amount; i++){
+                results[mode][i * 2] = bodies.get(i).x;
+                results[mode][i * 2 + 1] = bodies.get(i).y;
+            }
+        }
+
+        assertArrayEquals(results[0], results[1], "Parallel strips must resolve bodies in the same order as a single thread.");
+    }
+
+    static PhysicsProcess.PhysicsWorld.PhysicsBody physicsBody(float x, float y){
+        var body = new PhysicsProcess.PhysicsWorld.PhysicsBody();
+        body.x = x;
+        body.y = y;
+        body.radius = UnitTypes.dagger.hitSize * unitCollisionRadiusScale;
+        body.mass = UnitTypes.dagger.hitSize * UnitTypes.dagger.hitSize * Mathf.pi;
+        return body;
+    }
+
+    /** The physics world before the grid broadphase, copied unchanged apart from timing, to benchmark against. */
+    static class QuadTreePhysicsWorld{
+        //how much to soften movement by
+        private static final float scl = 1.25f;
+
+        private final QuadTree<PhysicsProcess.PhysicsWorld.PhysicsBody> tree;
+        private final Seq<PhysicsProcess.PhysicsWorld.PhysicsBody> bodies = new Seq<>(false, 16, PhysicsProcess.PhysicsWorld.PhysicsBody.class);
+        private final Seq<PhysicsProcess.PhysicsWorld.PhysicsBody> seq = new Seq<>(PhysicsProcess.PhysicsWorld.PhysicsBody.class);
+        private final Vec2 vec = new Vec2();
+        private final Rand rand = new Rand();
+
+        QuadTreePhysicsWorld(Rect bounds){
+            tree = new QuadTree<>(new Rect(bounds));
+        }
+
+        void add(PhysicsProcess.PhysicsWorld.PhysicsBody body){
+            bodies.add(body);
+        }
+
+        void update(){
+            var bodyItems = bodies.items;
+            int bodySize = bodies.size;
+
+            tree.fill(bodies);
+
+            for(int i = 0; i < bodySize; i++){
+                bodyItems[i].collided = false;
+            }
+
+            for(int i = 0; i < bodySize; i++){
+                var body = bodyItems[i];
+                //for clients, the only body that collides is the local one; all other physics simulations are handled by the server.
+                if(!body.local) continue;
+
+                seq.size = 0;
+                tree.intersect(body.x - body.radius, body.y - body.radius, body.radius * 2, body.radius * 2, seq);
+                int size = seq.size;
+                var items = seq.items;
+
+                for(int j = 0; j < size; j++){
+                    var other = items[j];
+
+                    if(other == body || other.collided) continue;
+
+                    float rs = body.radius + other.radius;
+                    float dx = body.x - other.x, dy = body.y - other.y;
+                    float dst2 = dx * dx + dy * dy;
+
+                    //skip the sqrt entirely for non-colliding pairs
+                    if(dst2 < rs * rs){
+                        float dst = Mathf.sqrt(dst2);
+                        vec.set(dx, dy);
+
+                        if(vec.isZero()){ //exact stacked bodies will move in random directions away from each other
+                            vec.trns(rand.random(360f), rs - dst);
+                        }else{
+                            vec.setLength(rs - dst);
+                        }
+
+                        float ms = body.mass + other.mass;
+                        float m1 = other.mass / ms, m2 = body.mass / ms;
+
+                        //first body is always local due to guard check above
+                        body.x += vec.x * m1 / scl;
+                        body.y += vec.y * m1 / scl;
+
+                        if(other.local){
+                            other.x -= vec.x * m2 / scl;
+                            other.y -= vec.y * m2 / scl;
+
+                        }
+                    }
+                }
+
+                body.collided = true;
+            }
+        }
+    }
+
+    static float totalOverlap(Seq<PhysicsProcess.PhysicsWorld.PhysicsBody> bodies){
+        var tree = new QuadTree<PhysicsProcess.PhysicsWorld.PhysicsBody>(new Rect(-finalWorldBounds, -finalWorldBounds, 400f * tilesize + finalWorldBounds * 2f, 400f * tilesize + finalWorldBounds * 2f));
+        tree.fill(bodies);
+        var seq = new Seq<PhysicsProcess.PhysicsWorld.PhysicsBody>(PhysicsProcess.PhysicsWorld.PhysicsBody.class);
+        float total = 0f;
+        for(var body : bodies){
+            seq.size = 0;
+            tree.intersect(body.x - body.radius, body.y - body.radius, body.radius * 2, body.radius * 2, seq);
+            for(int j = 0; j < seq.size; j++){
+                var other = seq.items[j];
+                if(other != body){
+                    total += Math.max(body.radius + other.radius - Mathf.dst(body.x, body.y, other.x, other.y), 0f);
+                }
+            }
+        }
+        return total;
+    }
+
     @Test
     void load77Save(){
         resetWorld();
@@ -0,0 +1,135 @@
+package power;
+
+import arc.util.*;
+import mindustry.gen.*;
+import mindustry.world.blocks.power.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests splitting and merging of power graphs when buildings are removed and added.
+ * Buildings are fake tiles whose proximity is set up by hand, so no world is needed.
+ */
+public class PowerGraphSplitTests extends PowerTestFixture{
+    static final int size = 317;
+
+    Battery battery;
+
+    @BeforeEach
+    void createBlock(){
+        battery = createFakeBattery(100f);
+    }
+
+    /** @return a grid of batteries in one graph, with their direct neighbours as proximity */
+    Building[] createGrid(int width, int height){
+        Building[] builds = new Building[width * height];
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                builds[x + y * width] = createFakeTile(x, y, battery).build;
+            }
+        }
+
+        PowerGraph graph = new PowerGraph();
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                Building build = builds[x + y * width];
+                if(x > 0) build.proximity.add(builds[x - 1 + y * width]);
+                if(x < width - 1) build.proximity.add(builds[x + 1 + y * width]);
+                if(y > 0) build.proximity.add(builds[x + (y - 1) * width]);
+                if(y < height - 1) build.proximity.add(builds[x + (y + 1) * width]);
+                graph.add(build);
+            }
+        }
+        return builds;
+    }
+
+    @Test
+    void removingInteriorNodeKeepsGraph(){
+        Building[] builds = createGrid(5, 5);
+        PowerGraph graph = builds[0].power.graph;
+
+        graph.remove(builds[12]);
+
+        assertSame(graph, builds[0].power.graph);
+        assertSame(graph, builds[24].power.graph);
+        assertEquals(24, graph.all.size);
+        assertNotSame(graph, builds[12].power.graph);
+    }
+
+    @Test
+    void removingBridgeSplitsGraph(){
+        //two rows joined by a single building in the middle of a third row
+        Building[] builds = createGrid(5, 3);
+        PowerGraph graph = builds[0].power.graph;
+        for(int x = 0; x < 5; x++){
+            if(x != 2) graph.remove(builds[x + 5]);
+        }
+        assertEquals(11, graph.all.size);
+
+        graph.remove(builds[7]);
+
+        PowerGraph bottom = builds[0].power.graph, top = builds[10].power.graph;
+        assertNotSame(bottom, top);
+        assertEquals(5, bottom.all.size);
+        assertEquals(5, top.all.size);
+    }
+
+    /** Removes the building from its graph and from the proximity of its neighbours, as removing its tile would. */
+    void detach(Building build){
+        build.power.graph.remove(build);
+        for(var other : build.proximity){
+            other.proximity.remove(build, true);
+        }
+        build.proximity.clear();
+    }
+
+    @Test
+    void addingNodeMergesGraphs(){
+        Building[] builds = createGrid(5, 3);
+        for(int x = 0; x < 5; x++){
+            if(x != 2) detach(builds[x + 5]);
+        }
+        builds[7].power.graph.remove(builds[7]);
+        assertNotSame(builds[0].power.graph, builds[10].power.graph);
+
+        builds[7].updatePowerGraph();
+
+        assertSame(builds[0].power.graph, builds[10].power.graph);
+        assertSame(builds[0].power.graph, builds[7].power.graph);
+        assertEquals(11, builds[0].power.graph.all.size);
+    }
+
+    @Test
+    void splitBench(){
+        Building[] builds = createGrid(size, size);
+        PowerGraph graph = builds[0].power.graph;
+        assertEquals(size * size, graph.all.size);
+
+        final int iterations = 5000;
+
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            int x = 1 + (i * 7919) % (size - 2), y = 1 + (i * 104729) % (size - 2);
+            Building build = builds[x + y * size];
+            build.power.graph.remove(build);
+            build.updatePowerGraph();
+        }
+        Log.info(Time.elapsed() + "ms to remove and re-add " + iterations + " batteries in a grid of " + (size * size));
+
+        //removing interior batteries never splits the grid, and re-adding merges each one back
+        assertEquals(size * size, builds[0].power.graph.all.size);
+
+        //cutting the grid in half must create two graphs
+        int cut = size / 2;
+        for(int y = 0; y < size; y++){
+            Building build = builds[cut + y * size];
+            build.power.graph.remove(build);
+        }
+
+        PowerGraph left = builds[0].power.graph, right = builds[size - 1].power.graph;
+        assertNotSame(left, right);
+        assertEquals(cut * size, left.all.size);
+        assertEquals((size - cut - 1) * size, right.all.size);
+    }
+}